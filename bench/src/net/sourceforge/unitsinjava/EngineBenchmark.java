@@ -0,0 +1,829 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//           Added benchmarks of parsing in packrat mode,
+//           and of long expressions.
+//           Value.parse benchmarks FastParser; added benchmarks
+//           of the generated Parser.
+//           Added benchmark of TabularFunction on arrays.
+//           Added benchmarks of conformability checks.
+//           Added benchmarks of DimensionIndex.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.Vector;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class EngineBenchmark
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Micro-benchmarks of the conversion engine.
+ *  <br>
+ *  Each benchmark applies one engine operation, in turn, to the items
+ *  of a corpus drawn from the definition files: unit names, their
+ *  plural forms, prefixed names, unit definitions, pairs of conformable
+ *  units, and the nonlinear units. A benchmark is run for a number
+ *  of warmup iterations, whose results are discarded, and then
+ *  for a number of measured iterations of fixed duration.
+ *  <p>
+ *  For each benchmark, the program reports throughput in operations
+ *  per second, and the allocation rate and garbage collections
+ *  observed during the measured iterations. Allocation is measured
+ *  per thread, and is reported only if the virtual machine supports it.
+ *  <p>
+ *  All benchmarks run in the same virtual machine, one after another;
+ *  for comparable results, run each benchmark in a separate invocation.
+ *  <p>
+ *  Usage:
+ *  <pre><code>   EngineBenchmark [-f file]... [-l locale] [-w n] [-i n] [-t ms] [benchmark]...
+ *  </code></pre>
+ *  where 'benchmark' selects benchmarks whose names start with it.
+ *  Without it, all benchmarks are run.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class EngineBenchmark
+{
+  //-------------------------------------------------------------------
+  //  Results of operations are stored here so that they
+  //  cannot be optimized away.
+  //-------------------------------------------------------------------
+  static volatile Object sink;
+
+  //-------------------------------------------------------------------
+  //  Allocation and garbage collection counters.
+  //-------------------------------------------------------------------
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private static boolean allocation;
+
+
+  //=====================================================================
+  //  main
+  //=====================================================================
+  /**
+   *  Runs the benchmarks specified by command arguments.
+   *
+   *  @param  argv command arguments.
+   */
+  public static void main(String[] argv)
+    {
+      CommandArgs cmd = new CommandArgs(argv,"","filtw",0,Integer.MAX_VALUE);
+      int warmups = 5;
+      int iterations = 5;
+      long millis = 1000;
+      try
+      {
+        if (cmd.opt('w')) warmups = Integer.parseInt(cmd.optArg('w'));
+        if (cmd.opt('i')) iterations = Integer.parseInt(cmd.optArg('i'));
+        if (cmd.opt('t')) millis = Long.parseLong(cmd.optArg('t'));
+      }
+      catch (NumberFormatException e)
+      { cmd = null; }
+
+      if (cmd==null || cmd.nErrors()>0 || iterations<1)
+      {
+        System.err.println
+          ("Usage: EngineBenchmark [-f file]... [-l locale] [-w n] [-i n]\n"
+           + "         [-t ms] [benchmark]...");
+        System.exit(2);
+      }
+
+      Env.useFileSystem();
+      Env.filenames = new Vector<String>();
+      if (cmd.opt('f'))
+        Env.filenames.addAll(cmd.optArgs('f'));
+      else
+        Env.filenames.add("");
+      Env.locale = cmd.opt('l')? cmd.optArg('l') : Env.DEFAULTLOCALE;
+      Env.quiet = true;
+
+      if (!Tables.build()) System.exit(1);
+
+      allocation = enableAllocation();
+
+      Benchmark[] benchmarks = benchmarks();
+      System.out.println(header());
+      for (int k=0;k<benchmarks.length;k++)
+      {
+        Benchmark b = benchmarks[k];
+        if (!selected(b.name,cmd.args())) continue;
+        if (b.size()==0)
+        {
+          System.out.println(b.name + ": empty corpus, skipped.");
+          continue;
+        }
+        Result r = run(b,warmups,iterations,millis*1000000L);
+        System.out.println(r.asString());
+      }
+    }
+
+
+  //=====================================================================
+  //  Return true if benchmark 'name' is selected by 'args'.
+  //=====================================================================
+  private static boolean selected(final String name, Vector<String> args)
+    {
+      if (args.size()==0) return true;
+      for (String a: args)
+        if (name.startsWith(a)) return true;
+      return false;
+    }
+
+
+  //=====================================================================
+  //  run
+  //=====================================================================
+  /**
+   *  Runs a benchmark.
+   *
+   *  @param  b the benchmark.
+   *  @param  warmups number of warmup iterations.
+   *  @param  iterations number of measured iterations.
+   *  @param  nanos duration of one iteration in nanoseconds.
+   *  @return the result.
+   */
+  static Result run
+    ( final Benchmark b, int warmups, int iterations, long nanos)
+    {
+      for (int k=0;k<warmups;k++)
+        iteration(b,nanos,null,k);
+
+      Result r = new Result(b.name,iterations);
+      for (int k=0;k<iterations;k++)
+        iteration(b,nanos,r,k);
+      return r;
+    }
+
+
+  //=====================================================================
+  //  Run one iteration of benchmark 'b' lasting 'nanos' nanoseconds
+  //  and record it as iteration 'k' of result 'r' unless 'r' is null.
+  //=====================================================================
+  private static void iteration
+    ( final Benchmark b, long nanos, Result r, int k)
+    {
+      final int n = b.size();
+      int i = 0;
+      long ops = 0;
+
+      long gc0 = collections();
+      long bytes0 = allocatedBytes();
+      long start = System.nanoTime();
+      long end = start + nanos;
+      long t;
+      do
+      {
+        sink = b.op(i);
+        if (++i==n) i = 0;
+        ops++;
+        t = System.nanoTime();
+      }
+      while (t<end);
+      long bytes1 = allocatedBytes();
+      long gc1 = collections();
+
+      if (r==null) return;
+      r.ops[k] = ops;
+      r.nanos[k] = t - start;
+      r.bytes[k] = allocation? bytes1 - bytes0 : -1;
+      r.gcs[k] = gc1 - gc0;
+    }
+
+
+  //=====================================================================
+  //  Enable measurement of allocation if supported;
+  //  return true if supported.
+  //=====================================================================
+  private static boolean enableAllocation()
+    {
+      if (!(threads instanceof com.sun.management.ThreadMXBean))
+        return false;
+      com.sun.management.ThreadMXBean t
+        = (com.sun.management.ThreadMXBean)threads;
+      try
+      {
+        if (!t.isThreadAllocatedMemorySupported()) return false;
+        t.setThreadAllocatedMemoryEnabled(true);
+        return true;
+      }
+      catch (UnsupportedOperationException e)
+      { return false; }
+    }
+
+
+  //=====================================================================
+  //  Return number of bytes allocated so far by the calling thread.
+  //=====================================================================
+  private static long allocatedBytes()
+    {
+      if (!allocation) return 0;
+      return ((com.sun.management.ThreadMXBean)threads)
+               .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+
+  //=====================================================================
+  //  Return number of garbage collections so far.
+  //=====================================================================
+  private static long collections()
+    {
+      long n = 0;
+      for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+        n += Math.max(0,gc.getCollectionCount());
+      return n;
+    }
+
+
+  //=====================================================================
+  //  benchmarks
+  //=====================================================================
+  /**
+   *  Constructs the benchmarks with corpora drawn
+   *  from the current UnitRegistry.
+   *
+   *  @return the benchmarks.
+   */
+  static Benchmark[] benchmarks()
+    {
+      final Corpus c = new Corpus(UnitRegistry.current());
+      final Vector<String> files = new Vector<String>(Env.filenames);
+      final String locale = Env.locale;
+
+      return new Benchmark[]
+      {
+        new Benchmark("Value.parse",c.defs.length)
+          { Object op(int i) { return Value.parse(c.defs[i]); } },
+
+        new Benchmark("Value.parse.mouse",c.defs.length)
+          { Object op(int i) { return mouse(c.defs[i],false); } },
+
+        new Benchmark("Value.parse.packrat",c.defs.length)
+          { Object op(int i) { return mouse(c.defs[i],true); } },
+
+        new Benchmark("Value.parse.long",c.longExprs.length)
+          { Object op(int i) { return Value.parse(c.longExprs[i]); } },
+
+        new Benchmark("Value.parse.long.mouse",c.longExprs.length)
+          { Object op(int i) { return mouse(c.longExprs[i],false); } },
+
+        new Benchmark("Value.parse.long.packrat",c.longExprs.length)
+          { Object op(int i) { return mouse(c.longExprs[i],true); } },
+
+        new Benchmark("Value.completereduce",c.values.length)
+          {
+            Object op(int i)
+              {
+                Value v = new Value(c.values[i]);
+                v.completereduce();
+                return v;
+              }
+          },
+
+        new Benchmark("Factor.split",c.prefixed.length)
+          { Object op(int i) { return Factor.split(c.prefixed[i]); } },
+
+        new Benchmark("Unit.find",c.names.length)
+          { Object op(int i) { return Unit.find(c.names[i]); } },
+
+        new Benchmark("Unit.find.plural",c.plurals.length)
+          { Object op(int i) { return Unit.find(c.plurals[i]); } },
+
+        new Benchmark("Prefix.find",c.prefixed.length)
+          { Object op(int i) { return Prefix.find(c.prefixed[i]); } },
+
+        //-------------------------------------------------------------
+        //  The conversion done by the application: both expressions
+        //  are evaluated and checked for conformability.
+        //-------------------------------------------------------------
+        new Benchmark("convert",c.from.length)
+          {
+            Object op(int i)
+              {
+                Value f = Value.parse(c.from[i]);
+                f.completereduce();
+                Value t = Value.parse(c.to[i]);
+                t.completereduce();
+                if (!f.isCompatibleWith(t,Factor.Ignore.DIMLESS))
+                  throw new Error("Program error: corpus pair "
+                                  + c.from[i] + ", " + c.to[i] + ".");
+                return Double.valueOf(f.factor / t.factor);
+              }
+          },
+
+        //-------------------------------------------------------------
+        //  The same with conversion plans kept by the registry,
+        //  for a working set that fits in its cache.
+        //-------------------------------------------------------------
+        new Benchmark("convert.cached",Math.min(c.from.length,128))
+          {
+            final UnitRegistry reg = UnitRegistry.current();
+            final UnitRegistry.Options options = UnitRegistry.Options.fromEnv();
+            Object op(int i)
+              { return Double.valueOf(reg.convert(1.0,c.from[i],c.to[i],options)); }
+          },
+
+        //-------------------------------------------------------------
+        //  Conformability of a unit with a reduced Value,
+        //  and of two reduced Values.
+        //-------------------------------------------------------------
+        new Benchmark("Unit.isCompatibleWith",c.from.length)
+          {
+            final UnitRegistry reg = UnitRegistry.current();
+            Object op(int i)
+              {
+                Unit u = reg.units().get(c.from[i]);
+                return Boolean.valueOf(u.isCompatibleWith(c.toValues[i]));
+              }
+          },
+
+        new Benchmark("Value.dimension",c.from.length)
+          {
+            Object op(int i)
+              { return c.toValues[i].dimension(Factor.Ignore.DIMLESS); }
+          },
+
+        new Benchmark("DimensionIndex.units",c.from.length)
+          {
+            final DimensionIndex index = UnitRegistry.current().dimensionIndex();
+            Object op(int i)
+              { return index.units(c.toValues[i].dimension(Factor.Ignore.DIMLESS)); }
+          },
+
+        new Benchmark("DimensionIndex.build",1)
+          {
+            final UnitRegistry reg = UnitRegistry.current();
+            final int threads = Runtime.getRuntime().availableProcessors();
+            Object op(int i)
+              { return DimensionIndex.build(reg,threads); }
+          },
+
+        new Benchmark("TabularFunction",c.tabular.length)
+          {
+            Object op(int i)
+              { return apply(c.tabular[i],c.tabularArgs[i]); }
+          },
+
+        new Benchmark("TabularFunction.array",c.tabular.length)
+          {
+            Object op(int i)
+              {
+                double[] a = c.tabularPoints[i].clone();
+                c.tabular[i].applyTo(a);
+                return a;
+              }
+          },
+
+        new Benchmark("ComputedFunction",c.computed.length)
+          {
+            Object op(int i)
+              { return apply(c.computed[i],c.computedArgs[i]); }
+          },
+
+        new Benchmark("Tables.build",1)
+          {
+            Object op(int i)
+              { return UnitRegistry.build(files,locale,false); }
+          },
+
+        new Benchmark("Tables.build.lazy",1)
+          {
+            Object op(int i)
+              { return UnitRegistry.build(files,locale,true); }
+          },
+      };
+    }
+
+
+  //=====================================================================
+  //  Parse 's' with the generated Parser, in packrat mode
+  //  if 'packrat' is true.
+  //=====================================================================
+  private static Value mouse(final String s, boolean packrat)
+    {
+      Env.fastparse = false;
+      Env.packrat = packrat;
+      try
+      { return Value.parse(s); }
+      finally
+      {
+        Env.fastparse = true;
+        Env.packrat = false;
+      }
+    }
+
+
+  //=====================================================================
+  //  Apply function 'f' and then its inverse to a copy of 'arg'.
+  //=====================================================================
+  private static Value apply(final DefinedFunction f, final Value arg)
+    {
+      Value v = new Value(arg);
+      f.applyTo(v);
+      f.applyInverseTo(v);
+      return v;
+    }
+
+
+  //=====================================================================
+  //  Return heading of the table of results.
+  //=====================================================================
+  private static String header()
+    {
+      return pad("Benchmark",-24) + pad("Cnt",5) + pad("ops/s",14)
+             + pad("error",12) + pad("ns/op",12) + pad("B/op",10)
+             + pad("MB/s",10) + pad("GCs",6);
+    }
+
+
+  //=====================================================================
+  //  Return 's' padded with blanks to 'w' characters, on the left
+  //  if 'w' is positive, or on the right if negative.
+  //=====================================================================
+  static String pad(final String s, int w)
+    {
+      StringBuffer sb = new StringBuffer();
+      int n = Math.abs(w) - s.length();
+      if (w<0) sb.append(s);
+      for (int i=0;i<n;i++)
+        sb.append(' ');
+      if (w>0) sb.append(s);
+      return sb.toString();
+    }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Benchmark
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  An operation applied to items of a corpus.
+   */
+  static abstract class Benchmark
+  {
+    final String name;
+    private final int size;
+
+    Benchmark(final String n, int s)
+      {
+        name = n;
+        size = s;
+      }
+
+    //-----------------------------------------------------------------
+    //  Number of items in the corpus.
+    //-----------------------------------------------------------------
+    int size()
+      { return size; }
+
+    //-----------------------------------------------------------------
+    //  Apply the operation to item 'i' and return the result.
+    //-----------------------------------------------------------------
+    abstract Object op(int i);
+  }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Result
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Measurements of the iterations of a benchmark.
+   */
+  static class Result
+  {
+    final String name;
+    final long[] ops;
+    final long[] nanos;
+    final long[] bytes;
+    final long[] gcs;
+
+    Result(final String n, int iterations)
+      {
+        name = n;
+        ops = new long[iterations];
+        nanos = new long[iterations];
+        bytes = new long[iterations];
+        gcs = new long[iterations];
+      }
+
+    //-----------------------------------------------------------------
+    //  Throughput of iteration 'k' in operations per second.
+    //-----------------------------------------------------------------
+    double throughput(int k)
+      { return ops[k] * 1e9 / nanos[k]; }
+
+    //-----------------------------------------------------------------
+    //  Mean throughput.
+    //-----------------------------------------------------------------
+    double mean()
+      {
+        double s = 0;
+        for (int k=0;k<ops.length;k++)
+          s += throughput(k);
+        return s / ops.length;
+      }
+
+    //-----------------------------------------------------------------
+    //  Standard deviation of throughput; 0 for a single iteration.
+    //-----------------------------------------------------------------
+    double error()
+      {
+        if (ops.length<2) return 0;
+        double m = mean();
+        double s = 0;
+        for (int k=0;k<ops.length;k++)
+          s += (throughput(k)-m) * (throughput(k)-m);
+        return Math.sqrt(s / (ops.length-1));
+      }
+
+    //-----------------------------------------------------------------
+    //  Printable line of the table of results.
+    //-----------------------------------------------------------------
+    String asString()
+      {
+        long n = 0, t = 0, b = 0, g = 0;
+        for (int k=0;k<ops.length;k++)
+        {
+          n += ops[k];
+          t += nanos[k];
+          b += bytes[k];
+          g += gcs[k];
+        }
+
+        String perOp = "n/a";
+        String rate = "n/a";
+        if (allocation)
+        {
+          perOp = String.format("%.1f",(double)b / n);
+          rate = String.format("%.1f",b * 1e3 / t);
+        }
+
+        return pad(name,-24) + pad("" + ops.length,5)
+               + pad(String.format("%.1f",mean()),14)
+               + pad("+-" + String.format("%.1f",error()),12)
+               + pad(String.format("%.1f",(double)t / n),12)
+               + pad(perOp,10) + pad(rate,10) + pad("" + g,6);
+      }
+  }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Corpus
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Inputs of the benchmarks drawn from a UnitRegistry.
+   *  Only items on which the operations succeed are included,
+   *  and all items are in alphabetic order of unit names,
+   *  so that the corpus is the same in every run.
+   */
+  static class Corpus
+  {
+    String[] names;          // Unit names
+    String[] plurals;        // Plural forms of unit names
+    String[] prefixed;       // Prefixed unit names
+    String[] defs;           // Definitions of units
+    Value[] values;          // Parsed definitions of units
+    String[] longExprs;      // Products of definitions, 2K characters
+    String[] from;           // Pairs of conformable units
+    String[] to;
+    Value[] toValues;        // Completely reduced 'to'
+    TabularFunction[] tabular;
+    Value[] tabularArgs;
+    double[][] tabularPoints;  // Midpoints of the tables
+    ComputedFunction[] computed;
+    Value[] computedArgs;
+
+    Corpus(final UnitRegistry reg)
+      {
+        TreeSet<String> unitNames = new TreeSet<String>(reg.units().keySet());
+        TreeSet<String> prefixNames = new TreeSet<String>(reg.prefixes().keySet());
+
+        Vector<String> nam = new Vector<String>();
+        Vector<String> plu = new Vector<String>();
+        Vector<String> def = new Vector<String>();
+        Vector<Value> val = new Vector<Value>();
+        Vector<String> fro = new Vector<String>();
+        Vector<String> tto = new Vector<String>();
+
+        //-------------------------------------------------------------
+        //  Names, plurals, and definitions of units.
+        //  For pairs, each unit is paired with the previous unit
+        //  of the same dimension.
+        //-------------------------------------------------------------
+        HashMap<String,String> byDimension = new HashMap<String,String>();
+
+        for (String n: unitNames)
+        {
+          Unit u = reg.units().get(n);
+          nam.add(n);
+
+          String p = plural(n);
+          if (p!=null && !unitNames.contains(p) && Unit.find(p)==u)
+            plu.add(p);
+
+          if (u.isPrimitive || u.isNumber) continue;
+
+          Value v;
+          try
+          {
+            v = Value.parse(u.def);
+            Value r = new Value(v);
+            r.completereduce();
+            r.factor = 1;
+            String dim = r.asString();
+            String prev = byDimension.put(dim,n);
+            if (prev!=null && !r.isNumber())
+            {
+              fro.add(n);
+              tto.add(prev);
+            }
+          }
+          catch (EvalError e)
+          { continue; }
+
+          def.add(u.def);
+          val.add(v);
+        }
+
+        //-------------------------------------------------------------
+        //  Prefixed names: each prefix with units taken
+        //  at regular intervals.
+        //-------------------------------------------------------------
+        Vector<String> pre = new Vector<String>();
+        int step = Math.max(1,nam.size()/16);
+        int k = 0;
+        for (String p: prefixNames)
+          for (int i=k++%step;i<nam.size();i+=step)
+          {
+            String s = p + nam.elementAt(i);
+            Factor[] f = Factor.split(s);
+            if (f!=null && f[0]!=null && f[1]!=null)
+              pre.add(s);
+          }
+
+        //-------------------------------------------------------------
+        //  Long expressions: consecutive definitions in parentheses,
+        //  alternately multiplied and divided.
+        //-------------------------------------------------------------
+        Vector<String> lng = new Vector<String>();
+        StringBuffer sb = new StringBuffer();
+        for (int i=0;i<def.size() && lng.size()<16;i++)
+        {
+          if (sb.length()>0) sb.append(i%2==0? " * " : " / ");
+          sb.append('(').append(def.elementAt(i)).append(')');
+          if (sb.length()>=2048)
+          {
+            lng.add(sb.toString());
+            sb.setLength(0);
+          }
+        }
+
+        names = nam.toArray(new String[nam.size()]);
+        plurals = plu.toArray(new String[plu.size()]);
+        prefixed = pre.toArray(new String[pre.size()]);
+        defs = def.toArray(new String[def.size()]);
+        values = val.toArray(new Value[val.size()]);
+        longExprs = lng.toArray(new String[lng.size()]);
+        from = fro.toArray(new String[fro.size()]);
+        to = tto.toArray(new String[tto.size()]);
+        toValues = new Value[to.length];
+        for (int i=0;i<to.length;i++)
+        {
+          toValues[i] = Value.parse(to[i]);
+          toValues[i].completereduce();
+        }
+
+        //-------------------------------------------------------------
+        //  Nonlinear units with arguments for which the function
+        //  and its inverse can be computed.
+        //-------------------------------------------------------------
+        Vector<TabularFunction> tab = new Vector<TabularFunction>();
+        Vector<Value> tabArg = new Vector<Value>();
+        Vector<ComputedFunction> com = new Vector<ComputedFunction>();
+        Vector<Value> comArg = new Vector<Value>();
+
+        for (String n: new TreeSet<String>(reg.definedFunctions().keySet()))
+        {
+          DefinedFunction f = reg.definedFunctions().get(n);
+          Value arg = argument(f);
+          if (arg==null) continue;
+          if (f instanceof TabularFunction)
+          {
+            tab.add((TabularFunction)f);
+            tabArg.add(arg);
+          }
+          else if (f instanceof ComputedFunction)
+          {
+            com.add((ComputedFunction)f);
+            comArg.add(arg);
+          }
+        }
+
+        tabular = tab.toArray(new TabularFunction[tab.size()]);
+        tabularArgs = tabArg.toArray(new Value[tabArg.size()]);
+        tabularPoints = new double[tabular.length][];
+        for (int i=0;i<tabular.length;i++)
+        {
+          double[] x = tabular[i].xValues;
+          tabularPoints[i] = new double[x.length-1];
+          for (int j=0;j<x.length-1;j++)
+            tabularPoints[i][j] = (x[j]+x[j+1])/2;
+        }
+        computed = com.toArray(new ComputedFunction[com.size()]);
+        computedArgs = comArg.toArray(new Value[comArg.size()]);
+      }
+
+    //-----------------------------------------------------------------
+    //  Return regular English plural of 'n', or null if 'n'
+    //  does not end with a letter.
+    //-----------------------------------------------------------------
+    static String plural(final String n)
+      {
+        int l = n.length();
+        char c = n.charAt(l-1);
+        if (!Character.isLetter(c) || l<2) return null;
+        if (c=='y' && "aeiou".indexOf(n.charAt(l-2))<0)
+          return n.substring(0,l-1) + "ies";
+        if (c=='x' || n.endsWith("sh") || n.endsWith("ch") || n.endsWith("ss"))
+          return n + "es";
+        return n + "s";
+      }
+
+    //-----------------------------------------------------------------
+    //  Return argument for which function 'f' and its inverse
+    //  can be computed, or null if none is found.
+    //  The argument is the middle point of a table, or 7 times
+    //  the declared dimension of a computed function
+    //  (as in 'ComputedFunction.check').
+    //-----------------------------------------------------------------
+    static Value argument(final DefinedFunction f)
+      {
+        try
+        {
+          Value arg;
+          if (f instanceof TabularFunction)
+          {
+            TabularFunction t = (TabularFunction)f;
+            arg = new Value();
+            arg.factor = t.xValues[t.xValues.length/2];
+          }
+          else
+          {
+            ComputedFunction c = (ComputedFunction)f;
+            if (c.inverse.def==null) return null;
+            arg = c.forward.dimen==null? new Value()
+                                       : Value.parse(c.forward.dimen);
+            arg.completereduce();
+            arg.factor *= 7;
+          }
+          apply(f,arg);
+          return arg;
+        }
+        catch (EvalError e)
+        { return null; }
+      }
+  }
+}
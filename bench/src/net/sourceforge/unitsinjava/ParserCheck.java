@@ -0,0 +1,279 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.Vector;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class ParserCheck
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Differential check of FastParser against the generated Parser.
+ *  <br>
+ *  Each expression of a corpus is parsed by both parsers, and
+ *  the results are compared. If both parsers accept the expression,
+ *  the two trees are evaluated and must give the same Value,
+ *  or the same error. If FastParser rejects the expression,
+ *  the generated Parser must reject it too; its error message
+ *  is then the one shown to the user.
+ *  <p>
+ *  The corpus consists of the unit names, their plurals, prefixed
+ *  names, and definitions used by EngineBenchmark, the definitions
+ *  of nonlinear units with their parameters, and the same expressions
+ *  randomly damaged by deleting a character, inserting an operator,
+ *  or inserting 'per'.
+ *  <p>
+ *  Usage:
+ *  <pre><code>   ParserCheck [-f file]... [-l locale] [-n mutations] [-s seed]
+ *  </code></pre>
+ *  The program exits with status 1 if any difference is found.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class ParserCheck
+{
+  //-------------------------------------------------------------------
+  //  Characters inserted into expressions.
+  //-------------------------------------------------------------------
+  private static final String JUNK = "()^*+-/|~ .2e";
+
+  //-------------------------------------------------------------------
+  //  Number of differences found, and how many of them to show.
+  //-------------------------------------------------------------------
+  private static int differences = 0;
+  private static final int SHOWN = 20;
+
+
+  //=====================================================================
+  //  main
+  //=====================================================================
+  /**
+   *  Runs the check specified by command arguments.
+   *
+   *  @param  argv command arguments.
+   */
+  public static void main(String[] argv)
+    {
+      CommandArgs cmd = new CommandArgs(argv,"","flns",0,0);
+      int mutations = 50000;
+      long seed = 42;
+      try
+      {
+        if (cmd.opt('n')) mutations = Integer.parseInt(cmd.optArg('n'));
+        if (cmd.opt('s')) seed = Long.parseLong(cmd.optArg('s'));
+      }
+      catch (NumberFormatException e)
+      { cmd = null; }
+
+      if (cmd==null || cmd.nErrors()>0)
+      {
+        System.err.println
+          ("Usage: ParserCheck [-f file]... [-l locale] [-n mutations] [-s seed]");
+        System.exit(2);
+      }
+
+      Env.useFileSystem();
+      Env.filenames = new Vector<String>();
+      if (cmd.opt('f'))
+        Env.filenames.addAll(cmd.optArgs('f'));
+      else
+        Env.filenames.add("");
+      Env.locale = cmd.opt('l')? cmd.optArg('l') : Env.DEFAULTLOCALE;
+      Env.quiet = true;
+
+      if (!Tables.build()) System.exit(1);
+
+      UnitRegistry reg = UnitRegistry.current();
+      EngineBenchmark.Corpus c = new EngineBenchmark.Corpus(reg);
+
+      //---------------------------------------------------------------
+      //  Expressions and their parameter names.
+      //---------------------------------------------------------------
+      Vector<String> exprs = new Vector<String>();
+      Vector<String[]> parms = new Vector<String[]>();
+      String[] none = new String[0];
+
+      add(exprs,parms,c.names,none);
+      add(exprs,parms,c.plurals,none);
+      add(exprs,parms,c.prefixed,none);
+      add(exprs,parms,c.defs,none);
+      add(exprs,parms,c.longExprs,none);
+
+      for (String n: new TreeSet<String>(reg.definedFunctions().keySet()))
+      {
+        DefinedFunction f = reg.definedFunctions().get(n);
+        if (f instanceof ComputedFunction)
+        {
+          ComputedFunction cf = (ComputedFunction)f;
+          String[] forward = {cf.forward.param};
+          String[] inverse = {cf.inverse.param};
+          if (cf.forward.def!=null) add(exprs,parms,cf.forward.def,forward);
+          if (cf.inverse.def!=null) add(exprs,parms,cf.inverse.def,inverse);
+        }
+        else if (f instanceof TabularFunction)
+        {
+          String u = ((TabularFunction)f).tableunit;
+          if (u!=null) add(exprs,parms,u,none);
+        }
+      }
+
+      //---------------------------------------------------------------
+      //  Damaged expressions.
+      //---------------------------------------------------------------
+      Random rnd = new Random(seed);
+      int n0 = exprs.size();
+      for (int k=0;k<mutations && n0>0;k++)
+      {
+        int j = rnd.nextInt(n0);
+        String s = exprs.elementAt(j);
+        if (s.length()==0) continue;
+        int i = rnd.nextInt(s.length());
+        switch(rnd.nextInt(3))
+        {
+          case 0:
+            s = s.substring(0,i) + s.substring(i+1);
+            break;
+          case 1:
+            s = s.substring(0,i) + JUNK.charAt(rnd.nextInt(JUNK.length()))
+                + s.substring(i);
+            break;
+          default:
+            s = s.substring(0,i) + " per " + s.substring(i);
+        }
+        add(exprs,parms,s,parms.elementAt(j));
+      }
+
+      //---------------------------------------------------------------
+      //  Compare.
+      //---------------------------------------------------------------
+      int accepted = 0;
+      for (int i=0;i<exprs.size();i++)
+        if (check(exprs.elementAt(i),parms.elementAt(i),reg)) accepted++;
+
+      System.out.println(exprs.size() + " expressions checked, "
+                         + accepted + " accepted, "
+                         + differences + " differences.");
+      System.exit(differences==0? 0 : 1);
+    }
+
+
+  //=====================================================================
+  //  Add expressions 'ss' with parameters 'p' to the corpus.
+  //=====================================================================
+  private static void add
+    ( Vector<String> exprs, Vector<String[]> parms,
+      final String[] ss, final String[] p)
+    {
+      for (String s: ss)
+        add(exprs,parms,s,p);
+    }
+
+  private static void add
+    ( Vector<String> exprs, Vector<String[]> parms,
+      final String s, final String[] p)
+    {
+      exprs.add(s);
+      parms.add(p);
+    }
+
+
+  //=====================================================================
+  //  Parse expression 's' with parameters 'p' by both parsers
+  //  and compare. Return true if FastParser accepts the expression.
+  //=====================================================================
+  private static boolean check
+    ( final String s, final String[] p, final UnitRegistry reg)
+    {
+      Value[] args = new Value[p.length];
+      for (int i=0;i<p.length;i++)
+      {
+        args[i] = new Value();
+        args[i].factor = 7;
+      }
+
+      CompiledExpression.Node fast = FastParser.parse(s,p,reg);
+      String fastResult = fast==null? null : evaluate(fast,args);
+
+      String result;
+      Env.fastparse = false;
+      try
+      {
+        CompiledExpression e = CompiledExpression.compile(s,p);
+        result = evaluate(e,args);
+      }
+      catch (EvalError e)
+      { result = null; }
+      finally
+      { Env.fastparse = true; }
+
+      if (fastResult==null? result!=null : !fastResult.equals(result))
+      {
+        differences++;
+        if (differences<=SHOWN)
+          System.out.println("'" + s + "'\n  FastParser: " + fastResult
+                             + "\n  Parser:     " + result);
+      }
+      return fast!=null;
+    }
+
+
+  //=====================================================================
+  //  Evaluate tree 'n', or expression 'e', with arguments 'args'.
+  //  Return the result as a string that is equal for equal Values,
+  //  or the error message.
+  //=====================================================================
+  private static String evaluate
+    ( final CompiledExpression.Node n, final Value[] args)
+    {
+      try
+      { return asString(n.eval(args)); }
+      catch (EvalError e)
+      { return "error: " + e.getMessage(); }
+    }
+
+  private static String evaluate
+    ( final CompiledExpression e, final Value[] args)
+    {
+      try
+      { return asString(e.evaluate(args)); }
+      catch (EvalError x)
+      { return "error: " + x.getMessage(); }
+    }
+
+  private static String asString(final Value v)
+    { return Double.toString(v.factor) + " " + v.asString(); }
+}
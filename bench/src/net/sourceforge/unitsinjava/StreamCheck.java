@@ -0,0 +1,172 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Vector;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class StreamCheck
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Check of StreamConvert on small CSV and JSON-lines inputs.
+ *  <br>
+ *  Each case converts an input held in memory and compares
+ *  the output with the expected text. The cases cover columns
+ *  given in another order than in the input, JSON members in
+ *  different orders on different lines, and values that are
+ *  missing, null, or cannot be converted, and JSON lines
+ *  that are not well-formed.
+ *  <p>
+ *  Usage:
+ *  <pre><code>   StreamCheck [-f file]... [-l locale]
+ *  </code></pre>
+ *  The program exits with status 1 if any case fails.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class StreamCheck
+{
+  //-------------------------------------------------------------------
+  //  Number of failed cases.
+  //-------------------------------------------------------------------
+  private static int failures = 0;
+
+
+  //=====================================================================
+  //  main
+  //=====================================================================
+  /**
+   *  Runs the check specified by command arguments.
+   *
+   *  @param  argv command arguments.
+   */
+  public static void main(String[] argv)
+    {
+      CommandArgs cmd = new CommandArgs(argv,"","fl",0,0);
+      if (cmd.nErrors()>0)
+      {
+        System.err.println("Usage: StreamCheck [-f file]... [-l locale]");
+        System.exit(2);
+      }
+
+      Env.useFileSystem();
+      Env.filenames = new Vector<String>();
+      if (cmd.opt('f'))
+        Env.filenames.addAll(cmd.optArgs('f'));
+      else
+        Env.filenames.add("");
+      Env.locale = cmd.opt('l')? cmd.optArg('l') : Env.DEFAULTLOCALE;
+      Env.quiet = true;
+
+      if (!Tables.build()) System.exit(1);
+
+      String[] lengthAndTemp = {"a:ft:m","b:tempF:tempC"};
+      String[] tempAndLength = {"b:tempF:tempC","a:ft:m"};
+
+      check("CSV",false,lengthAndTemp,
+            "a,b,c\n1,212,x\n4,32,y\n",
+            "a,b,c\n0.3048,100.0,x\n1.2192,0.0,y\n");
+
+      check("CSV, columns in other order",false,tempAndLength,
+            "b,c,a\n212,x,1\n\"32\",y,4\n",
+            "b,c,a\n100.0,x,0.3048\n0.0,y,1.2192\n");
+
+      check("CSV, missing and bad values",false,lengthAndTemp,
+            "a,b\n,212\nten,32\n",
+            "a,b\n,100.0\nten,0.0\n");
+
+      check("JSON, members in column order",true,lengthAndTemp,
+            "{\"a\":1,\"b\":212}\n",
+            "{\"a\":0.3048,\"b\":100.0}\n");
+
+      check("JSON, members in other order",true,lengthAndTemp,
+            "{\"a\":1,\"b\":212}\n{\"b\":32,\"a\":4}\n",
+            "{\"a\":0.3048,\"b\":100.0}\n{\"b\":0.0,\"a\":1.2192}\n");
+
+      check("JSON, columns in other order",true,tempAndLength,
+            "{\"a\":1, \"x\":[1,{\"b\":2}], \"b\":212}\n{\"b\":32,\"a\":4}\n",
+            "{\"a\":0.3048, \"x\":[1,{\"b\":2}], \"b\":100.0}\n{\"b\":0.0,\"a\":1.2192}\n");
+
+      check("JSON, missing and null values",true,lengthAndTemp,
+            "{\"b\":212}\n{\"b\":null,\"a\":4}\n{}\n",
+            "{\"b\":100.0}\n{\"b\":null,\"a\":1.2192}\n{}\n");
+
+      check("JSON, malformed lines",true,lengthAndTemp,
+            "{\"a\":1}\n[1,2]\n{\"a\":2 \"b\":212}\n{\"\n{\"b\":32}\n",
+            "{\"a\":0.3048}\n[1,2]\n{\"a\":2 \"b\":212}\n{\"\n{\"b\":0.0}\n");
+
+      System.out.println(failures==0? "All cases passed." : failures + " cases failed.");
+      System.exit(failures==0? 0 : 1);
+    }
+
+
+  //=====================================================================
+  //  Convert 'input' with column specifications 'specs'
+  //  and compare the output with 'expected'.
+  //=====================================================================
+  private static void check
+    ( final String name, boolean json, final String[] specs,
+      final String input, final String expected)
+    {
+      Charset cs = Charset.forName("UTF-8");
+      String result;
+      try
+      {
+        StreamConvert.Column[] cols = new StreamConvert.Column[specs.length];
+        for (int i=0;i<specs.length;i++)
+          cols[i] = StreamConvert.Column.parse(specs[i]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamConvert sc = new StreamConvert
+          (Channels.newChannel(new ByteArrayInputStream(input.getBytes(cs))),
+           Channels.newChannel(out),cs,json,',',cols);
+        sc.process();
+        result = new String(out.toByteArray(),cs);
+      }
+      catch (Throwable t)
+      { result = "error: " + t; }
+
+      if (!result.equals(expected))
+      {
+        failures++;
+        System.out.println(name + "\n  expected: " + expected.replace("\n","\\n")
+                           + "\n  result:   " + result.replace("\n","\\n"));
+      }
+    }
+}
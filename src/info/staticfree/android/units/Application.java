@@ -1,6 +1,7 @@
 package info.staticfree.android.units;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -43,6 +44,7 @@ public class Application extends android.app.Application {
         Env.locale = Locale.getDefault().toString();
         Env.quiet = true;
         Env.oneline = true;
+        Env.snapshot = new File(getCacheDir(), "units.snap").getPath();
 
 
         Env.out = new Env.Writer(){
@@ -0,0 +1,279 @@
+package info.staticfree.android.units;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * In-memory index of unit and function names for autocompletion, ranked
+ * by use count like {@link UnitUsageDBHelper#USAGE_SORT}: most used first,
+ * then by name.
+ *
+ * The names are kept in a trie whose every node holds the top
+ * completions of its prefix, so a completion is a walk down the trie
+ * followed by a copy of at most {@code k} entries, whatever the number
+ * of names. There is a second trie for each fingerprint, holding only
+ * the names of that fingerprint, for completions conformable with
+ * the other field.
+ *
+ * Use counts can only grow. An entry can then only move up in the top
+ * lists, so the lists along its path can be updated without looking at
+ * the rest of the trie.
+ *
+ * Each entry carries the _ID of its row in the usage table. A name that
+ * is added before its row is written gets a negative ID, unique in the
+ * index, until its real ID is set with {@link #setId(String, long)}.
+ *
+ * All methods are synchronized; completions are copies. This class does
+ * not depend on Android.
+ */
+public class AutocompleteIndex {
+
+	/**
+	 * A unit or function name with its fingerprint and use count.
+	 */
+	public static class Entry {
+		private volatile long id;
+		public final String name;
+		/**
+		 * The fingerprint, or null if the name cannot be evaluated.
+		 */
+		public final Long fingerprint;
+		private int count;
+
+		private Entry(long id, String name, Long fingerprint, int count){
+			this.id = id;
+			this.name = name;
+			this.fingerprint = fingerprint;
+			this.count = count;
+		}
+
+		/**
+		 * @return the _ID of the row of the name in the usage table, or a
+		 *         negative number if the row has not been written yet
+		 */
+		public long getId(){
+			return id;
+		}
+
+		/**
+		 * @param other another entry
+		 * @return true if this entry is listed before the other one
+		 */
+		private boolean before(Entry other){
+			return count != other.count ? count > other.count : name.compareTo(other.name) < 0;
+		}
+	}
+
+	private static class Node {
+		private static final Node[] NO_NODES = new Node[0];
+		private static final Entry[] NO_ENTRIES = new Entry[0];
+
+		// children, sorted by character.
+		char[] chars = new char[0];
+		Node[] children = NO_NODES;
+
+		// top entries of the prefix, best first.
+		Entry[] top = NO_ENTRIES;
+		int size = 0;
+
+		Node child(char c, boolean create){
+			int lo = 0, hi = chars.length;
+			while (lo < hi){
+				final int mid = (lo + hi) >>> 1;
+				if (chars[mid] < c){
+					lo = mid + 1;
+				}else{
+					hi = mid;
+				}
+			}
+			if (lo < chars.length && chars[lo] == c){
+				return children[lo];
+			}
+			if (!create){
+				return null;
+			}
+			final char[] newChars = new char[chars.length + 1];
+			final Node[] newChildren = new Node[chars.length + 1];
+			System.arraycopy(chars, 0, newChars, 0, lo);
+			System.arraycopy(children, 0, newChildren, 0, lo);
+			System.arraycopy(chars, lo, newChars, lo + 1, chars.length - lo);
+			System.arraycopy(children, lo, newChildren, lo + 1, chars.length - lo);
+			newChars[lo] = c;
+			newChildren[lo] = new Node();
+			chars = newChars;
+			children = newChildren;
+			return newChildren[lo];
+		}
+
+		/**
+		 * Enters a new entry, or one whose count has grown, into the top list.
+		 */
+		void offer(Entry e, int k){
+			int i = 0;
+			while (i < size && top[i] != e){
+				i++;
+			}
+			if (i == size){
+				if (size == k){
+					if (!e.before(top[size - 1])){
+						return;
+					}
+					i = size - 1;
+				}else{
+					if (size == top.length){
+						final Entry[] newTop = new Entry[Math.min(k, Math.max(4, 2 * size))];
+						System.arraycopy(top, 0, newTop, 0, size);
+						top = newTop;
+					}
+					size++;
+				}
+				top[i] = e;
+			}
+			for (; i > 0 && e.before(top[i - 1]); i--){
+				top[i] = top[i - 1];
+				top[i - 1] = e;
+			}
+		}
+	}
+
+	private final int k;
+	private final Node root = new Node();
+	private final HashMap<Long, Node> conformingRoots = new HashMap<Long, Node>();
+	private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * @param k maximum number of completions of a prefix
+	 */
+	public AutocompleteIndex(int k){
+		this.k = k;
+	}
+
+	// number of entries added without an ID.
+	private long unwritten = 0;
+
+	/**
+	 * Adds a name. Does nothing if the name is already in the index.
+	 *
+	 * @param id the _ID of the row of the name in the usage table, or a negative number
+	 *           if it has not been written yet
+	 * @param name the unit name, or function name followed by an open paren
+	 * @param fingerprint the fingerprint, or null if the name cannot be evaluated
+	 * @param count the use count
+	 */
+	public synchronized void add(long id, String name, Long fingerprint, int count){
+		if (entries.containsKey(name)){
+			return;
+		}
+		if (id < 0){
+			id = -(++unwritten);
+		}
+		final Entry e = new Entry(id, name, fingerprint, count);
+		entries.put(name, e);
+		if (fingerprint != null && !conformingRoots.containsKey(fingerprint)){
+			conformingRoots.put(fingerprint, new Node());
+		}
+		update(e, true);
+	}
+
+	/**
+	 * Adds to the use count of a name.
+	 *
+	 * @param name the name
+	 * @param n number of new uses
+	 * @return false if the name is not in the index
+	 */
+	public synchronized boolean increment(String name, int n){
+		final Entry e = entries.get(name);
+		if (e == null){
+			return false;
+		}
+		e.count += n;
+		update(e, false);
+		return true;
+	}
+
+	/**
+	 * Sets the ID of a name whose row has been written.
+	 *
+	 * @param name the name
+	 * @param id the _ID of its row in the usage table
+	 */
+	public synchronized void setId(String name, long id){
+		final Entry e = entries.get(name);
+		if (e != null){
+			e.id = id;
+		}
+	}
+
+	/**
+	 * @return the names whose rows have not been written yet
+	 */
+	public synchronized List<String> getUnwritten(){
+		final ArrayList<String> names = new ArrayList<String>();
+		if (unwritten > 0){
+			for (final Entry e: entries.values()){
+				if (e.id < 0){
+					names.add(e.name);
+				}
+			}
+		}
+		return names;
+	}
+
+	public synchronized boolean contains(String name){
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * @param name the name
+	 * @return the use count of the name, or -1 if the name is not in the index
+	 */
+	public synchronized int getCount(String name){
+		final Entry e = entries.get(name);
+		return e == null ? -1 : e.count;
+	}
+
+	public synchronized int size(){
+		return entries.size();
+	}
+
+	/**
+	 * Finds the most used names that start with a prefix.
+	 *
+	 * @param prefix the prefix; empty for all names
+	 * @param fingerprint if not null, only names with this fingerprint are found
+	 * @return at most k entries, most used first
+	 */
+	public synchronized List<Entry> complete(CharSequence prefix, Long fingerprint){
+		Node node = fingerprint == null ? root : conformingRoots.get(fingerprint);
+		for (int i = 0; node != null && i < prefix.length(); i++){
+			node = node.child(prefix.charAt(i), false);
+		}
+		final ArrayList<Entry> result = new ArrayList<Entry>(node == null ? 0 : node.size);
+		if (node != null){
+			for (int i = 0; i < node.size; i++){
+				result.add(node.top[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Enters the entry into the top lists along its paths.
+	 */
+	private void update(Entry e, boolean create){
+		update(root, e, create);
+		if (e.fingerprint != null){
+			update(conformingRoots.get(e.fingerprint), e, create);
+		}
+	}
+
+	private void update(Node node, Entry e, boolean create){
+		node.offer(e, k);
+		for (int i = 0; i < e.name.length(); i++){
+			node = node.child(e.name.charAt(i), create);
+			node.offer(e, k);
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package info.staticfree.android.units;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Substring search over unit names and the descriptions of their
+ * classifications, with results ranked by use count.
+ *
+ * Every n-gram of length 1 to 3 of the lowercase name and description of
+ * an item has a posting list of the items containing it, in order of rank:
+ * most used first. A query of up to 3 characters is answered by one list;
+ * a longer query walks the shortest list of its trigrams, keeps items found
+ * in all the other lists, and checks that they really contain the query.
+ * The walk stops once enough results are found, so only the best matches
+ * are looked at.
+ *
+ * Use counts can be changed after the index is built. The items are then
+ * ranked again by the next search; as counts change little between
+ * searches, the posting lists are nearly in order and are sorted again
+ * in about linear time. Items keep their numbers.
+ *
+ * All methods are synchronized. This class does not depend on Android.
+ */
+public class SubstringIndex {
+	private static final int GRAM = 3;
+	private static final int[] NONE = new int[0];
+
+	private final long[] ids;
+	private final String[] names;
+	private final String[] descriptions;
+	private final int[] counts;
+	// lowercase names and descriptions, searched by queries.
+	private final String[] keys;
+	private final HashMap<String, Integer> items = new HashMap<String, Integer>();
+	private final Map<Long, int[]> postings = new HashMap<Long, int[]>();
+
+	// items in order of rank, and the rank of each item.
+	private final Integer[] byRank;
+	private final int[] rank;
+	// false if counts have changed since the items were ranked.
+	private boolean ranked;
+
+	// most used first, then by name.
+	private final Comparator<Integer> rankOrder = new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			if (counts[a] != counts[b]){
+				return counts[a] > counts[b] ? -1 : 1;
+			}
+			return names[a].compareTo(names[b]);
+		}
+	};
+
+	/**
+	 * @param ids IDs of the items
+	 * @param names unit names, without duplicates
+	 * @param descriptions descriptions of the classifications of the units; elements may be null
+	 * @param counts use counts of the units
+	 */
+	public SubstringIndex(long[] ids, String[] names, String[] descriptions, int[] counts){
+		final int n = names.length;
+		this.ids = new long[n];
+		this.names = new String[n];
+		this.descriptions = new String[n];
+		this.counts = new int[n];
+		this.keys = new String[n];
+		for (int i = 0; i < n; i++){
+			this.ids[i] = ids[i];
+			this.names[i] = names[i];
+			this.descriptions[i] = descriptions[i];
+			this.counts[i] = counts[i];
+			final String lower = names[i].toLowerCase();
+			keys[i] = descriptions[i] == null ? lower : lower + '\n' + descriptions[i].toLowerCase();
+			items.put(names[i], i);
+		}
+
+		byRank = new Integer[n];
+		for (int i = 0; i < n; i++){
+			byRank[i] = i;
+		}
+		Arrays.sort(byRank, rankOrder);
+		rank = new int[n];
+		for (int r = 0; r < n; r++){
+			rank[byRank[r]] = r;
+		}
+		ranked = true;
+
+		// items are added in order of rank, so the lists are in order of rank.
+		final HashMap<Long, IntList> lists = new HashMap<Long, IntList>();
+		for (int r = 0; r < n; r++){
+			final int item = byRank[r];
+			final String key = keys[item];
+			for (int start = 0; start < key.length(); start++){
+				for (int len = 1; len <= GRAM && start + len <= key.length(); len++){
+					final long gram = gram(key, start, len);
+					if (gram < 0){
+						break;
+					}
+					IntList list = lists.get(gram);
+					if (list == null){
+						list = new IntList();
+						lists.put(gram, list);
+					}
+					list.addOnce(item);
+				}
+			}
+		}
+		for (final Map.Entry<Long, IntList> e: lists.entrySet()){
+			postings.put(e.getKey(), e.getValue().toArray());
+		}
+	}
+
+	/**
+	 * Packs characters start through start+len-1 of s into a number,
+	 * or returns -1 if they span the newline between name and description.
+	 */
+	private static long gram(CharSequence s, int start, int len){
+		long g = len;
+		for (int i = start; i < start + len; i++){
+			final char c = s.charAt(i);
+			if (c == '\n'){
+				return -1;
+			}
+			g = (g << 16) | c;
+		}
+		return g;
+	}
+
+	/**
+	 * Adds to the use count of an item.
+	 *
+	 * @param name name of the item
+	 * @param n number of new uses
+	 * @return false if there is no item of that name
+	 */
+	public synchronized boolean addToCount(String name, int n){
+		final Integer item = items.get(name);
+		if (item == null){
+			return false;
+		}
+		counts[item] += n;
+		ranked = false;
+		return true;
+	}
+
+	/**
+	 * Sets the use count of an item.
+	 *
+	 * @param name name of the item
+	 * @param count the use count
+	 * @return false if there is no item of that name
+	 */
+	public synchronized boolean setCount(String name, int count){
+		final Integer item = items.get(name);
+		if (item == null){
+			return false;
+		}
+		counts[item] = count;
+		ranked = false;
+		return true;
+	}
+
+	/**
+	 * Ranks the items again after their counts have changed. Insertion sorts
+	 * are used, as the orders are nearly right.
+	 */
+	private void rank(){
+		for (int i = 1; i < byRank.length; i++){
+			final Integer item = byRank[i];
+			int j = i;
+			for (; j > 0 && rankOrder.compare(byRank[j - 1], item) > 0; j--){
+				byRank[j] = byRank[j - 1];
+			}
+			byRank[j] = item;
+		}
+		for (int r = 0; r < byRank.length; r++){
+			rank[byRank[r]] = r;
+		}
+		for (final int[] list: postings.values()){
+			for (int i = 1; i < list.length; i++){
+				final int item = list[i];
+				int j = i;
+				for (; j > 0 && rank[list[j - 1]] > rank[item]; j--){
+					list[j] = list[j - 1];
+				}
+				list[j] = item;
+			}
+		}
+		ranked = true;
+	}
+
+	/**
+	 * Finds the items whose name or description contains the query,
+	 * ignoring case.
+	 *
+	 * @param query the query; if empty, all items match
+	 * @param limit maximum number of results
+	 * @return the matching items, best ranked first
+	 */
+	public synchronized int[] search(String query, int limit){
+		final String q = query.toLowerCase();
+		if (q.indexOf('\n') >= 0 || limit <= 0){
+			return NONE;
+		}
+		if (!ranked){
+			rank();
+		}
+		if (q.length() == 0){
+			final int[] all = new int[Math.min(limit, byRank.length)];
+			for (int i = 0; i < all.length; i++){
+				all[i] = byRank[i];
+			}
+			return all;
+		}
+		if (q.length() <= GRAM){
+			final int[] list = postings.get(gram(q, 0, q.length()));
+			return list == null ? NONE : copyOf(list, Math.min(limit, list.length));
+		}
+
+		// posting lists of all trigrams of the query, shortest first.
+		final int[][] lists = new int[q.length() - GRAM + 1][];
+		for (int i = 0; i < lists.length; i++){
+			lists[i] = postings.get(gram(q, i, GRAM));
+			if (lists[i] == null){
+				return NONE;
+			}
+		}
+		Arrays.sort(lists, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return a.length - b.length;
+			}
+		});
+
+		final int[] pos = new int[lists.length];
+		final ArrayList<Integer> found = new ArrayList<Integer>();
+		candidates:
+		for (final int item: lists[0]){
+			for (int j = 1; j < lists.length; j++){
+				// items come in order of rank, so each list is searched from where the last search ended.
+				final int p = find(lists[j], pos[j], item);
+				pos[j] = p;
+				if (p == lists[j].length || lists[j][p] != item){
+					continue candidates;
+				}
+			}
+			if (keys[item].contains(q)){
+				found.add(item);
+				if (found.size() == limit){
+					break;
+				}
+			}
+		}
+		final int[] result = new int[found.size()];
+		for (int i = 0; i < result.length; i++){
+			result[i] = found.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the first position at or after 'from' in 'list' whose
+	 *         element is not ranked before 'item'
+	 */
+	private int find(int[] list, int from, int item){
+		int lo = from, hi = list.length;
+		while (lo < hi){
+			final int mid = (lo + hi) >>> 1;
+			if (rank[list[mid]] < rank[item]){
+				lo = mid + 1;
+			}else{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	// Arrays.copyOf is not available on older devices.
+	private static int[] copyOf(int[] a, int length){
+		final int[] copy = new int[length];
+		System.arraycopy(a, 0, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * @return the number of items
+	 */
+	public synchronized int size(){
+		return names.length;
+	}
+
+	public synchronized long getId(int item){
+		return ids[item];
+	}
+
+	public synchronized String getName(int item){
+		return names[item];
+	}
+
+	/**
+	 * @param item the item
+	 * @return the description of the classification, or null if there is none
+	 */
+	public synchronized String getDescription(int item){
+		return descriptions[item];
+	}
+
+	public synchronized int getCount(int item){
+		return counts[item];
+	}
+
+	/**
+	 * Growable list of ints, for building the posting lists.
+	 */
+	private static class IntList {
+		private int[] items = new int[4];
+		private int size = 0;
+
+		/**
+		 * Adds an item unless it is the last one; items are added in order of rank.
+		 */
+		void addOnce(int item){
+			if (size > 0 && items[size - 1] == item){
+				return;
+			}
+			if (size == items.length){
+				final int[] newItems = new int[2 * size];
+				System.arraycopy(items, 0, newItems, 0, size);
+				items = newItems;
+			}
+			items[size++] = item;
+		}
+
+		int[] toArray(){
+			return copyOf(items, size);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package info.staticfree.android.units;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The data loaded into the unit usage database on first run: all unit and
+ * function names with their initial weights and fingerprints, and the
+ * classification of fingerprints.
+ *
+ * The data is precomputed from units.dat and the weight and classification
+ * JSON files by {@code UnitInitDataGenerator} (see tools/Makefile) and stored
+ * as a raw resource, so that nothing needs to be parsed or evaluated on the
+ * device. Units are sorted by name, in the order they are inserted.
+ *
+ * This class does not depend on Android, so the resource can be written
+ * on a plain JVM.
+ *
+ * @see UnitUsageDBHelper#loadInitialUnitUsage()
+ */
+public class UnitInitData {
+	private static final int MAGIC = 0x554e4944; // "UNID"
+	private static final int VERSION = 1;
+
+	private static final int
+		FLAG_WEIGHTED = 1,
+		FLAG_FINGERPRINT = 2;
+
+	private final String[] names;
+	private final int[] weights;
+	private final long[] fingerprints;
+	private final byte[] flags;
+
+	private final long[] classFingerprints;
+	private final String[] classDescriptions;
+
+	private UnitInitData(int units, int classifications){
+		names = new String[units];
+		weights = new int[units];
+		fingerprints = new long[units];
+		flags = new byte[units];
+		classFingerprints = new long[classifications];
+		classDescriptions = new String[classifications];
+	}
+
+	/**
+	 * Creates the data from its parts.
+	 *
+	 * @param names unit names, sorted
+	 * @param weights initial weights of the units
+	 * @param weighted true for units that have a weight in one of the weight files
+	 * @param fingerprints fingerprints of the units, or null where a unit cannot be evaluated
+	 * @param classFingerprints fingerprints that have a classification, without duplicates
+	 * @param classDescriptions descriptions of the classifications
+	 */
+	public UnitInitData(String[] names, int[] weights, boolean[] weighted, Long[] fingerprints,
+			long[] classFingerprints, String[] classDescriptions){
+		this(names.length, classFingerprints.length);
+		for (int i = 0; i < names.length; i++){
+			if (i > 0 && names[i-1].compareTo(names[i]) >= 0){
+				throw new IllegalArgumentException("unit names are not sorted: "+names[i]);
+			}
+			this.names[i] = names[i];
+			this.weights[i] = weights[i];
+			if (weighted[i]){
+				flags[i] |= FLAG_WEIGHTED;
+			}
+			if (fingerprints[i] != null){
+				flags[i] |= FLAG_FINGERPRINT;
+				this.fingerprints[i] = fingerprints[i];
+			}
+		}
+		System.arraycopy(classFingerprints, 0, this.classFingerprints, 0, classFingerprints.length);
+		System.arraycopy(classDescriptions, 0, this.classDescriptions, 0, classDescriptions.length);
+	}
+
+	/**
+	 * Reads the data. The stream is not closed.
+	 *
+	 * @param is the stream written by {@link #write(OutputStream)}
+	 * @return the data
+	 * @throws IOException if the stream cannot be read or is not in the right format
+	 */
+	public static UnitInitData read(InputStream is) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(is, 16384));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION){
+			throw new IOException("not unit initialization data of version "+VERSION);
+		}
+		final int units = in.readInt();
+		final int classifications = in.readInt();
+		final UnitInitData data = new UnitInitData(units, classifications);
+		for (int i = 0; i < units; i++){
+			data.names[i] = in.readUTF();
+			data.flags[i] = in.readByte();
+			data.weights[i] = in.readInt();
+			if ((data.flags[i] & FLAG_FINGERPRINT) != 0){
+				data.fingerprints[i] = in.readLong();
+			}
+		}
+		for (int i = 0; i < classifications; i++){
+			data.classFingerprints[i] = in.readLong();
+			data.classDescriptions[i] = in.readUTF();
+		}
+		return data;
+	}
+
+	/**
+	 * Writes the data. The stream is flushed, but not closed.
+	 *
+	 * @param os the stream
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void write(OutputStream os) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(names.length);
+		out.writeInt(classFingerprints.length);
+		for (int i = 0; i < names.length; i++){
+			out.writeUTF(names[i]);
+			out.writeByte(flags[i]);
+			out.writeInt(weights[i]);
+			if ((flags[i] & FLAG_FINGERPRINT) != 0){
+				out.writeLong(fingerprints[i]);
+			}
+		}
+		for (int i = 0; i < classFingerprints.length; i++){
+			out.writeLong(classFingerprints[i]);
+			out.writeUTF(classDescriptions[i]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * @return the number of units
+	 */
+	public int getUnitCount(){
+		return names.length;
+	}
+
+	/**
+	 * Finds a unit by name.
+	 *
+	 * @param name name of the unit
+	 * @return the index of the unit, or a negative number if there is no such unit
+	 */
+	public int find(String name){
+		return Arrays.binarySearch(names, name);
+	}
+
+	public String getName(int unit){
+		return names[unit];
+	}
+
+	public int getWeight(int unit){
+		return weights[unit];
+	}
+
+	/**
+	 * @param unit index of the unit
+	 * @return true if the unit has a weight in one of the weight files,
+	 *         even if it is not a known unit
+	 */
+	public boolean isWeighted(int unit){
+		return (flags[unit] & FLAG_WEIGHTED) != 0;
+	}
+
+	/**
+	 * @param unit index of the unit
+	 * @return the fingerprint of the unit, or null if it cannot be evaluated
+	 */
+	public Long getFingerprint(int unit){
+		return (flags[unit] & FLAG_FINGERPRINT) != 0 ? fingerprints[unit] : null;
+	}
+
+	/**
+	 * @return the number of classifications
+	 */
+	public int getClassificationCount(){
+		return classFingerprints.length;
+	}
+
+	public long getClassificationFingerprint(int classification){
+		return classFingerprints[classification];
+	}
+
+	public String getClassificationDescription(int classification){
+		return classDescriptions[classification];
+	}
+}
@@ -16,17 +16,11 @@ package info.staticfree.android.units;
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,22 +28,15 @@ import net.sourceforge.unitsinjava.BuiltInFunction;
 import net.sourceforge.unitsinjava.DefinedFunction;
 import net.sourceforge.unitsinjava.EvalError;
 import net.sourceforge.unitsinjava.Unit;
-import net.sourceforge.unitsinjava.Value;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import android.Manifest;
 import android.app.Activity;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.os.Environment;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Handler;
 import android.os.Message;
 import android.text.Editable;
@@ -64,7 +51,8 @@ import android.widget.TextView;
  * In order to sort through all the possible units, a database of weights is used.
  * Units with a higher weight are shown first in all lists.
  * Weights are initialized from static JSON files, including regional weights (eg.
- * to put imperial units above metric in the US).
+ * to put imperial units above metric in the US). These are compiled, along with
+ * the fingerprints of all units, into the {@link UnitInitData} resource.
  *
  * @author steve
  *
@@ -80,12 +68,15 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 		DB_CLASSIFICATION_INDEX = "factor_fprints_classification";
 
 	private final Context context;
+	private UnitInitData initData;
 
 	// TODO add a preference that remembers the last loaded version. Load new
-	// units and fingerprints.
+	// units and fingerprints. The data loaded on first run is generated by
+	// tools/Makefile from units.dat and the weight and classification files.
 	@SuppressWarnings("unused")
 	private static final String UNITS_DAT_VERSION = "1.50";
-	private static final int DB_VERSION = 5;
+	// version 6: fingerprints are 64-bit dimension hashes rather than strings.
+	private static final int DB_VERSION = 6;
 
 	public UnitUsageDBHelper(Context context) {
 		super(context, DB_NAME, null, DB_VERSION);
@@ -99,7 +90,7 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 				"'" + UsageEntry._ID 			+ "' INTEGER PRIMARY KEY," +
 				"'" + UsageEntry._UNIT			+ "' TEXT UNIQUE ON CONFLICT IGNORE," +
 				"'" + UsageEntry._USE_COUNT 	+ "' INTEGER," +
-				"'" + UsageEntry._FACTOR_FPRINT + "' TEXT" +
+				"'" + UsageEntry._FACTOR_FPRINT + "' INTEGER" +
 				")");
 		db.execSQL("CREATE INDEX '"+DB_USAGE_INDEX+"' ON "+DB_USAGE_TABLE + " (" +UsageEntry._FACTOR_FPRINT+ ")");
 
@@ -107,13 +98,24 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 				"' ("+
 				"'" + ClassificationEntry._ID 				+ "' INTEGER PRIMARY KEY," +
 				"'" + ClassificationEntry._DESCRIPTION 		+ "' TEXT," +
-				"'"	+ ClassificationEntry._FACTOR_FPRINT 	+ "' TEXT UNIQUE"+
+				"'"	+ ClassificationEntry._FACTOR_FPRINT 	+ "' INTEGER UNIQUE"+
 				")");
 		db.execSQL("CREATE UNIQUE INDEX '"+DB_CLASSIFICATION_INDEX+"' ON "+DB_CLASSIFICATION_TABLE + " (" +ClassificationEntry._FACTOR_FPRINT+ ")");
 	}
 
+	/**
+	 * Tables of version 5, whose fingerprints are strings, are migrated: the units
+	 * and their use counts are kept, and the fingerprints are computed again.
+	 * Tables of older versions are rebuilt, and are then loaded again as on first run.
+	 */
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		// SQLiteOpenHelper runs this in a transaction, so the old tables are kept
+		// if the migration fails.
+		if (oldVersion == 5){
+			migrateStringFingerprints(db);
+			return;
+		}
 		db.execSQL("DROP TABLE IF EXISTS "+ DB_USAGE_TABLE);
 		db.execSQL("DROP TABLE IF EXISTS "+ DB_CLASSIFICATION_TABLE);
 
@@ -123,6 +125,61 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 
 	}
 
+	/**
+	 * Copies the usage table of version 5 into the current schema, with the 64-bit
+	 * fingerprints of {@link ValueGui#getFingerprint(String)}. Fingerprints are taken
+	 * from {@link UnitInitData} where possible; other units are evaluated. The
+	 * classifications are not user data, so they are loaded again.
+	 *
+	 * @param db the database, in a transaction
+	 */
+	private void migrateStringFingerprints(SQLiteDatabase db){
+		final String oldUsageTable = DB_USAGE_TABLE + "_v5";
+		db.execSQL("DROP INDEX IF EXISTS "+ DB_USAGE_INDEX);
+		db.execSQL("DROP INDEX IF EXISTS "+ DB_CLASSIFICATION_INDEX);
+		db.execSQL("ALTER TABLE "+DB_USAGE_TABLE+" RENAME TO "+oldUsageTable);
+		db.execSQL("DROP TABLE IF EXISTS "+ DB_CLASSIFICATION_TABLE);
+		onCreate(db);
+
+		final UnitInitData data = getInitData();
+		final SQLiteStatement insert = db.compileStatement("INSERT INTO "+DB_USAGE_TABLE+" ("+
+				UsageEntry._ID+","+UsageEntry._UNIT+","+UsageEntry._USE_COUNT+","+UsageEntry._FACTOR_FPRINT+") VALUES (?,?,?,?)");
+		final String[] projection = {UsageEntry._ID, UsageEntry._UNIT, UsageEntry._USE_COUNT};
+		final Cursor c = db.query(oldUsageTable, projection, null, null, null, null, null);
+		int migrated = 0;
+		try {
+			while (c.moveToNext()){
+				final String unitName = c.getString(1);
+				if (unitName == null){
+					continue;
+				}
+				final int i = data != null ? data.find(unitName) : -1;
+				final Long fpr = i >= 0 ? data.getFingerprint(i) : ValueGui.getFingerprint(unitName);
+				insert.bindLong(1, c.getLong(0));
+				insert.bindString(2, unitName);
+				insert.bindLong(3, c.getLong(2));
+				if (fpr != null){
+					insert.bindLong(4, fpr);
+				}else{
+					insert.bindNull(4);
+				}
+				insert.executeInsert();
+				migrated++;
+			}
+		}finally{
+			c.close();
+			insert.close();
+		}
+		db.execSQL("DROP TABLE "+oldUsageTable);
+
+		if (data != null){
+			insertClassifications(db, data);
+		}
+		// the tables are not empty, so there will be no first-run load.
+		initData = null;
+		Log.d(TAG, "Migrated "+migrated+" units to 64-bit fingerprints.");
+	}
+
 	public int getUnitUsageDbCount(){
 		final SQLiteDatabase db = getReadableDatabase();
 		final String[] proj = {UsageEntry._ID};
@@ -137,225 +194,242 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 		return count;
 	}
 
-	@SuppressWarnings("unchecked")
-	public HashMap<String,String> loadFingerprints(){
-		final HashMap<String, String> fingerprints = new HashMap<String, String>();
-		try {
-			final JSONObject fprints = loadJsonObjectFromRawResource(context, R.raw.fingerprints);
-			for (final Iterator i = fprints.keys(); i.hasNext(); ){
-				final String key = (String) i.next();
-				fingerprints.put(key, fprints.optString(key));
-			}
-		} catch (final Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		return fingerprints;
-	}
-
-
-	public static String getFingerprint(String unitName){
-
-		String fpr = null;
-		try {
-			Value unit;
-			// this is done here to allow for unicode that maps to functions
-			unitName = Units.unicodeToAscii(unitName);
-			if (unitName.endsWith("(")){
-				final DefinedFunction f = DefinedFunction.table.get(unitName.substring(0, unitName.length()-1));
-				if (f != null){
-					unit = f.getConformability();
-				}else{
-					// non-DefinedFunctions are built in and compatible with numbers.
-					unit = Value.fromString("0");
+	/**
+	 * Reads the precomputed data that is loaded on first run.
+	 *
+	 * @return the data, or null if it cannot be read
+	 */
+	private UnitInitData getInitData(){
+		if (initData == null){
+			try {
+				final InputStream is = context.getResources().openRawResource(R.raw.unit_init_data);
+				try {
+					initData = UnitInitData.read(is);
+				}finally{
+					is.close();
 				}
-			}else{
-				unit = ValueGui.fromUnicodeString(unitName);
-
+			} catch (final IOException e) {
+				Log.e(TAG, "could not read initial unit data", e);
 			}
-			if (unit != null){
-				fpr = ValueGui.getFingerprint(unit);
-			}
-		}catch (final EvalError e){
-			// skip things we can't handle
 		}
-		return fpr;
+		return initData;
 	}
 
+	/**
+	 * Fills the usage table with all units and functions, with their initial
+	 * weights and fingerprints. These are taken from the precomputed
+	 * {@link UnitInitData}; only units that are missing from it, for example
+	 * because they are defined for another locale, are evaluated here.
+	 */
 	public void loadInitialUnitUsage(){
-		final SQLiteDatabase db = getWritableDatabase();
-		// load the initial table in
-		final ContentValues cv = new ContentValues();
+		final UnitInitData data = getInitData();
+		if (data == null){
+			return;
+		}
 
-		Log.d(TAG, "init all weights hash");
-		final HashMap<String, Integer> allUnitWeights =
-			new HashMap<String, Integer>(Unit.table.keySet().size());
-		Log.d(TAG, "adding all known weights...");
+		// This is so that things of common weight end up in non-random order
+		// without having to do an SQL order-by.
+		final TreeSet<String> sortedUnits = new TreeSet<String>();
+		Log.d(TAG, "adding all known units...");
 		for (final String unitName: Unit.table.keySet()){
 			// don't add all uppercase names
 			if (! unitName.toUpperCase().equals(unitName)){
-				allUnitWeights.put(unitName, 0);
+				sortedUnits.add(unitName);
 			}
 		}
 		Log.d(TAG, "adding all known functions...");
 		for (final String functionName: BuiltInFunction.table.keySet()){
-			allUnitWeights.put(functionName + "(", 0);
+			sortedUnits.add(functionName + "(");
 		}
-//		for (final String functionName: TabularFunction.table.keySet()){
-//			allUnitWeights.put(functionName + "(", 0);
-//		}
-//		for (final String functionName: ComputedFunction.table.keySet()){
-//			allUnitWeights.put(functionName + "(", 0);
-//		}
 		for (final String functionName: DefinedFunction.table.keySet()){
-			allUnitWeights.put(functionName + "(", 0);
+			sortedUnits.add(functionName + "(");
+		}
+		Log.d(TAG, "adding weighted units...");
+		for (int i = 0; i < data.getUnitCount(); i++){
+			if (data.isWeighted(i)){
+				sortedUnits.add(data.getName(i));
+			}
 		}
-		Log.d(TAG, "adding common weights");
-		addAll(loadInitialWeights(R.raw.common_weights), allUnitWeights);
-		Log.d(TAG, "adding regional weights");
-		addAll(loadInitialWeights(R.raw.regional_weights), allUnitWeights);
 
-		// This is so that things of common weight end up in non-random order
-		// without having to do an SQL order-by.
-		final ArrayList<String> sortedUnits = new ArrayList<String>(allUnitWeights.keySet());
-		Log.d(TAG, "Sorting units...");
-		Collections.sort(sortedUnits);
 		Log.d(TAG, "Adding all sorted units...");
-
-		final HashMap<String,String> fingerprints = loadFingerprints();
-
+		final SQLiteDatabase db = getWritableDatabase();
+		final SQLiteStatement insert = db.compileStatement("INSERT INTO "+DB_USAGE_TABLE+" ("+
+				UsageEntry._UNIT+","+UsageEntry._USE_COUNT+","+UsageEntry._FACTOR_FPRINT+") VALUES (?,?,?)");
+		int evaluated = 0;
 		db.beginTransaction();
-		for (final String unitName: sortedUnits){
-			cv.put(UsageEntry._UNIT, unitName);
-			cv.put(UsageEntry._USE_COUNT, allUnitWeights.get(unitName));
-
-			final String fpr = fingerprints.containsKey(unitName) ? fingerprints.get(unitName) : getFingerprint(unitName);
-
-			fingerprints.put(unitName, fpr);
-			cv.put(UsageEntry._FACTOR_FPRINT, fpr);
-			db.insert(DB_USAGE_TABLE, null, cv);
+		try {
+			for (final String unitName: sortedUnits){
+				final int i = data.find(unitName);
+				Long fpr;
+				if (i >= 0){
+					fpr = data.getFingerprint(i);
+				}else{
+					fpr = ValueGui.getFingerprint(unitName);
+					evaluated++;
+				}
+				insert.bindString(1, unitName);
+				insert.bindLong(2, i >= 0 ? data.getWeight(i) : 0);
+				if (fpr != null){
+					insert.bindLong(3, fpr);
+				}else{
+					insert.bindNull(3);
+				}
+				insert.executeInsert();
+			}
+			db.setTransactionSuccessful();
+		}finally{
+			db.endTransaction();
+			insert.close();
+			db.close();
 		}
-		db.setTransactionSuccessful();
-		db.endTransaction();
-		db.close();
 
+		invalidateAutocompleteIndex();
+		UnitsContentProvider.invalidateSearchIndex();
 		context.getContentResolver().notifyChange(UsageEntry.CONTENT_URI, null);
-
-		// If we have the right permissons, save the fingerprints file to a JSON file
-		// which can then be imported into the app to speed up initial fingerpint loading.
-		if (context.checkCallingOrSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED){
-			final File externalStorage = Environment.getExternalStorageDirectory();
-			final File fprintsOutput = new File(externalStorage, "units_fingerprints.json");
-			final JSONObject jo = new JSONObject(fingerprints);
-			try {
-				final FileWriter fw = new FileWriter(fprintsOutput);
-				fw.write(jo.toString(1));
-				fw.close();
-				Log.i(TAG, "fingerprints written to: "+fprintsOutput.getCanonicalPath());
-
-			} catch (final Exception e) {
-				e.printStackTrace();
-			}
-		}
-		Log.d(TAG, "done!");
+		Log.d(TAG, "done! "+evaluated+" units were not precomputed.");
 	}
 
-	@SuppressWarnings("unchecked")
 	public void loadUnitClassifications(){
-		final SQLiteDatabase db = getWritableDatabase();
-		final JSONObject jo = loadInitialWeights(R.raw.unit_classification);
+		final UnitInitData data = getInitData();
+		if (data == null){
+			return;
+		}
 
+		final SQLiteDatabase db = getWritableDatabase();
 		db.beginTransaction();
-		final ContentValues cv = new ContentValues();
-		for (final Iterator i = jo.keys(); i.hasNext(); ){
-			final String unit = (String)i.next();
-			final String description = jo.optString(unit);
-			final String fprint = getFingerprint(unit);
-			cv.put(ClassificationEntry._FACTOR_FPRINT, fprint);
-			cv.put(ClassificationEntry._DESCRIPTION, description);
-			db.insert(DB_CLASSIFICATION_TABLE, null, cv);
+		try {
+			insertClassifications(db, data);
+			db.setTransactionSuccessful();
+		}finally{
+			db.endTransaction();
+			db.close();
 		}
-		db.setTransactionSuccessful();
-		db.endTransaction();
-		db.close();
-		Log.d(TAG, "Successfully added "+jo.length()+" classification entries.");
+		UnitsContentProvider.invalidateSearchIndex();
+		Log.d(TAG, "Successfully added "+data.getClassificationCount()+" classification entries.");
+		// only needed on first run.
+		initData = null;
 	}
 
-	@SuppressWarnings("unchecked")
-	private void addAll(JSONObject unitWeights, HashMap<String, Integer> allWeights){
-		for (final Iterator i = unitWeights.keys(); i.hasNext(); ){
-			final String key = (String)i.next();
-			if (allWeights.containsKey(key)){
-				allWeights.put(key, allWeights.get(key) + unitWeights.optInt(key));
-			}else{
-				allWeights.put(key, unitWeights.optInt(key));
+	private static void insertClassifications(SQLiteDatabase db, UnitInitData data){
+		final SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO "+DB_CLASSIFICATION_TABLE+" ("+
+				ClassificationEntry._FACTOR_FPRINT+","+ClassificationEntry._DESCRIPTION+") VALUES (?,?)");
+		try {
+			for (int i = 0; i < data.getClassificationCount(); i++){
+				insert.bindLong(1, data.getClassificationFingerprint(i));
+				insert.bindString(2, data.getClassificationDescription(i));
+				insert.executeInsert();
 			}
+		}finally{
+			insert.close();
 		}
 	}
 
+	public final static String USAGE_SORT =  UsageEntry._USE_COUNT + " DESC, "+UsageEntry._UNIT + " ASC";
+
+	// maximum number of completions shown for a prefix.
+	private static final int AUTOCOMPLETE_SIZE = 50;
+	private static final String[] AUTOCOMPLETE_PROJECTION = {UsageEntry._ID, UsageEntry._UNIT, UsageEntry._USE_COUNT, UsageEntry._FACTOR_FPRINT};
+	private static final String[] AUTOCOMPLETE_COLUMNS = {UsageEntry._ID, UsageEntry._UNIT};
+	private static volatile AutocompleteIndex autocompleteIndex;
+
 	/**
-	 * A weight file is just a static JSON file used to set the initial
-	 * weights for unit recommendation precedence.
+	 * Gets the autocomplete index, loading it from the usage table the
+	 * first time. Do not call this on the UI thread.
 	 *
-	 * @param resourceId
-	 * @return
+	 * @param cr the content resolver
+	 * @return the index
 	 */
-	@SuppressWarnings("unchecked")
-	private JSONObject loadInitialWeights(int resourceId){
-		try{
-
-			final JSONObject jo = loadJsonObjectFromRawResource(context, resourceId);
-
-			// remove all "comments", which are just key entries that start with "--"
-			for (final Iterator i = jo.keys(); i.hasNext(); ){
-				final String key = (String)i.next();
-				if (key.startsWith("--")){
-					i.remove();
+	public static synchronized AutocompleteIndex getAutocompleteIndex(ContentResolver cr){
+		if (autocompleteIndex == null){
+			final AutocompleteIndex index = new AutocompleteIndex(AUTOCOMPLETE_SIZE);
+			final Cursor c = cr.query(UsageEntry.CONTENT_URI, AUTOCOMPLETE_PROJECTION, null, null, UsageEntry._ID);
+			try {
+				final int idCol = c.getColumnIndex(UsageEntry._ID);
+				final int unitCol = c.getColumnIndex(UsageEntry._UNIT);
+				final int countCol = c.getColumnIndex(UsageEntry._USE_COUNT);
+				final int fprintCol = c.getColumnIndex(UsageEntry._FACTOR_FPRINT);
+				while (c.moveToNext()){
+					index.add(c.getLong(idCol), c.getString(unitCol), c.isNull(fprintCol) ? null : c.getLong(fprintCol), c.getInt(countCol));
 				}
+			}finally{
+				c.close();
 			}
-
-			return jo;
-
-		}catch (final Exception e){
-			e.printStackTrace();
-			return null;
+			autocompleteIndex = index;
 		}
+		return autocompleteIndex;
 	}
 
-	private static JSONObject loadJsonObjectFromRawResource(Context context, int resourceId) throws IOException, JSONException{
-		final InputStream is = context.getResources().openRawResource(resourceId);
-
-		final StringBuilder jsonString = new StringBuilder();
-
-		for (final BufferedReader isReader = new BufferedReader(new InputStreamReader(is), 16000);
-		isReader.ready();){
-			jsonString.append(isReader.readLine());
+	/**
+	 * Sets the IDs of the names that were added to the autocomplete index
+	 * before their rows were written.
+	 *
+	 * @param cr the content resolver
+	 */
+	private static void setWrittenAutocompleteIds(ContentResolver cr){
+		final AutocompleteIndex index = getLoadedAutocompleteIndex();
+		if (index == null){
+			return;
+		}
+		final List<String> unwritten = index.getUnwritten();
+		final String[] projection = {UsageEntry._ID, UsageEntry._UNIT};
+		// SQLite limits the number of arguments of a statement.
+		for (int start = 0; start < unwritten.size(); start += 100){
+			final List<String> names = unwritten.subList(start, Math.min(start + 100, unwritten.size()));
+			final StringBuilder selection = new StringBuilder(UsageEntry._UNIT + " IN (");
+			for (int i = 0; i < names.size(); i++){
+				selection.append(i == 0 ? "?" : ",?");
+			}
+			selection.append(')');
+			final Cursor c = cr.query(UsageEntry.CONTENT_URI, projection, selection.toString(),
+					names.toArray(new String[names.size()]), null);
+			if (c == null){
+				return;
+			}
+			try {
+				while (c.moveToNext()){
+					index.setId(c.getString(1), c.getLong(0));
+				}
+			}finally{
+				c.close();
+			}
 		}
-		return new JSONObject(jsonString.toString());
 	}
 
+	/**
+	 * @return the autocomplete index, or null if it has not been loaded;
+	 *         does not wait for it to be loaded
+	 */
+	private static AutocompleteIndex getLoadedAutocompleteIndex(){
+		return autocompleteIndex;
+	}
 
-	public final static String USAGE_SORT =  UsageEntry._USE_COUNT + " DESC, "+UsageEntry._UNIT + " ASC";
-	private static final String CONFORMING_SELECTION = UsageEntry._FACTOR_FPRINT + " = ?";
+	/**
+	 * Makes the autocomplete index be loaded again, after the usage table
+	 * has been changed other than through {@link #logUnitUsed(String, Context)}.
+	 */
+	public static synchronized void invalidateAutocompleteIndex(){
+		autocompleteIndex = null;
+	}
 
 	private static String cachedEntryText;
-	private static String[] cachedEntryFprintArgs;
+	private static Long cachedEntryFprint;
 
 	/**
 	 * @param otherEntry
-	 * @return
+	 * @return the fingerprint of the expression in otherEntry, or null if
+	 *         it is empty or cannot be evaluated
 	 */
-	private synchronized static String[] getConformingSelectionArgs(TextView otherEntry){
+	private synchronized static Long getConformingFingerprint(TextView otherEntry){
 		final String otherEntryText = otherEntry.getText().toString();
 		if (otherEntryText.length() > 0){
 			if (otherEntryText.toString().equals(cachedEntryText)){
-				return cachedEntryFprintArgs;
+				return cachedEntryFprint;
 			}
 			try {
-				final String[] conformingSelectionArgs = {ValueGui.getFingerprint(ValueGui.fromUnicodeString(ValueGui.closeParens(otherEntryText)))};
+				final Long conformingFprint = ValueGui.getFingerprint(ValueGui.fromUnicodeString(ValueGui.closeParens(otherEntryText)));
 				cachedEntryText = otherEntryText;
-				cachedEntryFprintArgs = conformingSelectionArgs;
-				return conformingSelectionArgs;
+				cachedEntryFprint = conformingFprint;
+				return conformingFprint;
 			}catch (final EvalError e){
 				return null;
 			}
@@ -366,27 +440,14 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 	public static class UnitCursorAdapter extends SimpleCursorAdapter {
 
 		private static final int MSG_REQUERY = 0;
-		private boolean runningQuery;
 		private final ContentResolver mContentResolver;
 		private final TextView mOtherEntry;
 		private final Handler mHandler = new Handler(){
-			private int retryCount = 0;
 			@Override
 			public void handleMessage(Message msg) {
 				switch (msg.what){
 				case MSG_REQUERY:
-					if (!runningQuery){
-						getFilter().filter(null);
-						//notifyDataSetInvalidated();
-						retryCount = 0;
-					}else{
-						// XXX hack to work around race condition when clearing
-						// both fields at the same time.
-						if (retryCount < 2){
-							mHandler.sendEmptyMessageDelayed(MSG_REQUERY, 100);
-							retryCount++;
-						}
-					}
+					getFilter().filter(null);
 					break;
 				}
 			};
@@ -426,58 +487,44 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 			return super.swapCursor(c);
 		}
 
+		/**
+		 * Completes the last unit name in the constraint from the autocomplete
+		 * index, preferring units conformable with the other entry. The
+		 * database is only read the first time.
+		 */
 		@Override
 		public Cursor runQueryOnBackgroundThread(CharSequence constraint) {
 			if (getFilterQueryProvider() != null){
 				return getFilterQueryProvider().runQuery(constraint);
 			}
 
-			runningQuery = true;
-
-			final String[] selectionArgs = null;
-			final String selection = null;
-			Cursor c = null;
-
-			if (constraint == null || constraint.length() == 0){
-				c = queryWithConforming(mOtherEntry, selection, selectionArgs);
-			}else{
+			String prefix = "";
+			if (constraint != null && constraint.length() > 0){
 				final Matcher m = UNIT_EXTRACT_REGEX.matcher(constraint);
-				String modConstraint;
 				if (m.matches()){
-					modConstraint = m.group(1);
-					c = queryWithConforming(mOtherEntry, UsageEntry._UNIT +" GLOB ?", new String[] {modConstraint+"*"});
-				}else{
-					c = queryWithConforming(mOtherEntry, null, null);
+					prefix = m.group(1);
 				}
 			}
-			runningQuery = false;
-			return c;
+			return completeWithConforming(mOtherEntry, prefix);
 		}
 
-		private Cursor queryWithConforming(TextView otherEntry, String selection, String[] selectionArgs){
-			String conformingSelection = null;
-			String[] conformingSelectionArgs = getConformingSelectionArgs(otherEntry);
-
-			if (selection != null){
-				if (conformingSelectionArgs != null){
-					conformingSelection = CONFORMING_SELECTION + " AND " + selection;
-					final ArrayList<String> args = new ArrayList<String>();
-					args.add(conformingSelectionArgs[0]);
-					args.addAll(Arrays.asList(selectionArgs));
-					conformingSelectionArgs = args.toArray(new String[]{});
-				}else{
-					conformingSelection = selection;
-					conformingSelectionArgs = selectionArgs;
-				}
-			}else if (conformingSelectionArgs != null){
-				conformingSelection = CONFORMING_SELECTION;
+		private Cursor completeWithConforming(TextView otherEntry, String prefix){
+			final AutocompleteIndex index = getAutocompleteIndex(mContentResolver);
+			final Long conformingFprint = getConformingFingerprint(otherEntry);
+
+			List<AutocompleteIndex.Entry> completions = null;
+			if (conformingFprint != null){
+				completions = index.complete(prefix, conformingFprint);
 			}
-			Cursor c = mContentResolver.query(UsageEntry.CONTENT_URI, null, conformingSelection, conformingSelectionArgs, USAGE_SORT);
 			// If we don't get anything by conforming, the user may be attempting to ask for
 			// a complex result and we should just return everything.
-			if (c.getCount() == 0){
-				c.close();
-				c = mContentResolver.query(UsageEntry.CONTENT_URI, null, selection, selectionArgs, USAGE_SORT);
+			if (completions == null || completions.isEmpty()){
+				completions = index.complete(prefix, null);
+			}
+
+			final MatrixCursor c = new MatrixCursor(AUTOCOMPLETE_COLUMNS, completions.size());
+			for (final AutocompleteIndex.Entry e: completions){
+				c.addRow(new Object[] {e.getId(), e.name});
 			}
 			return c;
 		}
@@ -520,34 +567,83 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 	private static final Pattern UNIT_EXPONENTIAL_REGEX = Pattern.compile("[eE]");
 
 
-	private final static String[] INCREMENT_QUERY_PROJECTION = {UsageEntry._ID, UsageEntry._USE_COUNT, UsageEntry._UNIT};
+	// time between writes of the usage counts, in milliseconds.
+	private static final long USAGE_FLUSH_PERIOD = 30000;
+	private static UsageCounter usageCounter;
+
+	/**
+	 * Gets the counter of unit uses, which writes the counts to the
+	 * usage table every {@link #USAGE_FLUSH_PERIOD} ms.
+	 *
+	 * @param context any context of the application
+	 * @return the counter
+	 */
+	public static synchronized UsageCounter getUsageCounter(Context context){
+		if (usageCounter == null){
+			final ContentResolver cr = context.getApplicationContext().getContentResolver();
+			usageCounter = new UsageCounter(new UsageCounter.Sink() {
+				public void write(Map<String, Integer> counts) {
+					final ContentValues[] values = new ContentValues[counts.size()];
+					int i = 0;
+					for (final Map.Entry<String, Integer> entry: counts.entrySet()){
+						final ContentValues cv = new ContentValues();
+						cv.put(UsageEntry._UNIT, entry.getKey());
+						cv.put(UsageEntry._USE_COUNT, entry.getValue());
+						values[i++] = cv;
+					}
+					cr.bulkInsert(UsageEntry.CONTENT_URI_INCREMENT, values);
+					// the counts are written; a failure from here on must not make
+					// the counter write them again.
+					try {
+						setWrittenAutocompleteIds(cr);
+					}catch (final RuntimeException e){
+						Log.e(TAG, "could not read IDs of new units", e);
+					}
+				}
+			}, 4){
+				@Override
+				protected void onFlushFailed(Exception e) {
+					Log.e(TAG, "could not write unit usage", e);
+				}
+			};
+			usageCounter.start(USAGE_FLUSH_PERIOD);
+		}
+		return usageCounter;
+	}
+
 	/**
-	 * Increments the usage counter for the given unit.
+	 * Increments the usage counter for the given unit. The count is written
+	 * to the database later.
+	 *
 	 * @param unit name of the unit
-	 * @param db the unit usage database
+	 * @param context any context of the application
 	 */
-	public static void logUnitUsed(String unit, ContentResolver cr){
-		final String[] selectionArgs = {unit};
-		final Cursor c = cr.query(UsageEntry.CONTENT_URI, INCREMENT_QUERY_PROJECTION, UsageEntry._UNIT + "=?", selectionArgs, null);
-		if (c.getCount() > 0){
-			c.moveToFirst();
-			final int useCount = c.getInt(c.getColumnIndex(UsageEntry._USE_COUNT));
-			final int id = c.getInt(c.getColumnIndex(UsageEntry._ID));
-			final ContentValues cv = new ContentValues();
-			cv.put(UsageEntry._USE_COUNT, useCount+1);
-
-			cr.update(ContentUris.withAppendedId(UsageEntry.CONTENT_URI, id), cv, null, null);
-		}else{
-			final ContentValues cv = new ContentValues();
-			cv.put(UsageEntry._UNIT, unit);
-			cv.put(UsageEntry._USE_COUNT, 1);
-			cv.put(UsageEntry._FACTOR_FPRINT, getFingerprint(unit));
-			cr.insert(UsageEntry.CONTENT_URI, cv);
+	public static void logUnitUsed(String unit, Context context){
+		getUsageCounter(context).increment(unit);
+		addToAutocompleteIndex(unit);
+	}
+
+	/**
+	 * Counts a use of the unit in the autocomplete index, if it has been loaded,
+	 * so that completions are ranked by the latest counts.
+	 */
+	private static void addToAutocompleteIndex(String unit){
+		final AutocompleteIndex index = getLoadedAutocompleteIndex();
+		if (index != null && !index.increment(unit, 1)){
+			// its row is written by the next flush.
+			index.add(-1, unit, ValueGui.getFingerprint(unit), 1);
 		}
-		c.close();
 	}
 
-	public static void logUnitsInExpression(String expression, ContentResolver cr){
+	/**
+	 * Increments the usage counters of all units in the expression.
+	 * The counts are written to the database later.
+	 *
+	 * @param expression the expression as entered
+	 * @param context any context of the application
+	 */
+	public static void logUnitsInExpression(String expression, Context context){
+		final UsageCounter counter = getUsageCounter(context);
 		final Matcher m = UNIT_REGEX.matcher(expression);
 		while(m.find()){
 			String unit = m.group(1);
@@ -555,8 +651,19 @@ public class UnitUsageDBHelper extends SQLiteOpenHelper {
 			if (DefinedFunction.table.containsKey(unit) || BuiltInFunction.table.containsKey(unit)){
 				unit += "(";
 			}
-			logUnitUsed(unit, cr);
+			counter.increment(unit);
+			addToAutocompleteIndex(unit);
 		}
 	}
 
+	/**
+	 * Writes the usage counts that have not been written yet, on a background
+	 * thread. Call this when the application may be stopped.
+	 *
+	 * @param context any context of the application
+	 */
+	public static void flushUnitUsage(Context context){
+		getUsageCounter(context).requestFlush();
+	}
+
 }
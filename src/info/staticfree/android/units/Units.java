@@ -22,8 +22,8 @@ import info.staticfree.android.units.ValueGui.ReciprocalException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
 
+import net.sourceforge.unitsinjava.ConversionPlanCache;
 import net.sourceforge.unitsinjava.DefinedFunction;
 import net.sourceforge.unitsinjava.EvalError;
 import net.sourceforge.unitsinjava.Function;
@@ -247,6 +247,13 @@ public class Units extends FragmentActivity implements OnClickListener, OnEditor
 		wantEditText.setAdapter(mWantUsageAdapter);
     }
 
+    @Override
+    protected void onPause() {
+    	super.onPause();
+    	// the process may be killed after this.
+    	UnitUsageDBHelper.flushUnitUsage(this);
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
     	super.onSaveInstanceState(outState);
@@ -375,7 +382,9 @@ public class Units extends FragmentActivity implements OnClickListener, OnEditor
     public void addToHistory(String haveExpr, String wantExpr, Double result, boolean reciprocal){
     	haveExpr = haveExpr.trim();
     	wantExpr = wantExpr.trim();
-    	new AddToUsageTask().execute(haveExpr, wantExpr);
+    	// only counted in memory; the counts are written to the DB later.
+    	UnitUsageDBHelper.logUnitsInExpression(haveExpr, this);
+    	UnitUsageDBHelper.logUnitsInExpression(wantExpr, this);
     	haveExpr = reciprocal ? "1÷(" + haveExpr + ")" : haveExpr;
     	resultView.setText(HistoryEntry.toCharSequence(haveExpr, wantExpr, result));
 
@@ -434,57 +443,28 @@ public class Units extends FragmentActivity implements OnClickListener, OnEditor
     	return text;
     }
 
-    public static HashMap<Character, String> UNICODE_TRANS = new HashMap<Character, String>();
-    static {
-    	UNICODE_TRANS.put('÷', "/");
-    	UNICODE_TRANS.put('×', "*");
-    	UNICODE_TRANS.put('÷', "/");
-    	UNICODE_TRANS.put('×', "*");
-    	UNICODE_TRANS.put('²', "^2");
-    	UNICODE_TRANS.put('³', "^3");
-    	UNICODE_TRANS.put('⁴', "^4");
-    	UNICODE_TRANS.put('−', "-");
-    	UNICODE_TRANS.put('µ', "micro");
-    	UNICODE_TRANS.put('π', "pi");
-    	UNICODE_TRANS.put('Π', "pi");
-    	UNICODE_TRANS.put('€', "euro");
-    	UNICODE_TRANS.put('¥', "japanyen");
-    	UNICODE_TRANS.put('₤', "greatbritainpound");
-    	UNICODE_TRANS.put('√', "sqrt");
-    	UNICODE_TRANS.put('∛', "cuberoot");
-    	UNICODE_TRANS.put('½', "1|2");
-    	UNICODE_TRANS.put('⅓', "1|3");
-    	UNICODE_TRANS.put('⅔', "2|3");
-    	UNICODE_TRANS.put('¼', "1|4");
-    	UNICODE_TRANS.put('⅕', "1|5");
-    	UNICODE_TRANS.put('⅖', "2|5");
-    	UNICODE_TRANS.put('⅗', "3|5");
-    	UNICODE_TRANS.put('⅙', "1|6");
-    	UNICODE_TRANS.put('⅛', "1|8");
-    	UNICODE_TRANS.put('⅜', "3|8");
-    	UNICODE_TRANS.put('⅝', "5|8");
-    }
-
-    public static String unicodeToAscii(String unicodeInput){
-    	final StringBuilder sb = new StringBuilder();
-    	final int len = unicodeInput.length();
-    	for (int i = 0; i < len; i++){
-    		final char c = unicodeInput.charAt(i);
-    		final String sub = UNICODE_TRANS.get(c);
-    		if (sub != null){
-    			sb.append(sub);
-    		}else{
-    			sb.append(c);
-    		}
-    	}
-    	return sb.toString();
-    }
-
     // TODO filter error messages and output translate to unicode from engine. error msgs and Inifinity → ∞
     public void go(){
     	String haveStr = haveEditText.getText().toString().trim();
     	String wantStr = wantEditText.getText().toString().trim();
 
+    	// a conversion between expressions that were converted recently needs no parsing.
+    	if (haveStr.length() > 0 && wantStr.length() > 0){
+    		ConversionPlanCache.Plan plan = null;
+    		try {
+    			plan = ValueGui.getConversionPlan(haveStr, wantStr);
+    		}catch (final EvalError e){
+    			// errors are reported below, on the field that caused them.
+    		}
+    		if (plan != null && plan.conformable){
+    			haveStr = ValueGui.closeParens(haveStr);
+    			wantStr = ValueGui.closeParens(wantStr);
+    			allClear();
+    			addToHistory(haveStr, wantStr, plan.convert(1), plan.reciprocal);
+    			return;
+    		}
+    	}
+
     	try {
     		Value have = null;
     		try {
@@ -859,7 +839,7 @@ public class Units extends FragmentActivity implements OnClickListener, OnEditor
 			dialog.setTitle(mDialogUnitCategoryUnit);
 
 			final String[] projection = {UsageEntry._ID, UsageEntry._UNIT, UsageEntry._FACTOR_FPRINT};
-			final Cursor c = managedQuery(UsageEntry.getEntriesMatchingFprint(UnitUsageDBHelper.getFingerprint(mDialogUnitCategoryUnit)),
+			final Cursor c = managedQuery(UsageEntry.getEntriesMatchingFprint(ValueGui.getFingerprint(mDialogUnitCategoryUnit)),
 					projection, null, null, UnitUsageDBHelper.USAGE_SORT);
 			dialogUnitCategoryList.changeCursor(c);
 			final ListView lv = ((AlertDialog)dialog).getListView();
@@ -1067,22 +1047,6 @@ public class Units extends FragmentActivity implements OnClickListener, OnEditor
 		return false;
 	}
 
-	/**
-	 * Add the units in the given expression(s) to the usage database.
-	 * @author steve
-	 *
-	 */
-	private class AddToUsageTask extends AsyncTask<String, Void, Void>{
-
-		@Override
-		protected Void doInBackground(String... params) {
-			for (final String param: params){
-				UnitUsageDBHelper.logUnitsInExpression(param, getContentResolver());
-			}
-			return null;
-		}
-	}
-
 	private LoadInitialUnitUsageTask mLoadInitialUnitUsageTask;
 
 	/**
@@ -3,7 +3,9 @@ package info.staticfree.android.units;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.app.SearchManager;
 import android.content.ContentProvider;
@@ -12,9 +14,11 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 
 public class UnitsContentProvider extends ContentProvider {
@@ -39,7 +43,8 @@ public class UnitsContentProvider extends ContentProvider {
 		MATCHER_SEARCH_DIR 						= 9,
 		MATCHER_SEARCH_ITEM 					= 10,
 		MATCHER_UNIT_USAGE_WITH_CLASSIFICATION 	= 11,
-		MATCHER_UNIT_USAGE_ITEM_FPRINT 			= 12;
+		MATCHER_UNIT_USAGE_ITEM_FPRINT 			= 12,
+		MATCHER_UNIT_USAGE_INCREMENT 			= 13;
 
     public static UriMatcher uriMatcher;
     static {
@@ -53,6 +58,7 @@ public class UnitsContentProvider extends ContentProvider {
         uriMatcher.addURI(AUTHORITY, UsageEntry.PATH_CONFORM_TOP, MATCHER_UNIT_USAGE_CONFORM_TOP_DIR);
         uriMatcher.addURI(AUTHORITY, UsageEntry.PATH_WITH_CLASSIFICATION, MATCHER_UNIT_USAGE_WITH_CLASSIFICATION);
         uriMatcher.addURI(AUTHORITY, UsageEntry.PATH + "/" + UsageEntry.PATH_BY_FPRINT + "/*", MATCHER_UNIT_USAGE_ITEM_FPRINT);
+        uriMatcher.addURI(AUTHORITY, UsageEntry.PATH_INCREMENT, MATCHER_UNIT_USAGE_INCREMENT);
 
         uriMatcher.addURI(AUTHORITY, ClassificationEntry.PATH, MATCHER_CLASSIFICATION_DIR);
         uriMatcher.addURI(AUTHORITY, ClassificationEntry.PATH + "/#", MATCHER_CLASSIFICATION_ITEM);
@@ -98,6 +104,130 @@ public class UnitsContentProvider extends ContentProvider {
     private DatabaseHelper dbHelper;
     private UnitUsageDBHelper unitDbHelper;
 
+    // the "limit" parameter of suggestion queries; SearchManager.SUGGEST_PARAMETER_LIMIT on newer devices.
+    private static final String SEARCH_LIMIT_PARAMETER = "limit";
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    private static final String[] SEARCH_COLUMNS = {UsageEntry._ID,
+    		SearchManager.SUGGEST_COLUMN_TEXT_1,
+    		SearchManager.SUGGEST_COLUMN_TEXT_2,
+    		SearchManager.SUGGEST_COLUMN_INTENT_DATA,
+    		SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID};
+    private static SubstringIndex searchIndex;
+    // incremented when the search index becomes out of date.
+    private static int searchIndexGeneration = 0;
+
+    /**
+     * Gets the index of unit names and classification descriptions used for search
+     * suggestions, building it from the usage table if it has changed.
+     *
+     * @return the index
+     */
+    private SubstringIndex getSearchIndex(){
+    	final int generation;
+    	synchronized (UnitsContentProvider.class){
+    		if (searchIndex != null){
+    			return searchIndex;
+    		}
+    		generation = searchIndexGeneration;
+    	}
+		final SQLiteDatabase db = unitDbHelper.getReadableDatabase();
+		final String tbPfxUnit = UnitUsageDBHelper.DB_USAGE_TABLE + ".";
+		final String tbPfxClass = UnitUsageDBHelper.DB_CLASSIFICATION_TABLE + ".";
+		final String[] projection = {tbPfxUnit + UsageEntry._ID, tbPfxUnit + UsageEntry._UNIT,
+				tbPfxUnit + UsageEntry._USE_COUNT, tbPfxClass + ClassificationEntry._DESCRIPTION};
+		final Cursor c = db.query(UnitUsageDBHelper.DB_USAGE_TABLE +
+				" LEFT JOIN " + UnitUsageDBHelper.DB_CLASSIFICATION_TABLE +
+				" ON ("+tbPfxUnit + UsageEntry._FACTOR_FPRINT + "=" + tbPfxClass+ ClassificationEntry._FACTOR_FPRINT+")",
+				projection, null, null, null, null, null);
+		final SubstringIndex index;
+		try {
+			final int n = c.getCount();
+			final long[] ids = new long[n];
+			final String[] names = new String[n];
+			final String[] descriptions = new String[n];
+			final int[] counts = new int[n];
+			for (int i = 0; c.moveToNext(); i++){
+				ids[i] = c.getLong(0);
+				names[i] = c.getString(1);
+				counts[i] = c.getInt(2);
+				descriptions[i] = c.isNull(3) ? null : c.getString(3);
+			}
+			index = new SubstringIndex(ids, names, descriptions, counts);
+		}finally{
+			c.close();
+		}
+    	synchronized (UnitsContentProvider.class){
+    		// don't keep an index built from data that changed while it was being built.
+    		if (generation == searchIndexGeneration){
+    			searchIndex = index;
+    		}
+    	}
+		return index;
+    }
+
+    /**
+     * Makes the search index be built again. Call this when units or classifications
+     * have been added, removed or changed.
+     */
+    public static synchronized void invalidateSearchIndex(){
+    	searchIndex = null;
+    	searchIndexGeneration++;
+    }
+
+    private static synchronized SubstringIndex getLoadedSearchIndex(){
+    	return searchIndex;
+    }
+
+    /**
+     * Applies new use counts to the search index in place, if it is the index that was
+     * loaded before they were written. Otherwise, or if a unit is not in the index, the
+     * index is built again.
+     *
+     * @param before the index loaded before the counts were written, or null
+     * @param counts use counts by unit name
+     * @param add true to add the counts to the counts of the index, false to replace them
+     */
+    private static synchronized void updateSearchIndexCounts(SubstringIndex before, Map<String, Integer> counts, boolean add){
+    	if (before == null || searchIndex != before){
+    		invalidateSearchIndex();
+    		return;
+    	}
+    	for (final Map.Entry<String, Integer> e: counts.entrySet()){
+    		final boolean found = add ? before.addToCount(e.getKey(), e.getValue())
+    				: before.setCount(e.getKey(), e.getValue());
+    		if (!found){
+    			invalidateSearchIndex();
+    			return;
+    		}
+    	}
+    }
+
+    /**
+     * Finds the units whose use counts an update of the usage table sets, so that they
+     * can be set in the search index in place.
+     *
+     * @return the new use counts of the units, or null if the update changes anything
+     *         else, or if the index is not loaded
+     */
+    private Map<String, Integer> getUpdatedCounts(SQLiteDatabase db, ContentValues values,
+    		String selection, String[] selectionArgs){
+    	if (getLoadedSearchIndex() == null || values.size() != 1 || values.getAsInteger(UsageEntry._USE_COUNT) == null){
+    		return null;
+    	}
+    	final int count = values.getAsInteger(UsageEntry._USE_COUNT);
+    	final String[] projection = {UsageEntry._UNIT};
+    	final HashMap<String, Integer> counts = new HashMap<String, Integer>();
+    	final Cursor c = db.query(UnitUsageDBHelper.DB_USAGE_TABLE, projection, selection, selectionArgs, null, null, null);
+    	try {
+    		while (c.moveToNext()){
+    			counts.put(c.getString(0), count);
+    		}
+    	}finally{
+    		c.close();
+    	}
+    	return counts;
+    }
+
 	@Override
 	public boolean onCreate() {
         dbHelper = new DatabaseHelper(getContext());
@@ -118,6 +248,7 @@ public class UnitsContentProvider extends ContentProvider {
 		case MATCHER_UNIT_USAGE_DIR:
 		case MATCHER_UNIT_USAGE_CONFORM_TOP_DIR:
 		case MATCHER_UNIT_USAGE_WITH_CLASSIFICATION:
+		case MATCHER_UNIT_USAGE_INCREMENT:
 			return TYPE_UNIT_USAGE_DIR;
 		case MATCHER_UNIT_USAGE_ITEM:
 		case MATCHER_UNIT_USAGE_ITEM_FPRINT:
@@ -147,6 +278,7 @@ public class UnitsContentProvider extends ContentProvider {
 		case MATCHER_UNIT_USAGE_DIR:{
 			final SQLiteDatabase db = unitDbHelper.getWritableDatabase();
 			newItem = ContentUris.withAppendedId(UsageEntry.CONTENT_URI, db.insert(UnitUsageDBHelper.DB_USAGE_TABLE, null, cv));
+			invalidateSearchIndex();
 		}break;
 
         default:
@@ -156,13 +288,75 @@ public class UnitsContentProvider extends ContentProvider {
 		return newItem;
 	}
 
+	/**
+	 * Bulk inserts into {@link UsageEntry#CONTENT_URI_INCREMENT} add to the use counts
+	 * of units, inserting units that are not in the table yet. This is done in one
+	 * transaction, and observers are notified once.
+	 */
+	@Override
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		if (uriMatcher.match(uri) != MATCHER_UNIT_USAGE_INCREMENT){
+			return super.bulkInsert(uri, values);
+		}
+		final SQLiteDatabase db = unitDbHelper.getWritableDatabase();
+		// SQLite on older devices has no UPSERT, so an update that changes nothing
+		// is followed by an insert.
+		final SQLiteStatement increment = db.compileStatement("UPDATE "+UnitUsageDBHelper.DB_USAGE_TABLE+
+				" SET "+UsageEntry._USE_COUNT+"="+UsageEntry._USE_COUNT+"+? WHERE "+UsageEntry._UNIT+"=?");
+		final SQLiteStatement changes = db.compileStatement("SELECT changes()");
+		final SQLiteStatement insert = db.compileStatement("INSERT INTO "+UnitUsageDBHelper.DB_USAGE_TABLE+" ("+
+				UsageEntry._UNIT+","+UsageEntry._USE_COUNT+","+UsageEntry._FACTOR_FPRINT+") VALUES (?,?,?)");
+		final SubstringIndex searchIndexBefore = getLoadedSearchIndex();
+		final HashMap<String, Integer> increments = new HashMap<String, Integer>();
+		boolean added = false;
+		db.beginTransaction();
+		try {
+			for (final ContentValues cv: values){
+				final String unit = cv.getAsString(UsageEntry._UNIT);
+				final long count = cv.getAsLong(UsageEntry._USE_COUNT);
+				increment.bindLong(1, count);
+				increment.bindString(2, unit);
+				increment.execute();
+				final Integer previous = increments.get(unit);
+				increments.put(unit, previous == null ? (int)count : previous + (int)count);
+				if (changes.simpleQueryForLong() == 0){
+					added = true;
+					final Long fprint = ValueGui.getFingerprint(unit);
+					insert.bindString(1, unit);
+					insert.bindLong(2, count);
+					if (fprint != null){
+						insert.bindLong(3, fprint);
+					}else{
+						insert.bindNull(3);
+					}
+					insert.executeInsert();
+				}
+			}
+			db.setTransactionSuccessful();
+		}finally{
+			db.endTransaction();
+			increment.close();
+			changes.close();
+			insert.close();
+		}
+		// the index only needs to be built again when units are added.
+		if (added){
+			invalidateSearchIndex();
+		}else{
+			updateSearchIndexCounts(searchIndexBefore, increments, true);
+		}
+		getContext().getContentResolver().notifyChange(UsageEntry.CONTENT_URI, null);
+		return values.length;
+	}
+
 	@Override
 	public Cursor query(Uri uri, String[] projection, String selection,
 			String[] selectionArgs, String sortOrder) {
 
         long id;
         Cursor c;
-		switch (uriMatcher.match(uri)){
+        final int match = uriMatcher.match(uri);
+		switch (match){
 		case MATCHER_HISTORY_ENTRY_DIR:{
 			final SQLiteDatabase db = dbHelper.getWritableDatabase();
 	        final SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
@@ -275,22 +469,25 @@ public class UnitsContentProvider extends ContentProvider {
 
 		case MATCHER_SEARCH_DIR:
 		case MATCHER_SEARCH_ITEM:{
-			final SQLiteDatabase db = unitDbHelper.getReadableDatabase();
-			final String tbPfxUnit = UnitUsageDBHelper.DB_USAGE_TABLE + ".";
-			final String tbPfxClass = UnitUsageDBHelper.DB_CLASSIFICATION_TABLE + ".";
-			// the search manager is expecting specific column names, so we can map them here.
-			final String[] queryProjection = { tbPfxUnit + UsageEntry._ID +" AS "+UsageEntry._ID,
-					tbPfxUnit + UsageEntry._UNIT + " AS " + SearchManager.SUGGEST_COLUMN_TEXT_1,
-					tbPfxClass+ ClassificationEntry._DESCRIPTION + " AS " + SearchManager.SUGGEST_COLUMN_TEXT_2,
-					"\"" + UsageEntry.CONTENT_URI + "\" AS " + SearchManager.SUGGEST_COLUMN_INTENT_DATA,
-					tbPfxUnit + UsageEntry._ID + " AS " + SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID
-			};
-			final String query = uri.getLastPathSegment().toLowerCase();
-			final String[] querySelectionArgs = {"%"+query+"%"};
-			c = db.query(UnitUsageDBHelper.DB_USAGE_TABLE +
-					" LEFT JOIN " + UnitUsageDBHelper.DB_CLASSIFICATION_TABLE +
-					" ON ("+tbPfxUnit + UsageEntry._FACTOR_FPRINT + "=" + tbPfxClass+ ClassificationEntry._FACTOR_FPRINT+")",
-					queryProjection, UsageEntry._UNIT + " LIKE ?", querySelectionArgs, null, null, UsageEntry.SORT_DEFAULT);
+			final String query = match == MATCHER_SEARCH_ITEM ? uri.getLastPathSegment() : "";
+			int limit = DEFAULT_SEARCH_LIMIT;
+			final String limitParam = uri.getQueryParameter(SEARCH_LIMIT_PARAMETER);
+			if (limitParam != null){
+				try {
+					limit = Integer.parseInt(limitParam);
+				}catch (final NumberFormatException e){
+					// keep the default
+				}
+			}
+			final SubstringIndex index = getSearchIndex();
+			// the search manager is expecting specific column names.
+			final MatrixCursor mc = new MatrixCursor(SEARCH_COLUMNS);
+			final String intentData = UsageEntry.CONTENT_URI.toString();
+			for (final int item: index.search(query, limit)){
+				mc.addRow(new Object[] {index.getId(item), index.getName(item), index.getDescription(item),
+						intentData, index.getId(item)});
+			}
+			c = mc;
 		}break;
 
 			default:
@@ -326,7 +523,14 @@ public class UnitsContentProvider extends ContentProvider {
 
 		case MATCHER_UNIT_USAGE_DIR:{
 			final SQLiteDatabase db = unitDbHelper.getWritableDatabase();
+			final SubstringIndex searchIndexBefore = getLoadedSearchIndex();
+			final Map<String, Integer> counts = getUpdatedCounts(db, values, selection, selectionArgs);
 			numUpdated = db.update(UnitUsageDBHelper.DB_USAGE_TABLE, values, selection, selectionArgs);
+			if (counts != null){
+				updateSearchIndexCounts(searchIndexBefore, counts, false);
+			}else{
+				invalidateSearchIndex();
+			}
 		}break;
 
 		case MATCHER_UNIT_USAGE_ITEM:{
@@ -338,7 +542,14 @@ public class UnitsContentProvider extends ContentProvider {
 			}else{
 				selection = UsageEntry._ID+"="+id;
 			}
+			final SubstringIndex searchIndexBefore = getLoadedSearchIndex();
+			final Map<String, Integer> counts = getUpdatedCounts(db, values, selection, selectionArgs);
 			numUpdated = db.update(UnitUsageDBHelper.DB_USAGE_TABLE, values, selection, selectionArgs);
+			if (counts != null){
+				updateSearchIndexCounts(searchIndexBefore, counts, false);
+			}else{
+				invalidateSearchIndex();
+			}
 		}break;
 
 		default:
@@ -374,6 +585,7 @@ public class UnitsContentProvider extends ContentProvider {
 			final SQLiteDatabase db = unitDbHelper.getWritableDatabase();
 
 			numDeleted = db.delete(UnitUsageDBHelper.DB_USAGE_TABLE, where, whereArgs);
+			invalidateSearchIndex();
 		}break;
 
 		case MATCHER_UNIT_USAGE_ITEM:{
@@ -385,6 +597,7 @@ public class UnitsContentProvider extends ContentProvider {
 				where = UsageEntry._ID+"="+id;
 			}
 			numDeleted = db.delete(UnitUsageDBHelper.DB_USAGE_TABLE, where, whereArgs);
+			invalidateSearchIndex();
 		}break;
 
 		default:
@@ -0,0 +1,207 @@
+package info.staticfree.android.units;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Counts uses of units in memory and writes them out in batches, so that
+ * logging a conversion does no database I/O.
+ *
+ * Counts are kept in several independently locked stripes, selected by
+ * the hash of the unit name, so that threads counting different units
+ * rarely wait for each other. {@link #flush()} takes the counts of all
+ * stripes and hands them to the {@link Sink} in one call; if the sink
+ * fails, the counts are put back and written by the next flush.
+ *
+ * Flushes can be run periodically and on request on a timer thread of
+ * the counter (see {@link #start(long)} and {@link #requestFlush()}).
+ * Subclasses report the failures of those flushes.
+ *
+ * This class does not depend on Android.
+ */
+public abstract class UsageCounter {
+
+	/**
+	 * Where the counts are written.
+	 */
+	public interface Sink {
+		/**
+		 * Adds counts of uses to the stored counts. This should be done
+		 * atomically: if an exception is thrown, none of the counts
+		 * should have been added.
+		 *
+		 * @param counts number of new uses of each unit
+		 * @throws Exception if the counts could not be written
+		 */
+		public void write(Map<String, Integer> counts) throws Exception;
+	}
+
+	private final Sink sink;
+	private final Stripe[] stripes;
+	private final Object flushLock = new Object();
+	private Timer timer;
+
+	private static class Stripe {
+		HashMap<String, Integer> counts = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * @param sink where counts are written
+	 * @param stripes number of stripes; rounded up to a power of 2
+	 */
+	public UsageCounter(Sink sink, int stripes){
+		this.sink = sink;
+		int n = 1;
+		while (n < stripes){
+			n *= 2;
+		}
+		this.stripes = new Stripe[n];
+		for (int i = 0; i < n; i++){
+			this.stripes[i] = new Stripe();
+		}
+	}
+
+	private Stripe stripe(String unit){
+		final int h = unit.hashCode();
+		return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+	}
+
+	/**
+	 * Counts one use of a unit.
+	 *
+	 * @param unit name of the unit
+	 */
+	public void increment(String unit){
+		add(unit, 1);
+	}
+
+	/**
+	 * Counts uses of a unit.
+	 *
+	 * @param unit name of the unit
+	 * @param n number of uses
+	 */
+	public void add(String unit, int n){
+		final Stripe s = stripe(unit);
+		synchronized (s){
+			final Integer count = s.counts.get(unit);
+			s.counts.put(unit, count == null ? n : count + n);
+		}
+	}
+
+	/**
+	 * @param unit name of the unit
+	 * @return number of uses of the unit that have not been written yet
+	 */
+	public int getPending(String unit){
+		final Stripe s = stripe(unit);
+		synchronized (s){
+			final Integer count = s.counts.get(unit);
+			return count == null ? 0 : count;
+		}
+	}
+
+	/**
+	 * Takes the counts out of all stripes.
+	 *
+	 * @return the counts that have not been written, possibly empty
+	 */
+	Map<String, Integer> drain(){
+		final HashMap<String, Integer> all = new HashMap<String, Integer>();
+		for (final Stripe s: stripes){
+			HashMap<String, Integer> counts;
+			synchronized (s){
+				if (s.counts.isEmpty()){
+					continue;
+				}
+				counts = s.counts;
+				s.counts = new HashMap<String, Integer>();
+			}
+			all.putAll(counts);
+		}
+		return all;
+	}
+
+	/**
+	 * Writes all counts to the sink. Flushes are run one at a time.
+	 *
+	 * @return number of units whose counts were written
+	 * @throws Exception the exception of the sink; the counts are kept
+	 */
+	public int flush() throws Exception {
+		synchronized (flushLock){
+			final Map<String, Integer> counts = drain();
+			if (counts.isEmpty()){
+				return 0;
+			}
+			try {
+				sink.write(counts);
+			}catch (final Exception e){
+				for (final Map.Entry<String, Integer> entry: counts.entrySet()){
+					add(entry.getKey(), entry.getValue());
+				}
+				throw e;
+			}
+			return counts.size();
+		}
+	}
+
+	/**
+	 * Starts flushing periodically on a timer thread. Does nothing if
+	 * already started.
+	 *
+	 * @param periodMillis time between flushes, in milliseconds
+	 */
+	public synchronized void start(long periodMillis){
+		if (timer != null){
+			return;
+		}
+		timer = new Timer("UsageCounter", true);
+		timer.schedule(new FlushTask(), periodMillis, periodMillis);
+	}
+
+	/**
+	 * Stops periodic flushing. Counts that have not been written are kept,
+	 * and may be written by calling {@link #flush()}.
+	 */
+	public synchronized void stop(){
+		if (timer != null){
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+	/**
+	 * Requests a flush on the timer thread, for example when the application
+	 * goes to the background, without waiting for it. If the counter is not
+	 * started, the counts are written by a new thread.
+	 */
+	public synchronized void requestFlush(){
+		if (timer != null){
+			timer.schedule(new FlushTask(), 0);
+		}else{
+			new Thread(new FlushTask(), "UsageCounter flush").start();
+		}
+	}
+
+	/**
+	 * Called when a flush run by the counter fails. The counts are kept
+	 * and written by the next flush.
+	 *
+	 * @param e the exception of the sink
+	 */
+	protected abstract void onFlushFailed(Exception e);
+
+	private class FlushTask extends TimerTask {
+		@Override
+		public void run() {
+			try {
+				flush();
+			}catch (final Exception e){
+				onFlushFailed(e);
+			}
+		}
+	}
+}
@@ -14,14 +14,20 @@ public class UsageEntry implements BaseColumns {
 		PATH_CONFORM_TOP = PATH+"/by_conform",
 		PATH_WITH_CLASSIFICATION = PATH + "/with_classification",
 		PATH_BY_FPRINT = "fprint",
+		PATH_INCREMENT = PATH + "/increment",
 		SORT_DEFAULT = _USE_COUNT + " DESC";
 
 	public final static Uri
 		CONTENT_URI = Uri.parse("content://" + UnitsContentProvider.AUTHORITY + "/" + PATH),
 		CONTENT_URI_CONFORM_TOP = Uri.parse("content://" + UnitsContentProvider.AUTHORITY + "/" + PATH_CONFORM_TOP),
-		CONTENT_URI_WITH_CLASSIFICATION = Uri.parse("content://" + UnitsContentProvider.AUTHORITY + "/" + PATH_WITH_CLASSIFICATION);
+		CONTENT_URI_WITH_CLASSIFICATION = Uri.parse("content://" + UnitsContentProvider.AUTHORITY + "/" + PATH_WITH_CLASSIFICATION),
+		/**
+		 * Bulk insert of {@link #_UNIT} and {@link #_USE_COUNT} values to this URI
+		 * adds the counts to the use counts of the units, in one transaction.
+		 */
+		CONTENT_URI_INCREMENT = Uri.parse("content://" + UnitsContentProvider.AUTHORITY + "/" + PATH_INCREMENT);
 
-	public static Uri getEntriesMatchingFprint(String fprint){
+	public static Uri getEntriesMatchingFprint(Long fprint){
 		return Uri.withAppendedPath(CONTENT_URI, PATH_BY_FPRINT + "/" + fprint);
 	}
 }
@@ -1,5 +1,9 @@
 package info.staticfree.android.units;
 
+import java.util.HashMap;
+
+import net.sourceforge.unitsinjava.ConversionPlanCache;
+import net.sourceforge.unitsinjava.DefinedFunction;
 import net.sourceforge.unitsinjava.Env;
 import net.sourceforge.unitsinjava.EvalError;
 import net.sourceforge.unitsinjava.Factor;
@@ -14,6 +18,11 @@ import net.sourceforge.unitsinjava.Value;
  *
  */
 public class ValueGui extends Value {
+	/**
+	 * Conversion plans of recently used pairs of expressions.
+	 */
+	private static final ConversionPlanCache conversionPlans = new ConversionPlanCache(128);
+
 	  //=====================================================================
 	  /** Constructs a completely reduced Value from unit expression;
 	   *  throws exception on error.
@@ -35,7 +44,7 @@ public class ValueGui extends Value {
 	  public static Value fromUnicodeString(final String s) throws EvalError
 	    {
 		  // closeParens is run twice in order to allow for unicode characters mapping to functions.
-	        final Value v = parse(closeParens(Units.unicodeToAscii(s)));
+	        final Value v = parse(closeParens(unicodeToAscii(s)));
 	        v.completereduce();
 	        return v;
 	    }
@@ -66,6 +75,77 @@ public class ValueGui extends Value {
 		  return sb.toString();
 	  }
 
+	  /**
+	   * Unicode characters that can be entered, and their ASCII equivalents
+	   * understood by the engine.
+	   */
+	  public static HashMap<Character, String> UNICODE_TRANS = new HashMap<Character, String>();
+	  static {
+		  UNICODE_TRANS.put('÷', "/");
+		  UNICODE_TRANS.put('×', "*");
+		  UNICODE_TRANS.put('÷', "/");
+		  UNICODE_TRANS.put('×', "*");
+		  UNICODE_TRANS.put('²', "^2");
+		  UNICODE_TRANS.put('³', "^3");
+		  UNICODE_TRANS.put('⁴', "^4");
+		  UNICODE_TRANS.put('−', "-");
+		  UNICODE_TRANS.put('µ', "micro");
+		  UNICODE_TRANS.put('π', "pi");
+		  UNICODE_TRANS.put('Π', "pi");
+		  UNICODE_TRANS.put('€', "euro");
+		  UNICODE_TRANS.put('¥', "japanyen");
+		  UNICODE_TRANS.put('₤', "greatbritainpound");
+		  UNICODE_TRANS.put('√', "sqrt");
+		  UNICODE_TRANS.put('∛', "cuberoot");
+		  UNICODE_TRANS.put('½', "1|2");
+		  UNICODE_TRANS.put('⅓', "1|3");
+		  UNICODE_TRANS.put('⅔', "2|3");
+		  UNICODE_TRANS.put('¼', "1|4");
+		  UNICODE_TRANS.put('⅕', "1|5");
+		  UNICODE_TRANS.put('⅖', "2|5");
+		  UNICODE_TRANS.put('⅗', "3|5");
+		  UNICODE_TRANS.put('⅙', "1|6");
+		  UNICODE_TRANS.put('⅛', "1|8");
+		  UNICODE_TRANS.put('⅜', "3|8");
+		  UNICODE_TRANS.put('⅝', "5|8");
+	  }
+
+	  /**
+	   * Replaces unicode characters by their ASCII equivalents.
+	   *
+	   * @param unicodeInput the text as entered
+	   * @return the text that can be parsed
+	   */
+	  public static String unicodeToAscii(String unicodeInput){
+		  final StringBuilder sb = new StringBuilder();
+		  final int len = unicodeInput.length();
+		  for (int i = 0; i < len; i++){
+		  	final char c = unicodeInput.charAt(i);
+		  	final String sub = UNICODE_TRANS.get(c);
+		  	if (sub != null){
+		  		sb.append(sub);
+		  	}else{
+		  		sb.append(c);
+		  	}
+		  }
+		  return sb.toString();
+	  }
+
+	  /**
+	   * Gets the plan for converting between two expressions as entered by the user.
+	   * Plans of recently used pairs are cached, so repeating a conversion
+	   * does not need to parse and reduce the expressions again.
+	   *
+	   * @param from unicode expression to convert from
+	   * @param to unicode expression to convert to
+	   * @return the plan; check {@link ConversionPlanCache.Plan#conformable} before using it
+	   * @throws EvalError if either expression cannot be evaluated
+	   */
+	  public static ConversionPlanCache.Plan getConversionPlan(String from, String to) throws EvalError {
+		  return conversionPlans.get(closeParens(unicodeToAscii(from)),
+				  closeParens(unicodeToAscii(to)));
+	  }
+
 	  public static Value getReciprocal(Value inval){
 		    final Value inv = new Value();
 		    inv.factor = 1/inval.factor;
@@ -75,20 +155,54 @@ public class ValueGui extends Value {
 	        return inv;
 	  }
 
-	  public static String getFingerprint(Value val){
-		   final StringBuilder unitFprint = new StringBuilder();
-		   for (final Factor f : val.numerator.getFactors()){
-			   unitFprint.append(f.name);
-			   unitFprint.append(',');
-		   }
-		   unitFprint.append(';');
-		   for (final Factor f : val.denominator.getFactors()){
-			   unitFprint.append(f.name);
-			   unitFprint.append(',');
-		   }
-		   return unitFprint.toString();
+	  /**
+	   * Gets the fingerprint of a value: the 64-bit hash of its dimension.
+	   * Values with equal fingerprints are conformable. Dimensionless
+	   * primitive units, such as radian, are kept, so that angles are
+	   * not classified as numbers.
+	   *
+	   * @param val the value
+	   * @return the fingerprint
+	   */
+	  public static long getFingerprint(Value val){
+		   return val.dimension(Factor.Ignore.NONE).hash();
 	  }
 
+	/**
+	 * Gets the fingerprint of a unit or function name.
+	 *
+	 * @param unitName name of the unit, or of a function followed by an open paren
+	 * @return the fingerprint, or null if the name cannot be evaluated
+	 * @see #getFingerprint(Value)
+	 */
+	public static Long getFingerprint(String unitName){
+
+		Long fpr = null;
+		try {
+			Value unit;
+			// this is done here to allow for unicode that maps to functions
+			unitName = unicodeToAscii(unitName);
+			if (unitName.endsWith("(")){
+				final DefinedFunction f = DefinedFunction.table.get(unitName.substring(0, unitName.length()-1));
+				if (f != null){
+					unit = f.getConformability();
+				}else{
+					// non-DefinedFunctions are built in and compatible with numbers.
+					unit = Value.fromString("0");
+				}
+			}else{
+				unit = fromUnicodeString(unitName);
+
+			}
+			if (unit != null){
+				fpr = getFingerprint(unit);
+			}
+		}catch (final EvalError e){
+			// skip things we can't handle
+		}
+		return fpr;
+	}
+
 	  //=====================================================================
 	  //  convert to Value
 	  //=====================================================================
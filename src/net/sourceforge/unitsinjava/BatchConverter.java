@@ -0,0 +1,349 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.nio.DoubleBuffer;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class BatchConverter
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Conversion of many numbers from one unit to another.
+ *  <br>
+ *  The pair of units is resolved once, when the BatchConverter is
+ *  created, in the current UnitRegistry. The converter can then be
+ *  applied to single numbers, arrays, or DoubleBuffers.
+ *  <p>
+ *  Each of the two units may be a unit expression or the name of
+ *  a nonlinear unit (a defined function, such as <code>tempF</code>).
+ *  A number <i>x</i> stands for <i>x</i> times the 'from' expression,
+ *  or for the value of function 'from' at <i>x</i>.
+ *  If both units are expressions, the conversion is linear
+ *  (or reciprocal) and amounts to one multiplication (or division)
+ *  per number. Otherwise each number is converted through Values.
+ *  <p>
+ *  A BatchConverter is immutable and may be used by concurrent threads.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class BatchConverter
+{
+  //-------------------------------------------------------------------
+  //  Registry in which the units were resolved.
+  //-------------------------------------------------------------------
+  private final UnitRegistry registry;
+
+  //-------------------------------------------------------------------
+  //  Linear or reciprocal conversion: result = x*scale or scale/x.
+  //-------------------------------------------------------------------
+  private final boolean linear;
+  private final boolean reciprocal;
+  private final double scale;
+
+  //-------------------------------------------------------------------
+  //  Nonlinear conversion. Exactly one of 'fromFunc' and 'fromValue',
+  //  and one of 'toFunc' and 'toValue', is not null.
+  //-------------------------------------------------------------------
+  private final Function fromFunc;
+  private final Value fromValue;
+  private final Function toFunc;
+  private final Value toValue;
+
+  //-------------------------------------------------------------------
+  //  Unit names as given.
+  //-------------------------------------------------------------------
+  private final String from;
+  private final String to;
+
+
+  //=====================================================================
+  //  Construct converter from 'f' to 't' with given options.
+  //=====================================================================
+  private BatchConverter
+    ( final String f, final String t, final UnitRegistry.Options options)
+    {
+      from = f.trim();
+      to = t.trim();
+      registry = UnitRegistry.current();
+
+      fromFunc = registry.definedFunctions().get(from);
+      toFunc = registry.definedFunctions().get(to);
+
+      if (fromFunc==null && toFunc==null)
+      {
+        ConversionPlanCache.Plan plan
+          = new ConversionPlanCache.Plan(from,to,options.strict);
+        if (!plan.conformable)
+          throw new EvalError("Conformability error: " + from
+                            + " cannot be converted to " + to + ".");
+        linear = true;
+        reciprocal = plan.reciprocal;
+        scale = plan.scale;
+        fromValue = null;
+        toValue = null;
+        return;
+      }
+
+      linear = false;
+      reciprocal = false;
+      scale = Double.NaN;
+
+      if (fromFunc==null)
+      {
+        fromValue = Value.parse(from);
+        fromValue.completereduce();
+      }
+      else
+        fromValue = null;
+
+      if (toFunc==null)
+      {
+        toValue = Value.parse(to);
+        toValue.completereduce();
+      }
+      else
+        toValue = null;
+    }
+
+
+  //=====================================================================
+  /** Creates converter with options given by Env;
+   *  throws exception on error.
+   *  <br>
+   *  EvalError is thrown if any of the units cannot be evaluated,
+   *  or the units of a linear conversion are not conformable.
+   *  @param  from unit to convert from.
+   *  @param  to unit to convert to.
+   *  @return the converter. */
+  //=====================================================================
+  public static BatchConverter create(final String from, final String to)
+    { return new BatchConverter(from,to,UnitRegistry.Options.fromEnv()); }
+
+
+  //=====================================================================
+  /** Creates converter; throws exception on error.
+   *  <br>
+   *  EvalError is thrown if any of the units cannot be evaluated,
+   *  or the units of a linear conversion are not conformable.
+   *  @param  from unit to convert from.
+   *  @param  to unit to convert to.
+   *  @param  options options for the conversion.
+   *  @return the converter. */
+  //=====================================================================
+  public static BatchConverter create
+    ( final String from, final String to, final UnitRegistry.Options options)
+    { return new BatchConverter(from,to,options); }
+
+
+  //=====================================================================
+  /** Checks if the conversion is one multiplication or division.
+   *  @return <code>true</code> if both units are expressions. */
+  //=====================================================================
+  public boolean isLinear()
+    { return linear; }
+
+
+  //=====================================================================
+  /** Checks if the conversion is reciprocal.
+   *  @return <code>true</code> if the conversion is reciprocal. */
+  //=====================================================================
+  public boolean isReciprocal()
+    { return reciprocal; }
+
+
+  //=====================================================================
+  /** Converts one number; throws exception on error.
+   *  <br>
+   *  EvalError is thrown if a nonlinear conversion of the number
+   *  fails, for example because it is outside the domain of a function.
+   *  @param  x the number.
+   *  @return the converted number. */
+  //=====================================================================
+  public double convert(double x)
+    {
+      if (linear)
+        return reciprocal? scale / x : x * scale;
+
+      UnitRegistry prev = registry.use();
+      try
+      { return nonlinear(x); }
+      finally
+      { UnitRegistry.restore(prev); }
+    }
+
+
+  //=====================================================================
+  /** Converts numbers in an array, replacing them by the results;
+   *  throws exception on error.
+   *  @param  data the numbers. */
+  //=====================================================================
+  public void convert(final double[] data)
+    { convert(data,0,data,0,data.length); }
+
+
+  //=====================================================================
+  /** Converts 'length' numbers from array 'src', starting at 'srcPos',
+   *  into array 'dst', starting at 'dstPos'; throws exception on error.
+   *  The arrays may be the same, but the ranges must not overlap
+   *  unless 'srcPos' and 'dstPos' are equal.
+   *  @param  src source array.
+   *  @param  srcPos starting position in the source array.
+   *  @param  dst destination array.
+   *  @param  dstPos starting position in the destination array.
+   *  @param  length number of numbers to convert. */
+  //=====================================================================
+  public void convert
+    ( final double[] src, int srcPos, final double[] dst, int dstPos,
+      int length)
+    {
+      if (srcPos<0 || dstPos<0 || length<0
+          || srcPos+length>src.length || dstPos+length>dst.length)
+        throw new IndexOutOfBoundsException
+          ("srcPos=" + srcPos + ", dstPos=" + dstPos + ", length=" + length);
+
+      if (linear)
+      {
+        final double s = scale;
+        if (reciprocal)
+          for (int i=0;i<length;i++)
+            dst[dstPos+i] = s / src[srcPos+i];
+        else
+          for (int i=0;i<length;i++)
+            dst[dstPos+i] = src[srcPos+i] * s;
+        return;
+      }
+
+      UnitRegistry prev = registry.use();
+      try
+      {
+        for (int i=0;i<length;i++)
+          dst[dstPos+i] = nonlinear(src[srcPos+i]);
+      }
+      finally
+      { UnitRegistry.restore(prev); }
+    }
+
+
+  //=====================================================================
+  /** Converts the remaining numbers of buffer 'src' into buffer 'dst';
+   *  throws exception on error.
+   *  <br>
+   *  The positions of both buffers are advanced by the number
+   *  of converted values. The buffers may be the same buffer
+   *  to convert in place.
+   *  @param  src source buffer.
+   *  @param  dst destination buffer; must have at least as many
+   *          remaining elements as 'src'. */
+  //=====================================================================
+  public void convert(final DoubleBuffer src, final DoubleBuffer dst)
+    {
+      int n = src.remaining();
+      if (dst.remaining()<n)
+        throw new java.nio.BufferOverflowException();
+
+      if (src.hasArray() && dst.hasArray() && !dst.isReadOnly())
+      {
+        convert(src.array(),src.arrayOffset()+src.position(),
+                dst.array(),dst.arrayOffset()+dst.position(),n);
+        src.position(src.position()+n);
+        dst.position(dst.position()+n);
+        return;
+      }
+
+      int sp = src.position();
+      int dp = dst.position();
+
+      if (linear)
+      {
+        final double s = scale;
+        if (reciprocal)
+          for (int i=0;i<n;i++)
+            dst.put(dp+i,s / src.get(sp+i));
+        else
+          for (int i=0;i<n;i++)
+            dst.put(dp+i,src.get(sp+i) * s);
+      }
+
+      else
+      {
+        UnitRegistry prev = registry.use();
+        try
+        {
+          for (int i=0;i<n;i++)
+            dst.put(dp+i,nonlinear(src.get(sp+i)));
+        }
+        finally
+        { UnitRegistry.restore(prev); }
+      }
+
+      src.position(sp+n);
+      dst.position(dp+n);
+    }
+
+
+  //=====================================================================
+  //  Convert 'x' by nonlinear conversion.
+  //=====================================================================
+  private double nonlinear(double x)
+    {
+      Value v;
+      if (fromFunc!=null)
+      {
+        v = new Value();
+        v.factor = x;
+        fromFunc.applyTo(v);
+      }
+      else
+      {
+        v = new Value(fromValue);
+        v.factor *= x;
+      }
+
+      if (toFunc!=null)
+      {
+        toFunc.applyInverseTo(v);
+        if (!v.isNumber())
+          throw new EvalError("Result " + v.asString() + " of ~" + to
+                            + " is not a number.");
+        return v.factor;
+      }
+
+      v.completereduce();
+      if (!v.isCompatibleWith(toValue,Factor.Ignore.DIMLESS))
+        throw new EvalError("Conformability error: " + v.asString()
+                          + " cannot be converted to " + to + ".");
+      return v.factor / toValue.factor;
+    }
+}
@@ -36,12 +36,14 @@
 //           Used Enum.
 //           Added check for undefined result of math functions.
 //    091031 Replaced 'addtolist' by 'isCompatibleWith'.
+//    261018 'table' is a view of the default UnitRegistry.
+//           Each function has its own 'radian'.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
-import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
 
 
@@ -58,9 +60,10 @@ import java.util.Vector;
  public class BuiltInFunction extends Function
 {
   //-------------------------------------------------------------------
-  /**  Table of built-in functions. */
+  /**  Table of built-in functions in the default UnitRegistry
+   *   (read-only). */
   //-------------------------------------------------------------------
-  public static Hashtable<String,BuiltInFunction> table = null;
+  public static Map<String,BuiltInFunction> table = null;
 
   //-------------------------------------------------------------------
   //  Argument and result types
@@ -87,52 +90,55 @@ import java.util.Vector;
   //  Radian (an angle is a unit reducible to radians)
   //-------------------------------------------------------------------
 
-  private static Unit radian;
+  private Unit radian;
 
 
   //=====================================================================
   //  Construct object for built-in function 'name'
-  //  of type 'funcType' with procedure ID 'procID'.
+  //  of type 'funcType' with procedure ID 'procID', using 'radian'.
   //=====================================================================
-  BuiltInFunction(String name, type funcType, proc procID)
+  BuiltInFunction(String name, type funcType, proc procID, Unit radian)
     {
       super(name,new Location());
       this.funcType = funcType;
       this.procID   = procID;
+      this.radian   = radian;
     }
 
   //=====================================================================
-  //  Insert into the table a built-in function 'name'
-  //  of type 'funcType' with procedure ID 'procID'.
+  //  Insert into the table of current UnitRegistry a built-in function
+  //  'name' of type 'funcType' with procedure ID 'procID'.
   //=====================================================================
-  private static void insert(String name, type funcType, proc procID)
-    { table.put(name, new BuiltInFunction(name,funcType,procID)); }
+  private static void insert(String name, type funcType, proc procID, Unit radian)
+    {
+      UnitRegistry.current().builtIns.put
+        (name, new BuiltInFunction(name,funcType,procID,radian));
+    }
 
 
   //=====================================================================
-  //  Fill table of built-in functions.
+  //  Fill table of built-in functions in the current UnitRegistry.
   //=====================================================================
   public static void makeTable()
     {
-      insert("sin",     type.ANGLEIN, proc.SIN);
-      insert("cos",     type.ANGLEIN, proc.COS);
-      insert("tan",     type.ANGLEIN, proc.TAN);
-      insert("ln",      type.DIMLESS, proc.LN);
-      insert("log",     type.DIMLESS, proc.LOG);
-      insert("log2",    type.DIMLESS, proc.LOG2);
-      insert("exp",     type.DIMLESS, proc.EXP);
-      insert("acos",    type.ANGLEOUT,proc.ACOS);
-      insert("atan",    type.ANGLEOUT,proc.ATAN);
-      insert("asin",    type.ANGLEOUT,proc.ASIN);
-      insert("sqrt",    type.NOCHECK, proc.SQRT);
-      insert("cuberoot",type.NOCHECK, proc.CBRT);
-
       //---------------------------------------------------------------
       //  Make sure radian is defined and save its object.
       //---------------------------------------------------------------
-      Unit r = Unit.table.get("radian");
-      if (r!=null) radian = r;
-      else r = new Unit("radian",new Location(),"!");
+      Unit r = UnitRegistry.current().units().get("radian");
+      if (r==null) r = new Unit("radian",new Location(),"!");
+
+      insert("sin",     type.ANGLEIN, proc.SIN, r);
+      insert("cos",     type.ANGLEIN, proc.COS, r);
+      insert("tan",     type.ANGLEIN, proc.TAN, r);
+      insert("ln",      type.DIMLESS, proc.LN, r);
+      insert("log",     type.DIMLESS, proc.LOG, r);
+      insert("log2",    type.DIMLESS, proc.LOG2, r);
+      insert("exp",     type.DIMLESS, proc.EXP, r);
+      insert("acos",    type.ANGLEOUT,proc.ACOS, r);
+      insert("atan",    type.ANGLEOUT,proc.ATAN, r);
+      insert("asin",    type.ANGLEOUT,proc.ASIN, r);
+      insert("sqrt",    type.NOCHECK, proc.SQRT, r);
+      insert("cuberoot",type.NOCHECK, proc.CBRT, r);
     }
 
 
@@ -0,0 +1,367 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//           Parser is reused by the thread.
+//           Semantics gets the text of the expression.
+//           Parser is in packrat mode if Env.packrat is set.
+//           Expression is parsed by FastParser if Env.fastparse is set.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class CompiledExpression
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  A unit expression parsed once into an evaluation tree.
+ *  <br>
+ *  The tree consists of numbers, Values of unit names resolved at
+ *  the time of compilation, arithmetic operators, function calls,
+ *  and parameter slots. It is immutable, so a CompiledExpression
+ *  may be evaluated any number of times, also by concurrent threads,
+ *  each time with different Values substituted for the parameters.
+ *  <p>
+ *  Names are resolved in the current UnitRegistry at the time
+ *  of compilation; the expression must be compiled again
+ *  to be used with another registry.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class CompiledExpression
+{
+  //-------------------------------------------------------------------
+  //  The expression, its parameter names, and its evaluation tree.
+  //-------------------------------------------------------------------
+  private final String text;
+  private final String[] parms;
+  private final Node root;
+
+  //-------------------------------------------------------------------
+  //  Parser kept by each thread for reuse. While in use,
+  //  it is removed, so a nested 'compile' creates a new one.
+  //-------------------------------------------------------------------
+  private static final ThreadLocal<Parser> parsers = new ThreadLocal<Parser>();
+
+  //=====================================================================
+  //  Construct object for expression 's' with parameters 'p',
+  //  represented by tree 'r'.
+  //=====================================================================
+  private CompiledExpression(final String s, final String[] p, final Node r)
+    {
+      text = s;
+      parms = p;
+      root = r;
+    }
+
+
+  //=====================================================================
+  /** Compiles unit expression; throws exception on error.
+   *  <br>
+   *  The unit expression 's' may contain any of the strings given
+   *  as 'parms' at a place that syntactically corresponds to a unit name.
+   *  Such string is then treated as a parameter, rather than a unit name.
+   *  <br>
+   *  EvalError is thrown if the expression has incorrect syntax,
+   *  contains unknown unit name, etc..
+   *  The exception contains a complete error message.
+   *  @param  s a unit expression.
+   *  @param  parms parameter names.
+   *  @return the compiled expression. */
+  //=====================================================================
+  public static CompiledExpression compile(final String s, final String... parms)
+    {
+      if (Env.fastparse)                      // Try FastParser first;..
+      {                                       // ..it returns null on error
+        Node root = FastParser.parse(s,parms,UnitRegistry.current());
+        if (root!=null)
+          return new CompiledExpression(s,parms,root);
+      }
+
+      Parser parser = parsers.get();          // Take Parser + Semantics..
+      if (parser==null)                       // ..kept by this thread,
+        parser = new Parser();                // ..or instantiate them
+      else
+        parsers.set(null);
+
+      Semantics sem = parser.semantics();     // Access Semantics
+      try
+      {
+        sem.parms = parms;                    // Identify parameters
+        sem.registry = UnitRegistry.current();// Where to look up names
+        sem.text = s;                         // Text of names
+        parser.setMemo(Env.packrat);          // Packrat mode or not
+        SourceString src = new SourceString(s); // Wrap 's' for parser
+        parser.parse(src);                    // Parse 's' - EvalError on failure
+        return new CompiledExpression(s,parms,sem.result);
+      }
+      finally
+      {
+        parser.release();                     // Return Parser for reuse
+        sem.release();
+        parsers.set(parser);
+      }
+    }
+
+
+  //=====================================================================
+  /** Evaluates the expression; throws exception on error.
+   *  <br>
+   *  EvalError is thrown if the Value cannot be computed,
+   *  for example because of a sum of non-conformable values.
+   *  The exception contains a complete error message.
+   *  @param  args Values to be substituted for the parameters,
+   *          in the order of parameter names given to 'compile'.
+   *  @return a new Value represented by the expression. */
+  //=====================================================================
+  public Value evaluate(final Value... args)
+    {
+      if (args.length!=parms.length)
+        throw new Error("Program error: " + args.length + " arguments for "
+                        + parms.length + " parameters.");
+      return root.eval(args);
+    }
+
+
+  //=====================================================================
+  /** Returns the expression as given to 'compile'.
+   *  @return the source text. */
+  //=====================================================================
+  public String text()
+    { return text; }
+
+
+  //=====================================================================
+  /** Returns number of parameters.
+   *  @return number of parameters. */
+  //=====================================================================
+  public int parmCount()
+    { return parms.length; }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Evaluation tree
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Node of the evaluation tree.
+   *  Each evaluation returns a new Value owned by the caller.
+   */
+  static abstract class Node
+  {
+    abstract Value eval(final Value[] args);
+  }
+
+
+  //-------------------------------------------------------------------
+  //  Number or Value of a unit name.
+  //-------------------------------------------------------------------
+  static class Const extends Node
+  {
+    private final Value value;
+
+    Const(final Value v)
+      { value = v; }
+
+    Const(double d)
+      {
+        value = new Value();
+        value.factor = d;
+      }
+
+    Value eval(final Value[] args)
+      { return new Value(value); }
+  }
+
+
+  //-------------------------------------------------------------------
+  //  Parameter number 'index'.
+  //-------------------------------------------------------------------
+  static class Param extends Node
+  {
+    private final int index;
+
+    Param(int i)
+      { index = i; }
+
+    Value eval(final Value[] args)
+      { return new Value(args[index]); }
+  }
+
+
+  //-------------------------------------------------------------------
+  //  Sum of 'terms', with 'minus[i]' true if term 'i' is subtracted.
+  //-------------------------------------------------------------------
+  static class Sum extends Node
+  {
+    private final Node[] terms;
+    private final boolean[] minus;
+
+    Sum(final Node[] t, final boolean[] m)
+      {
+        terms = t;
+        minus = m;
+      }
+
+    Value eval(final Value[] args)
+      {
+        Value v = terms[0].eval(args);
+        for (int i=1;i<terms.length;i++)
+        {
+          Value v1 = terms[i].eval(args);
+          if (minus[i])
+            v1.factor *= -1;
+          v.add(v1);
+        }
+        return v;
+      }
+  }
+
+
+  //-------------------------------------------------------------------
+  //  Product of 'ops', with 'divide[i]' true if 'ops[i]' is a divisor.
+  //-------------------------------------------------------------------
+  static class Term extends Node
+  {
+    private final Node[] ops;
+    private final boolean[] divide;
+
+    Term(final Node[] o, final boolean[] d)
+      {
+        ops = o;
+        divide = d;
+      }
+
+    Value eval(final Value[] args)
+      {
+        Value v = ops[0].eval(args);
+        for (int i=1;i<ops.length;i++)
+        {
+          if (divide[i])
+            v.div(ops[i].eval(args));
+          else
+            v.mult(ops[i].eval(args));
+        }
+        return v;
+      }
+  }
+
+
+  //-------------------------------------------------------------------
+  //  'base' raised to power 'exp'.
+  //-------------------------------------------------------------------
+  static class Power extends Node
+  {
+    private final Node base;
+    private final Node exp;
+
+    Power(final Node b, final Node e)
+      {
+        base = b;
+        exp = e;
+      }
+
+    Value eval(final Value[] args)
+      {
+        Value v = base.eval(args);
+        v.power(exp.eval(args));
+        return v;
+      }
+  }
+
+
+  //-------------------------------------------------------------------
+  //  Inverse of 'arg'.
+  //-------------------------------------------------------------------
+  static class Inverse extends Node
+  {
+    private final Node arg;
+
+    Inverse(final Node a)
+      { arg = a; }
+
+    Value eval(final Value[] args)
+      {
+        Value v = arg.eval(args);
+        v.invert();
+        return v;
+      }
+  }
+
+
+  //-------------------------------------------------------------------
+  //  Negation of 'arg'.
+  //-------------------------------------------------------------------
+  static class Negate extends Node
+  {
+    private final Node arg;
+
+    Negate(final Node a)
+      { arg = a; }
+
+    Value eval(final Value[] args)
+      {
+        Value v = arg.eval(args);
+        v.factor *= -1;
+        return v;
+      }
+  }
+
+
+  //-------------------------------------------------------------------
+  //  Function 'func', or its inverse, applied to 'arg'.
+  //-------------------------------------------------------------------
+  static class Apply extends Node
+  {
+    private final Function func;
+    private final boolean inverse;
+    private final Node arg;
+
+    Apply(final Function f, boolean inv, final Node a)
+      {
+        func = f;
+        inverse = inv;
+        arg = a;
+      }
+
+    Value eval(final Value[] args)
+      {
+        Value v = arg.eval(args);
+        if (inverse)
+          func.applyInverseTo(v);
+        else
+          func.applyTo(v);
+        return v;
+      }
+  }
+}
@@ -34,12 +34,16 @@
 //    091025 Replaced 'Parser.Exception' by 'EvalError'.
 //    091031 Moved definition of Ignore to Factor.
 //           Replaced 'addtolist' by 'isCompatibleWith'.
+//    261018 FuncDef compiles its definition once.
+//           Tables are kept in UnitRegistry.
+//           FuncDef made accessible to UnitSnapshot.
+//           FuncDef computes Value of its dimension once.
+//           'isCompatibleWith' compares Dimensions.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
-import java.util.Hashtable;
 import java.util.Vector;
 
 
@@ -54,8 +58,13 @@ import java.util.Vector;
 
  public class ComputedFunction extends DefinedFunction
 {
-  private FuncDef forward; // Forward definition
-  private FuncDef inverse; // Inverse definition
+  FuncDef forward; // Forward definition
+  FuncDef inverse; // Inverse definition
+
+  //-------------------------------------------------------------------
+  //  Dimension of inverse.dimen, or null if not computed yet.
+  //-------------------------------------------------------------------
+  private volatile Dimension dimension = null;
 
 
   //=====================================================================
@@ -153,7 +162,7 @@ import java.util.Vector;
 
       // Is it redefinition?
 
-      if (table.containsKey(funcname))
+      if (UnitRegistry.current().functions.containsKey(funcname))
       {
         Env.err.println
           ("Redefinition of function '" + funcname
@@ -163,7 +172,7 @@ import java.util.Vector;
 
       // Install function in table.
 
-      table.put(funcname,
+      UnitRegistry.current().functions.put(funcname,
               new ComputedFunction(funcname,loc,
                                    param,fwddef,fwddim,
                                    funcname,invdef,invdim));
@@ -210,10 +219,7 @@ import java.util.Vector;
       if (forward.dimen!=null)
       {
         try
-        {
-          v = Value.parse(forward.dimen);
-          v.completereduce();
-        }
+        { v = new Value(forward.dimension()); }
         catch (EvalError e)
         {
           Env.out.println
@@ -267,17 +273,51 @@ import java.util.Vector;
     }
 
     public Value getConformability(){
-        return inverse.dimen != null ? Value.fromString(inverse.dimen) : null;
+        Value c = conformableValue();
+        return c != null ? new Value(c) : null;
     }
   //=====================================================================
   //  Return true if this function is compatible with Value 'v',
   //=====================================================================
   boolean isCompatibleWith(final Value v)
     {
-      if (inverse.dimen==null) return false;
-      Value thisvalue = Value.fromString(inverse.dimen);
-      if (thisvalue==null) return false;
-      return thisvalue.isCompatibleWith(v,Factor.Ignore.DIMLESS);
+      Dimension d = dimension();
+      if (d==null) return false;
+      return d.equals(v.dimension(Factor.Ignore.DIMLESS));
+    }
+
+
+  //=====================================================================
+  //  Return Dimension of the dimension of inverse, or null
+  //  if it is not given or invalid. It is computed on first request.
+  //=====================================================================
+  Dimension dimension()
+    {
+      Dimension d = dimension;
+      if (d!=null) return d;
+      Value c = conformableValue();
+      if (c==null) return null;
+      dimension = d = c.dimension(Factor.Ignore.DIMLESS).interned();
+      return d;
+    }
+
+
+  //=====================================================================
+  //  Return completely reduced Value of the dimension of inverse,
+  //  or null if it is not given or invalid. The Value is shared
+  //  and must not be modified.
+  //  (Error message is written as by 'Value.fromString'.)
+  //=====================================================================
+  private Value conformableValue()
+    {
+      if (inverse.dimen==null) return null;
+      try
+      { return inverse.dimension(); }
+      catch (EvalError e)
+      {
+        Env.err.println(e.getMessage());
+        return null;
+      }
     }
 
 
@@ -296,12 +336,23 @@ import java.util.Vector;
   /**
    *  Holds details of a forward or inverse definition of the function.
    */
-  private class FuncDef
+  class FuncDef
   {
     String param;
     String def;
     String dimen;
 
+    //-----------------------------------------------------------------
+    //  Compiled 'def', or null if not compiled yet.
+    //-----------------------------------------------------------------
+    private volatile CompiledExpression compiled = null;
+
+    //-----------------------------------------------------------------
+    //  Value of 'dimen', completely reduced,
+    //  or null if not computed yet. It is never modified.
+    //-----------------------------------------------------------------
+    private volatile Value dimValue = null;
+
     //-----------------------------------------------------------------
     //  Construct FuncDef object for definition srting 'df'
     //  with parameter 'par' of dimension 'dim'.
@@ -324,13 +375,12 @@ import java.util.Vector;
         {
           Value dim;
           try
-          { dim = Value.parse(dimen); }
+          { dim = dimension(); }
           catch (EvalError e)
           {
             throw new EvalError("Invalid dimension, " + dimen +
                             ", of function " + inv + name + ". " + e.getMessage());
           }
-          dim.completereduce();
           if (!dim.isCompatibleWith(v,Factor.Ignore.NONE))
           throw new EvalError("Argument " + v.asString() +
                             " of function " + inv + name + " is not conformable to " +
@@ -339,7 +389,12 @@ import java.util.Vector;
 
         Value result;
         try
-        { result = Value.parse(def,param,v); }
+        {
+          CompiledExpression c = compiled;
+          if (c==null)
+            compiled = c = CompiledExpression.compile(def,param);
+          result = c.evaluate(v);
+        }
         catch (EvalError e)
         {
           throw new EvalError("Invalid definition of function '" +
@@ -349,5 +404,22 @@ import java.util.Vector;
         v.copyFrom(result);
       } // end applyTo
 
+    //-----------------------------------------------------------------
+    //  Return Value of 'dimen', completely reduced.
+    //  Throw EvalError if 'dimen' is not a valid unit expression.
+    //  The Value is shared and must not be modified.
+    //-----------------------------------------------------------------
+    Value dimension()
+      {
+        Value dim = dimValue;
+        if (dim==null)
+        {
+          dim = Value.parse(dimen);
+          dim.completereduce();
+          dimValue = dim;
+        }
+        return dim;
+      }
+
   } // end FuncDef
 }
@@ -0,0 +1,317 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//           Plans are kept per UnitRegistry.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class ConversionPlanCache
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Bounded cache of conversion plans for pairs of unit expressions.
+ *  <br>
+ *  A plan holds the result of parsing and reducing both expressions:
+ *  whether they are conformable, whether the conversion is reciprocal,
+ *  and the scale factor. Converting a number with a cached plan
+ *  is one multiplication or division.
+ *  <p>
+ *  The expressions are used as key after trimming and replacing
+ *  each sequence of white space by a single blank.
+ *  Plans are computed and looked up in the current UnitRegistry.
+ *  When the cache is full, the least recently used plan is removed.
+ *  The cache may be used by concurrent threads.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class ConversionPlanCache
+{
+  //-------------------------------------------------------------------
+  //  Plans in order of access, the eldest first.
+  //-------------------------------------------------------------------
+  private final LinkedHashMap<String,Plan> plans;
+
+  //-------------------------------------------------------------------
+  //  Maximum number of plans.
+  //-------------------------------------------------------------------
+  private final int capacity;
+
+  //-------------------------------------------------------------------
+  //  Statistics.
+  //-------------------------------------------------------------------
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+
+  //=====================================================================
+  /** Constructs empty cache for at most 'capacity' plans.
+   *  @param  capacity maximum number of plans kept. */
+  //=====================================================================
+  public ConversionPlanCache(final int capacity)
+    {
+      if (capacity<1)
+        throw new Error("Program error: capacity " + capacity + ".");
+      this.capacity = capacity;
+      plans = new LinkedHashMap<String,Plan>(16,0.75f,true)
+        {
+          protected boolean removeEldestEntry(Map.Entry<String,Plan> e)
+            { return size()>ConversionPlanCache.this.capacity; }
+
+          private static final long serialVersionUID = 4711L;
+        };
+    }
+
+
+  //=====================================================================
+  /** Returns plan for conversion from 'fromExpr' to 'toExpr'
+   *  with options given by Env; throws exception on error.
+   *  @param  fromExpr unit expression to convert from.
+   *  @param  toExpr unit expression to convert to.
+   *  @return the plan. */
+  //=====================================================================
+  public Plan get(final String fromExpr, final String toExpr)
+    { return get(fromExpr,toExpr,UnitRegistry.Options.fromEnv()); }
+
+
+  //=====================================================================
+  /** Returns plan for conversion from 'fromExpr' to 'toExpr',
+   *  computing it if not cached; throws exception on error.
+   *  <br>
+   *  EvalError is thrown if any of the expressions cannot be
+   *  evaluated because of incorrect syntax, unknown unit name, etc..
+   *  Such failures are not cached.
+   *  @param  fromExpr unit expression to convert from.
+   *  @param  toExpr unit expression to convert to.
+   *  @param  options options for the conversion.
+   *  @return the plan. */
+  //=====================================================================
+  public Plan get
+    ( final String fromExpr, final String toExpr,
+      final UnitRegistry.Options options)
+    {
+      String from = normalize(fromExpr);
+      String to = normalize(toExpr);
+      String key = UnitRegistry.current().serial + (options.strict? "S" : "R")
+                   + from + '\n' + to;
+
+      synchronized(plans)
+      {
+        Plan p = plans.get(key);
+        if (p!=null)
+        {
+          hits.incrementAndGet();
+          return p;
+        }
+      }
+
+      misses.incrementAndGet();
+      Plan p = new Plan(from,to,options.strict);
+
+      synchronized(plans)
+      { plans.put(key,p); }
+      return p;
+    }
+
+
+  //=====================================================================
+  /** Converts number 'x' of 'fromExpr' to 'toExpr'
+   *  with options given by Env; throws exception on error.
+   *  @param  x the number.
+   *  @param  fromExpr unit expression to convert from.
+   *  @param  toExpr unit expression to convert to.
+   *  @return 'x' times 'fromExpr' expressed in 'toExpr'. */
+  //=====================================================================
+  public double convert(double x, final String fromExpr, final String toExpr)
+    { return convert(x,fromExpr,toExpr,UnitRegistry.Options.fromEnv()); }
+
+
+  //=====================================================================
+  /** Converts number 'x' of 'fromExpr' to 'toExpr';
+   *  throws exception on error.
+   *  <br>
+   *  EvalError is thrown if any of the expressions cannot be
+   *  evaluated, or they are not conformable.
+   *  @param  x the number.
+   *  @param  fromExpr unit expression to convert from.
+   *  @param  toExpr unit expression to convert to.
+   *  @param  options options for the conversion.
+   *  @return 'x' times 'fromExpr' expressed in 'toExpr'. */
+  //=====================================================================
+  public double convert
+    ( double x, final String fromExpr, final String toExpr,
+      final UnitRegistry.Options options)
+    {
+      Plan p = get(fromExpr,toExpr,options);
+      if (!p.conformable)
+        throw new EvalError("Conformability error: " + p.from
+                          + " cannot be converted to " + p.to + ".");
+      return p.convert(x);
+    }
+
+
+  //=====================================================================
+  /** Removes all plans. */
+  //=====================================================================
+  public void clear()
+    {
+      synchronized(plans)
+      { plans.clear(); }
+    }
+
+
+  //=====================================================================
+  /** Returns number of cached plans.
+   *  @return number of plans. */
+  //=====================================================================
+  public int size()
+    {
+      synchronized(plans)
+      { return plans.size(); }
+    }
+
+
+  //=====================================================================
+  /** Returns number of requests satisfied from the cache.
+   *  @return number of hits. */
+  //=====================================================================
+  public long hits()
+    { return hits.get(); }
+
+
+  //=====================================================================
+  /** Returns number of requests that required a new plan.
+   *  @return number of misses. */
+  //=====================================================================
+  public long misses()
+    { return misses.get(); }
+
+
+  //=====================================================================
+  //  Return 's' trimmed, with white space sequences replaced by blank.
+  //=====================================================================
+  static String normalize(final String s)
+    {
+      StringBuffer sb = new StringBuffer(s.length());
+      boolean space = false;
+      for (int i=0;i<s.length();i++)
+      {
+        char c = s.charAt(i);
+        if (Character.isWhitespace(c))
+          space = sb.length()>0;
+        else
+        {
+          if (space) sb.append(' ');
+          space = false;
+          sb.append(c);
+        }
+      }
+      return sb.toString();
+    }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Plan
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Precomputed conversion between two unit expressions.
+   *  Plans are immutable.
+   */
+  public static class Plan
+  {
+    /** Expression converted from. */
+    public final String from;
+
+    /** Expression converted to. */
+    public final String to;
+
+    /** True if the expressions are conformable,
+     *  directly or reciprocally. */
+    public final boolean conformable;
+
+    /** True if the conversion is reciprocal. */
+    public final boolean reciprocal;
+
+    /** Value of 'from' expressed in 'to', or of its inverse
+     *  if the conversion is reciprocal. */
+    public final double scale;
+
+    //-----------------------------------------------------------------
+    //  Construct plan for conversion from 'f' to 't',
+    //  not reciprocal if 'strict'.
+    //-----------------------------------------------------------------
+    Plan(final String f, final String t, boolean strict)
+      {
+        from = f;
+        to = t;
+
+        Value fromValue = Value.parse(f);
+        fromValue.completereduce();
+        Value toValue = Value.parse(t);
+        toValue.completereduce();
+
+        if (fromValue.isCompatibleWith(toValue,Factor.Ignore.DIMLESS))
+        {
+          conformable = true;
+          reciprocal = false;
+          scale = fromValue.factor / toValue.factor;
+          return;
+        }
+
+        Value invfrom = new Value();
+        invfrom.factor = 1/fromValue.factor;
+        invfrom.numerator = fromValue.denominator;
+        invfrom.denominator = fromValue.numerator;
+
+        reciprocal = true;
+        conformable = !strict
+                      && toValue.isCompatibleWith(invfrom,Factor.Ignore.DIMLESS);
+        scale = conformable? invfrom.factor / toValue.factor : Double.NaN;
+      }
+
+    //-----------------------------------------------------------------
+    /** Converts number 'x' of 'from' to 'to'.
+     *  The plan must be conformable.
+     *  @param  x the number.
+     *  @return 'x' times 'from' expressed in 'to'. */
+    //-----------------------------------------------------------------
+    public double convert(double x)
+      { return reciprocal? scale / x : scale * x; }
+  }
+}
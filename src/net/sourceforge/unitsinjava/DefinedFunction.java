@@ -30,12 +30,13 @@
 //    050203 Version 1.84.J05. Do not initialize table.
 //    050315 Version 1.84.J07. Changed package name to "units".
 //    091024 Version 1.87.J01. Used generics for 'table'.
+//    261018 'table' is a view of the default UnitRegistry.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
-import java.util.Hashtable;
+import java.util.Map;
 
 
 
@@ -51,9 +52,10 @@ import java.util.Hashtable;
 public abstract class DefinedFunction extends Function
 {
   //-------------------------------------------------------------------
-  /**  Table of defined functions. */
+  /**  Table of defined functions in the default UnitRegistry
+   *   (read-only). */
   //-------------------------------------------------------------------
-  public static Hashtable<String,DefinedFunction> table = null;
+  public static Map<String,DefinedFunction> table = null;
 
 public abstract Value getConformability();
   //=====================================================================
@@ -0,0 +1,185 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class Dimension
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  The dimension of a completely reduced Value: exponents
+ *  of the primitive units, without the numeric factor.
+ *  <br>
+ *  Two Values obtained with the same Factor.Ignore are compatible
+ *  if and only if their Dimensions are equal. The Dimensions kept
+ *  by units, nonlinear units, prefixes, and DimensionIndex are
+ *  interned by their UnitRegistry, so there is only one such object
+ *  for given exponents. Dimensions of other Values are not interned,
+ *  so that the registry does not grow with every expression evaluated.
+ *  Exponents of the primitive units disregarded by the Factor.Ignore
+ *  are set to 0; with Factor.Ignore.PRIMITIVE, all Values have
+ *  the Dimension of a number.
+ *  <p>
+ *  Each Dimension has a 64-bit hash computed from the names
+ *  of primitive units and their exponents. It does not depend
+ *  on the order of definitions, and is the same in every run
+ *  of the program, so it may be stored as a key.
+ *  <p>
+ *  A Dimension is immutable, and may be used by any number
+ *  of threads at the same time.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class Dimension
+{
+  //-------------------------------------------------------------------
+  //  Parameters of 64-bit FNV-1a hash.
+  //-------------------------------------------------------------------
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  //-------------------------------------------------------------------
+  //  Exponents indexed by ordinal numbers of primitive units
+  //  in 'registry', as in ReducedValue, and the hash.
+  //-------------------------------------------------------------------
+  private final int[] exp;
+  private final long hash;
+  final UnitRegistry registry;
+
+
+  //=====================================================================
+  //  Construct Dimension with exponents 'e' in registry 'reg'.
+  //  The array 'e' becomes part of the object.
+  //=====================================================================
+  private Dimension(final UnitRegistry reg, final int[] e)
+    {
+      registry = reg;
+      exp = e;
+
+      long h = FNV_OFFSET;
+      for (int i=0;i<e.length;i++)
+      {
+        if (e[i]==0) continue;
+        String name = reg.primitives[i].name;
+        for (int j=0;j<name.length();j++)
+          h = (h ^ name.charAt(j)) * FNV_PRIME;
+        h = (h ^ '^') * FNV_PRIME;
+        for (int k=0;k<32;k+=8)
+          h = (h ^ ((e[i]>>>k) & 0xff)) * FNV_PRIME;
+      }
+      hash = h;
+    }
+
+
+  //=====================================================================
+  //  Return the Dimension of ReducedValue 'r' with exponents
+  //  of primitive units disregarded by 'ignore' set to 0.
+  //=====================================================================
+  static Dimension of(final ReducedValue r, Factor.Ignore ignore)
+    {
+      Unit[] prim = r.registry.primitives;
+      int[] e = new int[r.exp.length];
+      if (ignore!=Factor.Ignore.PRIMITIVE)
+        for (int i=0;i<e.length;i++)
+          if (!prim[i].ignoredIf(ignore)) e[i] = r.exp[i];
+      return new Dimension(r.registry,e);
+    }
+
+
+  //=====================================================================
+  //  Return the Dimension interned by the registry that is equal
+  //  to this one. Only for Dimensions of entities of the registry.
+  //=====================================================================
+  Dimension interned()
+    { return registry.intern(this); }
+
+
+  //=====================================================================
+  /** Returns 64-bit hash of this Dimension.
+   *  @return the hash. */
+  //=====================================================================
+  public long hash()
+    { return hash; }
+
+
+  //=====================================================================
+  /** Returns exponent of primitive unit with given ordinal number.
+   *  @param  ordinal ordinal number of the unit.
+   *  @return the exponent. */
+  //=====================================================================
+  public int exponent(int ordinal)
+    { return exp[ordinal]; }
+
+
+  //=====================================================================
+  /** Checks if this is the Dimension of a number.
+   *  @return <code>true</code> if all exponents are 0. */
+  //=====================================================================
+  public boolean isNumber()
+    {
+      for (int i=0;i<exp.length;i++)
+        if (exp[i]!=0) return false;
+      return true;
+    }
+
+
+  //=====================================================================
+  /** Constructs printable string representing this Dimension
+   *  as a Value with factor 1.
+   *  @return this Dimension as printable string. */
+  //=====================================================================
+  public String asString()
+    {
+      ReducedValue r = new ReducedValue(registry);
+      System.arraycopy(exp,0,r.exp,0,exp.length);
+      return r.asString();
+    }
+
+
+  //=====================================================================
+  //  Equality of exponents. Hashes are compared first.
+  //=====================================================================
+  public boolean equals(Object o)
+    {
+      if (!(o instanceof Dimension)) return false;
+      Dimension d = (Dimension)o;
+      if (d.registry!=registry || d.hash!=hash) return false;
+      for (int i=0;i<exp.length;i++)
+        if (exp[i]!=d.exp[i]) return false;
+      return true;
+    }
+
+  public int hashCode()
+    { return (int)(hash ^ (hash>>>32)); }
+}
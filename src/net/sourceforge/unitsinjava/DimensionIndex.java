@@ -0,0 +1,320 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class DimensionIndex
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Index of units, nonlinear units, and prefixes of a UnitRegistry
+ *  by their Dimension.
+ *  <br>
+ *  The Dimensions are those obtained with Factor.Ignore.DIMLESS,
+ *  the same as used to check conformability. A unit is entered
+ *  under the Dimension of the Value of its name, and a nonlinear
+ *  unit under the Dimension of its result (the same as
+ *  <code>isCompatibleWith</code> uses), so the units listed for
+ *  a Dimension are exactly those compatible with Values of that
+ *  Dimension. A prefix is entered under the Dimension of its
+ *  definition. A prefixed unit has the product of the Dimensions
+ *  of the prefix and the unit; prefixes listed for the Dimension
+ *  of a number can thus be combined with any unit without changing
+ *  its Dimension. Names that cannot be evaluated are not entered.
+ *  <p>
+ *  The index is built by several threads, and is not modified
+ *  after it has been built, so it may be used by any number
+ *  of threads at the same time. All lists are in alphabetic order
+ *  of names, and cannot be modified.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class DimensionIndex
+{
+  //-------------------------------------------------------------------
+  //  Registry of the index, and entries for the Dimensions.
+  //-------------------------------------------------------------------
+  private final UnitRegistry registry;
+  private final HashMap<Dimension,Entry> entries = new HashMap<Dimension,Entry>();
+
+  //-------------------------------------------------------------------
+  //  Entry for a Dimension without any entities.
+  //-------------------------------------------------------------------
+  private static final Entry EMPTY = new Entry();
+  static { EMPTY.seal(); }
+
+  //-------------------------------------------------------------------
+  //  Entities to be indexed, their Dimensions
+  //  computed by the threads, and the first failure of a thread
+  //  that is not the failure of one entity.
+  //-------------------------------------------------------------------
+  private Entity[] entities;
+  private Dimension[] dimensions;
+  private Throwable failure = null;
+
+
+  //=====================================================================
+  //  Construct empty index for registry 'reg'.
+  //=====================================================================
+  private DimensionIndex(final UnitRegistry reg)
+    { registry = reg; }
+
+
+  //=====================================================================
+  //  Build index for registry 'reg' using 'threads' threads.
+  //=====================================================================
+  static DimensionIndex build(final UnitRegistry reg, int threads)
+    {
+      DimensionIndex index = new DimensionIndex(reg);
+      index.fill(threads);
+      return index;
+    }
+
+
+  //=====================================================================
+  /** Returns the units compatible with Values of given Dimension.
+   *  @param  d Dimension obtained with Factor.Ignore.DIMLESS.
+   *  @return the units. */
+  //=====================================================================
+  public List<Unit> units(final Dimension d)
+    { return entry(d).units; }
+
+
+  //=====================================================================
+  /** Returns the nonlinear units compatible with Values
+   *  of given Dimension.
+   *  @param  d Dimension obtained with Factor.Ignore.DIMLESS.
+   *  @return the nonlinear units. */
+  //=====================================================================
+  public List<DefinedFunction> functions(final Dimension d)
+    { return entry(d).functions; }
+
+
+  //=====================================================================
+  /** Returns the prefixes whose definition has given Dimension.
+   *  @param  d Dimension obtained with Factor.Ignore.DIMLESS.
+   *  @return the prefixes. */
+  //=====================================================================
+  public List<Prefix> prefixes(final Dimension d)
+    { return entry(d).prefixes; }
+
+
+  //=====================================================================
+  /** Returns the Dimensions in the index.
+   *  @return the Dimensions, in no particular order. */
+  //=====================================================================
+  public List<Dimension> dimensions()
+    { return Collections.unmodifiableList(new ArrayList<Dimension>(entries.keySet())); }
+
+
+  //=====================================================================
+  //  Return entry for Dimension 'd'.
+  //=====================================================================
+  private Entry entry(final Dimension d)
+    {
+      if (d.registry!=registry)
+        throw new Error("Program error: Dimension of another registry.");
+      Entry e = entries.get(d);
+      return e==null? EMPTY : e;
+    }
+
+
+  //=====================================================================
+  //  Compute Dimensions of all entities by 'threads' threads,
+  //  and enter the entities in alphabetic order of names.
+  //=====================================================================
+  private void fill(int threads)
+    {
+      ArrayList<Entity> list = new ArrayList<Entity>();
+      for (String n: new TreeSet<String>(registry.units().keySet()))
+        list.add(registry.units().get(n));
+      for (String n: new TreeSet<String>(registry.definedFunctions().keySet()))
+        list.add(registry.definedFunctions().get(n));
+      for (String n: new TreeSet<String>(registry.prefixes().keySet()))
+        list.add(registry.prefixes().get(n));
+      entities = list.toArray(new Entity[list.size()]);
+      dimensions = new Dimension[entities.length];
+
+      Thread[] workers = new Thread[Math.max(1,threads)];
+      for (int k=0;k<workers.length;k++)
+      {
+        final int first = k;
+        final int step = workers.length;
+        workers[k] = new Thread("DimensionIndex " + k)
+          {
+            public void run()
+              { compute(first,step); }
+          };
+        workers[k].start();
+      }
+
+      boolean interrupted = false;
+      for (int k=0;k<workers.length;k++)
+      {
+        while (true)
+        {
+          try
+          {
+            workers[k].join();
+            break;
+          }
+          catch (InterruptedException e)
+          { interrupted = true; }
+        }
+      }
+      if (interrupted)
+        Thread.currentThread().interrupt();
+
+      if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+      if (failure instanceof Error) throw (Error)failure;
+
+      for (int i=0;i<entities.length;i++)
+      {
+        Dimension d = dimensions[i];
+        if (d==null) continue;
+        Entry e = entries.get(d);
+        if (e==null)
+        {
+          e = new Entry();
+          entries.put(d.interned(),e);
+        }
+        Entity x = entities[i];
+        if (x instanceof Unit) e.units.add((Unit)x);
+        else if (x instanceof Prefix) e.prefixes.add((Prefix)x);
+        else e.functions.add((DefinedFunction)x);
+      }
+
+      for (Entry e: entries.values())
+        e.seal();
+
+      entities = null;
+      dimensions = null;
+    }
+
+
+  //=====================================================================
+  //  Compute Dimensions of entities 'first', 'first'+'step', etc.
+  //  Runs in a worker thread.
+  //=====================================================================
+  private void compute(int first, int step)
+    {
+      UnitRegistry prev = registry.use();
+      try
+      {
+        for (int i=first;i<entities.length;i+=step)
+          dimensions[i] = dimension(entities[i]);
+      }
+      catch (Throwable t)
+      { fail(t); }
+      finally
+      { UnitRegistry.restore(prev); }
+    }
+
+
+  //=====================================================================
+  //  Record failure 't' unless there is an earlier one.
+  //=====================================================================
+  private synchronized void fail(final Throwable t)
+    {
+      if (failure==null) failure = t;
+    }
+
+
+  //=====================================================================
+  //  Return Dimension of entity 'x', or null if it cannot be
+  //  evaluated. Unlike 'Entity.dimension', no message is written.
+  //  Any failure of one entity, including the StackOverflowError
+  //  of a definition that refers to itself, only leaves out
+  //  that entity.
+  //=====================================================================
+  private static Dimension dimension(final Entity x)
+    {
+      try
+      {
+        if (x instanceof Unit)
+          return Value.parse(x.name).dimension(Factor.Ignore.DIMLESS);
+        if (x instanceof Prefix)
+          return ((Prefix)x).dimension(Factor.Ignore.DIMLESS);
+        if (x instanceof TabularFunction)
+          return Value.parse(((TabularFunction)x).tableunit)
+                   .dimension(Factor.Ignore.DIMLESS);
+        if (x instanceof ComputedFunction)
+        {
+          ComputedFunction.FuncDef inv = ((ComputedFunction)x).inverse;
+          if (inv.dimen==null) return null;
+          return inv.dimension().dimension(Factor.Ignore.DIMLESS);
+        }
+        return null;
+      }
+      catch (EvalError e)
+      { return null; }
+      catch (RuntimeException e)
+      { return null; }
+      catch (StackOverflowError e)
+      { return null; }
+    }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Entry
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Entities of one Dimension.
+   */
+  private static class Entry
+  {
+    List<Unit> units = new ArrayList<Unit>();
+    List<DefinedFunction> functions = new ArrayList<DefinedFunction>();
+    List<Prefix> prefixes = new ArrayList<Prefix>();
+
+    //-----------------------------------------------------------------
+    //  Make the lists read-only.
+    //-----------------------------------------------------------------
+    void seal()
+      {
+        units = Collections.unmodifiableList(units);
+        functions = Collections.unmodifiableList(functions);
+        prefixes = Collections.unmodifiableList(prefixes);
+      }
+  }
+}
@@ -33,6 +33,7 @@
 //    091031 Replaced 'addtolist' by 'isCompatibleWith'.
 //           Implemented Comparable interface.
 //    091101 Removed 'insertAlph'.
+//    261018 Added 'dimension'.
 //
 //=========================================================================
 
@@ -91,6 +92,14 @@ abstract class Entity implements Comparable<Entity>
   abstract boolean isCompatibleWith(final Value v);
 
 
+  //=====================================================================
+  //  Return Dimension of Values this Entity is compatible with,
+  //  obtained with Factor.Ignore.DIMLESS, or null if there are none.
+  //=====================================================================
+  Dimension dimension()
+    { return null; }
+
+
   //=====================================================================
   //  Return short description of the defined object
   //  to be shown by 'tryallunits'.
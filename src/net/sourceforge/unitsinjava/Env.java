@@ -53,6 +53,10 @@
 //           Renamed 'ABOUT' to 'COPYRIGHT' and removed version info.
 //           Changed 'showAbout' to show version and invocation info
 //           before copyright.
+//    261018 Added 'snapshot' and 'useFileSystem'.
+//           Added 'lazy'.
+//           Added 'packrat'.
+//           Added 'fastparse'.
 //
 //=========================================================================
 
@@ -65,6 +69,9 @@ import java.io.File;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 
 
@@ -158,11 +165,15 @@ import java.io.FileNotFoundException;
   public static Vector<String> filenames;  // Unit definition files
   public static String locale;             // Locale in effect
   public static String propfile;           // Property file used
+  public static String snapshot;           // Snapshot of tables, or null
+  public static boolean lazy;              // Create units when first used
 
   public static int verbose;               // 0=compact, 1=normal, 2=verbose
   public static boolean quiet;             // Suppress prompting and statistics
   public static boolean oneline;           // Only one line of output
   public static boolean strict;            // Strict conversion
+  public static boolean packrat;           // Parse in packrat mode
+  public static boolean fastparse = true;  // Parse with FastParser if possible
   public static boolean unitcheck;         // Unit checking
 
   public static FileAcc files;             // File system
@@ -284,6 +295,43 @@ import java.io.FileNotFoundException;
       if (personal.exists()) filenames.add(personal.getPath());
     }
 
+  //=====================================================================
+  //  useFileSystem
+  //=====================================================================
+  /**
+   *  Makes 'files' read definition files from the file system,
+   *  or from the class path if not found there,
+   *  and 'out' and 'err' write to standard error.
+   *  Used by command-line tools that write data to standard output.
+   */
+  public static void useFileSystem()
+    {
+      files = new FileAcc()
+        {
+          public BufferedReader open(final String name)
+            {
+              try
+              {
+                InputStream s = new File(name).exists()?
+                                  new FileInputStream(name) :
+                                  Env.class.getResourceAsStream("/" + name);
+                if (s==null) return null;
+                return new BufferedReader(new InputStreamReader(s,"8859_1"));
+              }
+              catch (IOException e)
+              { return null; }
+            }
+        };
+
+      out = new Writer()
+        {
+          public void print(final String s) { System.err.print(s); }
+          public void println(final String s) { System.err.println(s); }
+        };
+      err = out;
+    }
+
+
   //=====================================================================
   //  showAbout
   //=====================================================================
@@ -29,11 +29,18 @@
 //
 //    050315 Version 1.84.J07. Changed package name to "units".
 //    091031 Version 1.97.J01. Moved here definition of Ignore
+//    261018 Added 'ordinal' and cached reduced definition.
+//           Added 'registry'.
+//           Added 'setReduced' for UnitSnapshot.
+//           Added 'split' for part of a CharSequence.
+//           Added 'dimension'.
+//           Circular definitions are reported by 'reduced'.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
+import java.util.ArrayList;
 
 
 //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
@@ -68,6 +75,16 @@ abstract public class Factor extends Entity
   //-------------------------------------------------------------------
   boolean isNumber = false;
 
+  //-------------------------------------------------------------------
+  /**  Ordinal number of a primitive unit in its UnitRegistry. */
+  //-------------------------------------------------------------------
+  int ordinal = -1;
+
+  //-------------------------------------------------------------------
+  /**  Registry containing this factor. */
+  //-------------------------------------------------------------------
+  final UnitRegistry registry;
+
   //-------------------------------------------------------------------
   /**  Ignore in comparisons? */
   //-------------------------------------------------------------------
@@ -80,6 +97,29 @@ abstract public class Factor extends Entity
 
   public enum Ignore {NONE, PRIMITIVE, DIMLESS};
 
+  //-------------------------------------------------------------------
+  /**  Completely reduced Value of the definition, or null
+   *   if not computed yet. */
+  //-------------------------------------------------------------------
+  private volatile ReducedValue reduced = null;
+
+  //-------------------------------------------------------------------
+  /**  Dimension of the definition with Ignore.DIMLESS,
+   *   or null if not computed yet. */
+  //-------------------------------------------------------------------
+  private volatile Dimension dimension = null;
+
+  //-------------------------------------------------------------------
+  //  Factors whose reduced definition is being computed
+  //  by each thread, to detect circular definitions.
+  //-------------------------------------------------------------------
+  private static final ThreadLocal<ArrayList<Factor>> inProgress =
+    new ThreadLocal<ArrayList<Factor>>()
+    {
+      protected ArrayList<Factor> initialValue()
+        { return new ArrayList<Factor>(); }
+    };
+
   //=====================================================================
   //  Construct object for factor 'nam' appearing at 'loc'.
   //  The factor is defined by string 'df'.
@@ -88,6 +128,7 @@ abstract public class Factor extends Entity
     {
       super(nam,loc);
       def = df;
+      registry = UnitRegistry.current();
 
       if (df.equals("!"))
         isPrimitive = true;
@@ -101,6 +142,80 @@ abstract public class Factor extends Entity
       isNumber = Util.strtod(def,0)==def.length();
     }
 
+  //=====================================================================
+  //  Return the completely reduced Value of the definition.
+  //  It is computed on first request and kept for later use;
+  //  the Value returned is shared and must not be modified.
+  //  Concurrent first requests may compute it more than once,
+  //  but all of them obtain an equal result.
+  //  As in 'Value.reduceproduct' of the original, an error in the
+  //  definition is reported with the name of this factor, and an
+  //  error in the definition of a factor it refers to is reported
+  //  with the name of that factor. A definition that refers to
+  //  itself, directly or through other factors, is reported
+  //  as circular instead of being reduced forever.
+  //=====================================================================
+  ReducedValue reduced()
+    {
+      ReducedValue r = reduced;
+      if (r!=null) return r;
+
+      ArrayList<Factor> active = inProgress.get();
+      for (Factor f: active)
+        if (f==this)
+          throw new EvalError("Circular definition of '" + name + "'.");
+
+      active.add(this);
+      UnitRegistry prev = registry.use();
+      try
+      {
+        Value v;
+        try
+        { v = Value.parse(def); }
+
+        catch (EvalError e)
+        {
+          throw new EvalError("Invalid definition of '" + name + "'. "
+                            + e.getMessage());
+        }
+
+        r = new ReducedValue(v);
+      }
+
+      finally
+      {
+        UnitRegistry.restore(prev);
+        active.remove(active.size()-1);
+      }
+
+      reduced = r;
+      return r;
+    }
+
+  //=====================================================================
+  //  Return the Dimension of the definition with primitive units
+  //  disregarded by 'ignore' omitted. The Dimension for
+  //  Ignore.DIMLESS, used to check conformability,
+  //  is computed on first request and kept for later use.
+  //=====================================================================
+  Dimension dimension(Ignore ignore)
+    {
+      if (ignore!=Ignore.DIMLESS)
+        return reduced().dimension(ignore);
+      Dimension d = dimension;
+      if (d==null)
+        dimension = d = reduced().dimension(ignore).interned();
+      return d;
+    }
+
+  //=====================================================================
+  //  Set the completely reduced Value of the definition
+  //  to 'r' obtained from a snapshot.
+  //=====================================================================
+  void setReduced(final ReducedValue r)
+    { reduced = r; }
+
+
   //=====================================================================
   //  Find out if 'name' is the name of a unit or prefix, or is a prefixed
   //  unit name. The unit name given as 'name' or its part may be in plural.
@@ -110,20 +225,28 @@ abstract public class Factor extends Entity
   //  (Originally part of 'lookupunit'.)
   //=====================================================================
   public static Factor[] split(final String name)
+    { return split(name,0,name.length()); }
+
+
+  //=====================================================================
+  //  Do the same as 'split' above for the name that consists
+  //  of characters 'start' through 'end'-1 of 's'.
+  //=====================================================================
+  static Factor[] split(final CharSequence s, int start, int end)
     {
       //---------------------------------------------------------------
-      //  If 'name' is a unit name, possibly in plural form,
+      //  If the name is a unit name, possibly in plural form,
       //  return its Unit object.
       //---------------------------------------------------------------
-      Unit u = Unit.find(name);
+      Unit u = Unit.find(s,start,end);
       if (u!=null)
         return new Factor[]{null,u};
 
       //---------------------------------------------------------------
-      //  The 'name' is not a unit name.
+      //  The name is not a unit name.
       //  See if it is a prefix or prefixed unit name.
       //---------------------------------------------------------------
-      Prefix p = Prefix.find(name);
+      Prefix p = Prefix.find(s,start,end);
 
       //---------------------------------------------------------------
       //  Return null if not a prefix or prefixed unit name.
@@ -132,21 +255,18 @@ abstract public class Factor extends Entity
         return null;
 
       //---------------------------------------------------------------
-      //  Get the prefix string.
-      //  If it is all of 'name', return its Prefix object.
+      //  If the prefix is all of the name, return its Prefix object.
       //---------------------------------------------------------------
-      String prefix = p.name;
-      if (name.equals(prefix))
+      int rest = start + p.name.length();
+      if (rest==end)
         return new Factor[]{p,null};
 
       //---------------------------------------------------------------
-      //  The 'name' has a known prefix 'prefix'.
-      //  Split 'name' into  the prefix and 'rest'.
-      //  If 'rest' (or its singular form) is a unit name,
+      //  The name has a known prefix.
+      //  If the rest of the name (or its singular form) is a unit name,
       //  return the Prefix and Unit objects.
       //---------------------------------------------------------------
-      String rest = name.substring(prefix.length(),name.length());
-      u = Unit.find(rest);
+      u = Unit.find(s,rest,end);
       if (u!=null)
         return new Factor[]{p,u};
 
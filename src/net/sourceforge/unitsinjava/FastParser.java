@@ -0,0 +1,591 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class FastParser
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Hand-written parser for the language defined by grammar.peg.
+ *  <br>
+ *  It is a recursive-descent parser with one method per rule of
+ *  the grammar, and it tries alternatives and repetitions in the same
+ *  order as the generated Parser, so that it accepts the same
+ *  expressions and produces the same evaluation tree as Semantics.
+ *  Unlike the generated Parser, it builds the tree directly while
+ *  parsing, without Phrase objects for the rules.
+ *  <br>
+ *  The parser does not produce error messages: on any error,
+ *  it gives up, and the expression is parsed again by the generated
+ *  Parser, which produces the message.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ class FastParser
+{
+  //-------------------------------------------------------------------
+  //  Characters that end a word, and that cannot start a word.
+  //-------------------------------------------------------------------
+  private static final String ENDWORD = "\t\n^ +-*/|()";
+  private static final String NOTWORD = ".0123456789~";
+
+  //-------------------------------------------------------------------
+  //  The expression, its length, and current position.
+  //-------------------------------------------------------------------
+  private final String text;
+  private final int end;
+  private int pos = 0;
+
+  //-------------------------------------------------------------------
+  //  Parameter names and where to look up other names.
+  //-------------------------------------------------------------------
+  private final String[] parms;
+  private final UnitRegistry registry;
+
+  //-------------------------------------------------------------------
+  //  Value of the last number parsed.
+  //-------------------------------------------------------------------
+  private double number;
+
+
+  //=====================================================================
+  //  Construct parser for expression 's' with parameters 'p',
+  //  names to be looked up in 'reg'.
+  //=====================================================================
+  private FastParser(final String s, final String[] p, final UnitRegistry reg)
+    {
+      text = s;
+      end = s.length();
+      parms = p;
+      registry = reg;
+    }
+
+
+  //=====================================================================
+  //  Parse expression 's' with parameters 'parms', looking up names
+  //  in 'reg'. Return the evaluation tree, or null if the expression
+  //  has an error.
+  //=====================================================================
+  static CompiledExpression.Node parse
+    ( final String s, final String[] parms, final UnitRegistry reg)
+    {
+      FastParser p = new FastParser(s,parms,reg);
+      try
+      { return p.unitexpr(); }
+      catch (EvalError e)
+      { return null; }
+    }
+
+
+  //=====================================================================
+  //
+  //  Rules of the grammar.
+  //  Each method returns the tree of the phrase, or null
+  //  if the phrase is not found. In the latter case,
+  //  current position is left unchanged.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  unitexpr = space expr? EOT
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node unitexpr()
+    {
+      space();
+      CompiledExpression.Node n = expr();
+      if (pos<end) return null;
+      if (n==null)
+        n = new CompiledExpression.Const(new Value());
+      return n;
+    }
+
+  //-------------------------------------------------------------------
+  //  expr = term ((PLUS / MINUS) term)*
+  //       / (SLASH / PER) product
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node expr()
+    {
+      int start = pos;
+      CompiledExpression.Node t = term();
+      if (t==null)
+      {
+        if (!symbol('/') && !per()) return null;
+        CompiledExpression.Node p = product();
+        if (p==null)
+        {
+          pos = start;
+          return null;
+        }
+        return new CompiledExpression.Inverse(p);
+      }
+
+      Operands ops = null;
+      while (true)
+      {
+        int save = pos;
+        boolean minus;
+        if (symbol('+')) minus = false;
+        else if (symbol('-')) minus = true;
+        else break;
+        CompiledExpression.Node t1 = term();
+        if (t1==null)
+        {
+          pos = save;
+          break;
+        }
+        if (ops==null) ops = new Operands(t);
+        ops.add(t1,minus);
+      }
+      if (ops==null) return t;
+      return new CompiledExpression.Sum(ops.nodes(),ops.flags());
+    }
+
+  //-------------------------------------------------------------------
+  //  term = product ((STAR / SLASH / PER) product)*
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node term()
+    {
+      CompiledExpression.Node p = product();
+      if (p==null) return null;
+
+      Operands ops = null;
+      while (true)
+      {
+        int save = pos;
+        boolean divide;
+        if (star()) divide = false;
+        else if (symbol('/') || per()) divide = true;
+        else break;
+        CompiledExpression.Node p1 = product();
+        if (p1==null)
+        {
+          pos = save;
+          break;
+        }
+        if (ops==null) ops = new Operands(p);
+        ops.add(p1,divide);
+      }
+      if (ops==null) return p;
+      return new CompiledExpression.Term(ops.nodes(),ops.flags());
+    }
+
+  //-------------------------------------------------------------------
+  //  product = factor (![+-] factor)*
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node product()
+    {
+      CompiledExpression.Node f = factor();
+      if (f==null) return null;
+
+      Operands ops = null;
+      while (pos<end && text.charAt(pos)!='+' && text.charAt(pos)!='-')
+      {
+        CompiledExpression.Node f1 = factor();
+        if (f1==null) break;
+        if (ops==null) ops = new Operands(f);
+        ops.add(f1,false);
+      }
+      if (ops==null) return f;
+      return new CompiledExpression.Term(ops.nodes(),ops.flags());
+    }
+
+  //-------------------------------------------------------------------
+  //  factor = unary ((HAT / STARSTAR) unary)*
+  //  The powers are right-associative, so this is parsed
+  //  as factor = unary ((HAT / STARSTAR) factor)?
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node factor()
+    {
+      CompiledExpression.Node u = unary();
+      if (u==null) return null;
+
+      int save = pos;
+      if (!symbol('^') && !starstar()) return u;
+      CompiledExpression.Node f = factor();
+      if (f==null)
+      {
+        pos = save;
+        return u;
+      }
+      return new CompiledExpression.Power(u,f);
+    }
+
+  //-------------------------------------------------------------------
+  //  unary = (PLUS / MINUS)? primary
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node unary()
+    {
+      int start = pos;
+      boolean minus = false;
+      if (!symbol('+'))
+        minus = symbol('-');
+      CompiledExpression.Node p = primary();
+      if (p==null)
+      {
+        pos = start;
+        return null;
+      }
+      return minus? new CompiledExpression.Negate(p) : p;
+    }
+
+  //-------------------------------------------------------------------
+  //  primary = numexpr
+  //          / LPAR expr RPAR
+  //          / unitname
+  //          / bfunc LPAR expr RPAR
+  //          / opttilde dfunc LPAR expr RPAR
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node primary()
+    {
+      CompiledExpression.Node n = numexpr();
+      if (n!=null) return n;
+
+      n = parenthesized();
+      if (n!=null) return n;
+
+      n = unitname();
+      if (n!=null) return n;
+
+      int start = pos;
+      Function func = bfunc();
+      if (func!=null)
+      {
+        n = parenthesized();
+        if (n!=null) return new CompiledExpression.Apply(func,false,n);
+        pos = start;
+      }
+
+      boolean inverse = symbol('~');
+      func = dfunc();
+      if (func!=null)
+      {
+        n = parenthesized();
+        if (n!=null) return new CompiledExpression.Apply(func,inverse,n);
+      }
+      pos = start;
+      return null;
+    }
+
+  //-------------------------------------------------------------------
+  //  LPAR expr RPAR
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node parenthesized()
+    {
+      int start = pos;
+      if (!symbol('(')) return null;
+      CompiledExpression.Node e = expr();
+      if (e!=null && symbol(')')) return e;
+      pos = start;
+      return null;
+    }
+
+  //-------------------------------------------------------------------
+  //  numexpr = number (BAR number)*
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node numexpr()
+    {
+      if (!number()) return null;
+      double d = number;
+      while (true)
+      {
+        int save = pos;
+        if (!symbol('|')) break;
+        if (!number())
+        {
+          pos = save;
+          break;
+        }
+        if (number==0) throw new EvalError("Division by 0");
+        d /= number;
+      }
+      return new CompiledExpression.Const(d);
+    }
+
+  //-------------------------------------------------------------------
+  //  number   = mantissa exponent? space
+  //  mantissa = "." digits / digits ("." digits?)?
+  //  exponent = [Ee] sign? digits
+  //  The value is left in 'number'.
+  //-------------------------------------------------------------------
+  private boolean number()
+    {
+      int start = pos;
+      if (pos<end && text.charAt(pos)=='.')
+      {
+        if (digits(pos+1)==pos+1) return false;
+        pos = digits(pos+1);
+      }
+      else
+      {
+        if (digits(pos)==pos) return false;
+        pos = digits(pos);
+        if (pos<end && text.charAt(pos)=='.')
+          pos = digits(pos+1);
+      }
+
+      if (pos<end && (text.charAt(pos)=='E' || text.charAt(pos)=='e'))
+      {
+        int p = pos+1;
+        if (p<end && (text.charAt(p)=='+' || text.charAt(p)=='-')) p++;
+        if (digits(p)>p) pos = digits(p);
+      }
+
+      number = Double.parseDouble(text.substring(start,pos));
+      space();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  unitname = word space {&unitname}
+  //  The semantic predicate is that of Semantics.unitname.
+  //-------------------------------------------------------------------
+  private CompiledExpression.Node unitname()
+    {
+      int start = pos;
+      int stop = word(start);
+      if (stop<0) return null;
+
+      if (NameIndex.equals("per",text,start,stop)) return null;
+
+      if (registry.builtInNames().get(text,start,stop)!=null) return null;
+
+      CompiledExpression.Node n;
+      int p = parmIndex(start,stop);
+      if (p>=0)
+        n = new CompiledExpression.Param(p);
+      else
+      {
+        if (registry.functionNames().get(text,start,stop)!=null) return null;
+
+        // Do exponent handling like m3
+        int exp = 2 + "23456789".indexOf(text.charAt(stop-1));
+
+        Value v = Value.fromName(text,start,exp>1? stop-1 : stop);
+
+        if (exp>1) v.power(exp);
+
+        n = new CompiledExpression.Const(v);
+      }
+
+      pos = stop;
+      space();
+      return n;
+    }
+
+  //-------------------------------------------------------------------
+  //  bfunc = word space {&bfunc}
+  //  The semantic predicate is that of Semantics.bfunc.
+  //-------------------------------------------------------------------
+  private Function bfunc()
+    {
+      int stop = word(pos);
+      if (stop<0) return null;
+      String word = text.substring(pos,stop);
+      if (word.equals("per")) return null;
+      Function func = registry.builtIns.get(word);
+      if (func==null) return null;
+      pos = stop;
+      space();
+      return func;
+    }
+
+  //-------------------------------------------------------------------
+  //  dfunc = word space {&ufunc}
+  //  The semantic predicate is that of Semantics.ufunc.
+  //-------------------------------------------------------------------
+  private Function dfunc()
+    {
+      int stop = word(pos);
+      if (stop<0) return null;
+      String word = text.substring(pos,stop);
+      if (word.equals("per")) return null;
+      if (parmIndex(pos,stop)>=0) return null;
+      Function func = registry.definedFunctions().get(word);
+      if (func==null) return null;
+      pos = stop;
+      space();
+      return func;
+    }
+
+
+  //=====================================================================
+  //
+  //  Terminals.
+  //
+  //=====================================================================
+  //-------------------------------------------------------------------
+  //  Operator 'c' followed by space: BAR, HAT, TILDE, LPAR, MINUS,
+  //  PLUS, RPAR, or SLASH.
+  //-------------------------------------------------------------------
+  private boolean symbol(char c)
+    {
+      if (pos>=end || text.charAt(pos)!=c) return false;
+      pos++;
+      space();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  STAR = "*" !"*" space
+  //-------------------------------------------------------------------
+  private boolean star()
+    {
+      if (pos>=end || text.charAt(pos)!='*') return false;
+      if (pos+1<end && text.charAt(pos+1)=='*') return false;
+      pos++;
+      space();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  STARSTAR = "**" space
+  //-------------------------------------------------------------------
+  private boolean starstar()
+    {
+      if (!text.startsWith("**",pos)) return false;
+      pos += 2;
+      space();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  PER = "per" &[\t\n^ +-*/|()] space
+  //-------------------------------------------------------------------
+  private boolean per()
+    {
+      if (!text.startsWith("per",pos)) return false;
+      if (pos+3>=end || ENDWORD.indexOf(text.charAt(pos+3))<0) return false;
+      pos += 3;
+      space();
+      return true;
+    }
+
+  //-------------------------------------------------------------------
+  //  space = [ \t]*
+  //-------------------------------------------------------------------
+  private void space()
+    {
+      while (pos<end && (text.charAt(pos)==' ' || text.charAt(pos)=='\t'))
+        pos++;
+    }
+
+  //-------------------------------------------------------------------
+  //  word = ![.0123456789~] namechar+
+  //  Return end of the word starting at 'start', or -1 if none.
+  //-------------------------------------------------------------------
+  private int word(int start)
+    {
+      if (start>=end) return -1;
+      char c = text.charAt(start);
+      if (NOTWORD.indexOf(c)>=0 || ENDWORD.indexOf(c)>=0) return -1;
+      int i = start+1;
+      while (i<end && ENDWORD.indexOf(text.charAt(i))<0)
+        i++;
+      return i;
+    }
+
+  //-------------------------------------------------------------------
+  //  digits = [0-9]*
+  //  Return end of the digits starting at 'start'.
+  //-------------------------------------------------------------------
+  private int digits(int start)
+    {
+      int i = start;
+      while (i<end && text.charAt(i)>='0' && text.charAt(i)<='9')
+        i++;
+      return i;
+    }
+
+  //-------------------------------------------------------------------
+  //  Return index of parameter named by characters 'start'
+  //  through 'stop'-1 of the text, or -1 if none.
+  //-------------------------------------------------------------------
+  private int parmIndex(int start, int stop)
+    {
+      for (int i=0;i<parms.length;i++)
+        if (NameIndex.equals(parms[i],text,start,stop)) return i;
+      return -1;
+    }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Operands
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Operands of a sum or product, with a flag for each telling
+   *  if it is subtracted or divided. The flag of the first is false.
+   */
+  private static class Operands
+  {
+    private CompiledExpression.Node[] nodes = new CompiledExpression.Node[4];
+    private boolean[] flags = new boolean[4];
+    private int size = 0;
+
+    Operands(final CompiledExpression.Node first)
+      { add(first,false); }
+
+    void add(final CompiledExpression.Node n, boolean flag)
+      {
+        if (size==nodes.length)
+        {
+          CompiledExpression.Node[] nn = new CompiledExpression.Node[2*size];
+          boolean[] ff = new boolean[2*size];
+          System.arraycopy(nodes,0,nn,0,size);
+          System.arraycopy(flags,0,ff,0,size);
+          nodes = nn;
+          flags = ff;
+        }
+        nodes[size] = n;
+        flags[size] = flag;
+        size++;
+      }
+
+    CompiledExpression.Node[] nodes()
+      {
+        CompiledExpression.Node[] nn = new CompiledExpression.Node[size];
+        System.arraycopy(nodes,0,nn,0,size);
+        return nn;
+      }
+
+    boolean[] flags()
+      {
+        boolean[] ff = new boolean[size];
+        System.arraycopy(flags,0,ff,0,size);
+        return ff;
+      }
+  }
+}
@@ -29,6 +29,10 @@
 //
 //    050203 Version 1.84.J05. MAXINCLUDE moved to Env object.
 //    050315 Version 1.84.J07. Changed package name to "units".
+//    261018 Locale is taken from UnitRegistry.
+//           File is recorded in UnitRegistry.
+//           Contents are saved only for lazy UnitRegistry, which
+//           creates objects from them by 'define'.
 //
 //=========================================================================
 
@@ -59,6 +63,8 @@ import java.net.URL;
   String name;
   String contents;
 
+  private static final String WHITE = " \t";  // Whitespace characters
+
 
 
   //=====================================================================
@@ -79,16 +85,15 @@ import java.net.URL;
   //=====================================================================
   /**
    *  Reads definitions from the file.
-   *  Creates objects for the Entities thus defined.
-   *  Saves contents of the file.
+   *  Creates objects for the Entities thus defined or,
+   *  for a lazy UnitRegistry, records their locations
+   *  and saves contents of the file.
    *
    *  @param  depth include depth.
    *  @return true if file successfully processed; false otherwise.
    */
   boolean readunits(int depth)
     {
-      final String WHITE = " \t";  // Whitespace characters
-
       //---------------------------------------------------------------
       //  Open the file.
       //---------------------------------------------------------------
@@ -98,6 +103,8 @@ import java.net.URL;
         Env.err.println("File '" + name + "' not found.");
         return false;
       }
+      UnitRegistry reg = UnitRegistry.current();
+      reg.files.add(this);
 
       //---------------------------------------------------------------
       //  Line numbers.
@@ -120,9 +127,9 @@ import java.net.URL;
       boolean inlocale = false;
 
       //---------------------------------------------------------------
-      //  Buffer to accumulate the contents.
+      //  Buffer to accumulate the contents for lazy registry.
       //---------------------------------------------------------------
-      StringBuffer fb = new StringBuffer();
+      StringBuffer fb = reg.lazy? new StringBuffer() : null;
 
       //---------------------------------------------------------------
       //  Reading loop.
@@ -155,7 +162,7 @@ import java.net.URL;
                                  name + ".");
               return false;
             }
-          fb.append(line).append("\n");
+          if (fb!=null) fb.append(line).append("\n");
           linenum++;
           pos += (line.length()+1);
 
@@ -218,7 +225,7 @@ import java.net.URL;
             }
 
             inlocale = true;
-            if (!argument.equals(Env.locale))
+            if (!argument.equals(UnitRegistry.current().locale()))
               wronglocale = true;
             continue;
           }
@@ -299,24 +306,10 @@ import java.net.URL;
         //-------------------------------------------------------------
         Location loc = new Location(this,linestart,startpos,pos-1);
 
-        //  If line is a prefix definition:
-
-        if (Prefix.accept(unitname,unitdef,loc))
-          continue;
-
-        //  If line is a table definition:
-
-        if (TabularFunction.accept(unitname,unitdef,loc))
-          continue;
-
-        //  If line is a function definition:
-
-        if (ComputedFunction.accept(unitname,unitdef,loc))
-          continue;
-
-        //  Otherwise line is a unit definition.
-
-        Unit.accept(unitname,unitdef,loc);
+        if (reg.lazy)
+          reg.index(unitname,unitdef,loc);
+        else
+          define(unitname,unitdef,loc);
 
       } // end ReadLoop
 
@@ -331,8 +324,88 @@ import java.net.URL;
       //---------------------------------------------------------------
       //  Save file contents.
       //---------------------------------------------------------------
-      contents = fb.toString();
+      if (fb!=null) contents = fb.toString();
 
       return true;
     }
+
+
+  //=====================================================================
+  //  define
+  //=====================================================================
+  /**
+   *  Creates object for the Entity defined at given location
+   *  in the saved contents of the file.
+   *
+   *  @param  loc location of the definition.
+   */
+  void define(final Location loc)
+    {
+      //---------------------------------------------------------------
+      //  Get the complete line (with continuations).
+      //---------------------------------------------------------------
+      String text = contents.substring(loc.beginChar,loc.endChar);
+      StringBuffer sb = new StringBuffer();
+      int p = 0;
+      while (true)
+      {
+        int e = text.indexOf('\n',p);
+        String line = e<0? text.substring(p) : text.substring(p,e);
+        if (e>=0 && line.endsWith("\\"))
+          sb.append(line.substring(0,line.length()-1).trim()).append(" ");
+        else
+        {
+          sb.append(line.trim());
+          break;
+        }
+        p = e+1;
+      }
+      String line = sb.toString();
+
+      //---------------------------------------------------------------
+      //  Remove comment and split into name and definition.
+      //---------------------------------------------------------------
+      int cmt = line.indexOf('#');
+      if (cmt>=0) line = line.substring(0,cmt).trim();
+
+      int i = Util.indexOf(WHITE,line,0);
+      String unitname = line.substring(0,i).trim();
+      String unitdef = line.substring(i,line.length()).trim();
+
+      define(unitname,unitdef,loc);
+    }
+
+
+  //=====================================================================
+  //  define
+  //=====================================================================
+  /**
+   *  Creates object for the Entity 'nam' defined by 'df' at 'loc'
+   *  and enters it into tables of the current UnitRegistry.
+   *
+   *  @param  nam name from the definition line.
+   *  @param  df definition from the definition line.
+   *  @param  loc location of the definition line.
+   */
+  static void define(final String nam, final String df, final Location loc)
+    {
+      //  If line is a prefix definition:
+
+      if (Prefix.accept(nam,df,loc))
+        return;
+
+      //  If line is a table definition:
+
+      if (TabularFunction.accept(nam,df,loc))
+        return;
+
+      //  If line is a function definition:
+
+      if (ComputedFunction.accept(nam,df,loc))
+        return;
+
+      //  Otherwise line is a unit definition.
+
+      Unit.accept(nam,df,loc);
+    }
 }
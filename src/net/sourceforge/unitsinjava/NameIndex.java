@@ -0,0 +1,200 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.util.Collection;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class NameIndex
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Hash table from names to values that can be searched
+ *  for part of a CharSequence without making a String of it.
+ *  <br>
+ *  The table is filled when it is constructed and not modified
+ *  after that, so it may be used by any number of threads
+ *  at the same time. It uses open addressing with linear probing.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class NameIndex<V>
+{
+  //-------------------------------------------------------------------
+  //  Names and values. Empty slots have null name.
+  //  The number of slots is a power of 2.
+  //-------------------------------------------------------------------
+  private String[] names;
+  private Object[] values;
+  private int size = 0;
+
+
+  //=====================================================================
+  //  Construct empty index for about 'expected' names.
+  //=====================================================================
+  NameIndex(int expected)
+    {
+      int n = 16;
+      while (n<2*expected) n *= 2;
+      names = new String[n];
+      values = new Object[n];
+    }
+
+
+  //=====================================================================
+  //  Return index in which each of 'names' is its own value.
+  //=====================================================================
+  static NameIndex<String> of(final Collection<String> names)
+    {
+      NameIndex<String> index = new NameIndex<String>(names.size());
+      for (String name: names)
+        index.putIfAbsent(name,name);
+      return index;
+    }
+
+
+  //=====================================================================
+  //  Enter 'name' with 'value' unless 'name' is already there.
+  //  Return true if entered.
+  //=====================================================================
+  boolean putIfAbsent(final String name, final V value)
+    {
+      int i = slot(name,0,name.length());
+      if (names[i]!=null) return false;
+
+      names[i] = name;
+      values[i] = value;
+      size++;
+
+      if (2*size>names.length) rehash();
+      return true;
+    }
+
+
+  //=====================================================================
+  /** Returns value of a name.
+   *  @param  name the name.
+   *  @return value of the name, or null if the name is not in the index. */
+  //=====================================================================
+  @SuppressWarnings("unchecked")
+  public V get(final String name)
+    {
+      int mask = names.length-1;
+      int i = spread(name.hashCode()) & mask;
+      while (names[i]!=null && !names[i].equals(name))
+        i = (i+1) & mask;
+      return (V)values[i];
+    }
+
+
+  //=====================================================================
+  /** Returns value of the name that consists of characters 'start'
+   *  through 'end'-1 of 's'.
+   *  @param  s the string.
+   *  @param  start start of the name.
+   *  @param  end end of the name.
+   *  @return value of the name, or null if the name is not in the index. */
+  //=====================================================================
+  @SuppressWarnings("unchecked")
+  public V get(final CharSequence s, int start, int end)
+    { return (V)values[slot(s,start,end)]; }
+
+
+  //=====================================================================
+  /** Returns number of names in the index.
+   *  @return the number of names. */
+  //=====================================================================
+  public int size()
+    { return size; }
+
+
+  //=====================================================================
+  //  Return true if 'name' consists of characters 'start'
+  //  through 'end'-1 of 's'.
+  //=====================================================================
+  static boolean equals
+    ( final String name, final CharSequence s, int start, int end)
+    {
+      if (name.length()!=end-start) return false;
+      for (int i=start;i<end;i++)
+        if (name.charAt(i-start)!=s.charAt(i)) return false;
+      return true;
+    }
+
+
+  //=====================================================================
+  //  Return slot containing name that consists of characters 'start'
+  //  through 'end'-1 of 's', or the empty slot where it would be.
+  //  The hash code is that of String, so that 'get' for a String
+  //  can use its cached hash code.
+  //=====================================================================
+  private int slot(final CharSequence s, int start, int end)
+    {
+      int h = 0;
+      for (int i=start;i<end;i++)
+        h = 31*h + s.charAt(i);
+
+      int mask = names.length-1;
+      int i = spread(h) & mask;
+      while (names[i]!=null && !equals(names[i],s,start,end))
+        i = (i+1) & mask;
+      return i;
+    }
+
+
+  //=====================================================================
+  //  Spread high bits of hash code 'h' down.
+  //=====================================================================
+  private static int spread(int h)
+    { return h ^ (h>>>16); }
+
+
+  //=====================================================================
+  //  Double the number of slots.
+  //=====================================================================
+  private void rehash()
+    {
+      String[] oldNames = names;
+      Object[] oldValues = values;
+      names = new String[2*oldNames.length];
+      values = new Object[2*oldNames.length];
+      for (int k=0;k<oldNames.length;k++)
+      {
+        if (oldNames[k]==null) continue;
+        int i = slot(oldNames[k],0,oldNames[k].length());
+        names[i] = oldNames[k];
+        values[i] = oldValues[k];
+      }
+    }
+}
@@ -3,6 +3,11 @@
 //  This file was generated by Mouse 1.3 at 2010-11-02 16:19:27 GMT\nfrom
 //    grammar 'D:\Units\ units\grammar.peg'.
 //
+//  261018 Edited: rules start with saved() to support packrat mode
+//         of ParserBase.
+//         Added diagnosis() that repeats a failed parse
+//         with full error information.
+//
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
@@ -39,6 +44,19 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
       return failure();
     }
   
+  //-------------------------------------------------------------------
+  //  Repeat failed parse with full error information
+  //  and return the error message
+  //-------------------------------------------------------------------
+  protected String diagnosis()
+    {
+      initDiagnose();
+      sem.init();
+      begin("unitexpr");
+      unitexpr_0();
+      return current.errMsg();
+    }
+  
   //-------------------------------------------------------------------
   //  Get semantics
   //-------------------------------------------------------------------
@@ -55,7 +73,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean unitexpr()
     {
-      begin("unitexpr");
+      if (saved("unitexpr")) return reuse();
       if (unitexpr_0()) {sem.unitexpr(); return accept();} else sem.error();
       return reject();
     }
@@ -78,7 +96,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean expr()
     {
-      begin("expr");
+      if (saved("expr")) return reuse();
       if (expr_0()) {sem.expr(); return accept();}
       if (expr_1()) {sem.inverse(); return accept();}
       return reject();
@@ -126,7 +144,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean term()
     {
-      begin("term");
+      if (saved("term")) return reuse();
       if (!product()) return reject();
       while (term_0());
       sem.term();
@@ -152,7 +170,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean product()
     {
-      begin("product");
+      if (saved("product")) return reuse();
       if (!factor()) return reject();
       while (product_0());
       sem.product();
@@ -175,7 +193,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean factor()
     {
-      begin("factor");
+      if (saved("factor")) return reuse();
       if (!unary()) return reject();
       while (factor_0());
       sem.factor();
@@ -200,7 +218,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean unary()
     {
-      begin("unary");
+      if (saved("unary")) return reuse();
       unary_0();
       if (!primary()) return reject();
       sem.unary();
@@ -225,7 +243,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean primary()
     {
-      begin("primary");
+      if (saved("primary")) return reuse();
       if (numexpr()) {sem.makeNumUnit(); return accept();}
       if (primary_0()) {sem.pass2(); return accept();}
       if (unitname()) {sem.pass(); return accept();}
@@ -278,7 +296,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean numexpr()
     {
-      begin("numexpr");
+      if (saved("numexpr")) return reuse();
       if (!number()) return reject();
       while (numexpr_0());
       sem.numexpr();
@@ -301,7 +319,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean number()
     {
-      begin("number");
+      if (saved("number")) return reuse();
       if (!mantissa()) return reject();
       exponent();
       space();
@@ -314,7 +332,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean mantissa()
     {
-      begin("mantissa");
+      if (saved("mantissa")) return reuse();
       if (mantissa_0()) return accept();
       if (mantissa_1()) return accept();
       return reject();
@@ -358,7 +376,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean exponent()
     {
-      begin("exponent");
+      if (saved("exponent")) return reuse();
       if (!nextIn("Ee")) return reject();
       sign();
       if (!digits()) return reject();
@@ -370,7 +388,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean sign()
     {
-      begin("sign","sign");
+      if (saved("sign","sign")) return reuse();
       if (!nextIn("+-")) return reject();
       return accept();
     }
@@ -380,7 +398,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean digits()
     {
-      begin("digits");
+      if (saved("digits")) return reuse();
       if (!digit()) return reject();
       while (digit());
       return accept();
@@ -391,7 +409,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean digit()
     {
-      begin("digit");
+      if (saved("digit")) return reuse();
       if (!nextIn('0','9')) return reject();
       return accept();
     }
@@ -401,7 +419,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean word()
     {
-      begin("word");
+      if (saved("word")) return reuse();
       if (!aheadNotIn(".0123456789~")) return reject();
       if (!namechar()) return reject();
       while (namechar());
@@ -413,7 +431,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean namechar()
     {
-      begin("namechar","more name");
+      if (saved("namechar","more name")) return reuse();
       if (!aheadNotIn("	\n^ +-*/|()")) return reject();
       if (!next()) return reject();
       return accept();
@@ -424,7 +442,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean opttilde()
     {
-      begin("opttilde","~");
+      if (saved("opttilde","~")) return reuse();
       TILDE();
       return accept();
     }
@@ -434,7 +452,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean unitname()
     {
-      begin("unitname","unit name");
+      if (saved("unitname","unit name")) return reuse();
       if (!word()) return reject();
       space();
       if (sem.unitname()) return accept();
@@ -446,7 +464,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean bfunc()
     {
-      begin("bfunc","function name");
+      if (saved("bfunc","function name")) return reuse();
       if (!word()) return reject();
       space();
       if (sem.bfunc()) return accept();
@@ -458,7 +476,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean dfunc()
     {
-      begin("dfunc","function name");
+      if (saved("dfunc","function name")) return reuse();
       if (!word()) return reject();
       space();
       if (sem.ufunc()) return accept();
@@ -470,7 +488,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean BAR()
     {
-      begin("BAR","|");
+      if (saved("BAR","|")) return reuse();
       if (!next('|')) return reject();
       space();
       return accept();
@@ -481,7 +499,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean HAT()
     {
-      begin("HAT","^");
+      if (saved("HAT","^")) return reuse();
       if (!next('^')) return reject();
       space();
       return accept();
@@ -492,7 +510,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean TILDE()
     {
-      begin("TILDE","~");
+      if (saved("TILDE","~")) return reuse();
       if (!next('~')) return reject();
       space();
       return accept();
@@ -503,7 +521,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean LPAR()
     {
-      begin("LPAR","(");
+      if (saved("LPAR","(")) return reuse();
       if (!next('(')) return reject();
       space();
       return accept();
@@ -514,7 +532,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean MINUS()
     {
-      begin("MINUS","-");
+      if (saved("MINUS","-")) return reuse();
       if (!next('-')) return reject();
       space();
       return accept();
@@ -525,7 +543,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean PLUS()
     {
-      begin("PLUS","+");
+      if (saved("PLUS","+")) return reuse();
       if (!next('+')) return reject();
       space();
       return accept();
@@ -536,7 +554,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean RPAR()
     {
-      begin("RPAR",")");
+      if (saved("RPAR",")")) return reuse();
       if (!next(')')) return reject();
       space();
       return accept();
@@ -547,7 +565,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean SLASH()
     {
-      begin("SLASH","/");
+      if (saved("SLASH","/")) return reuse();
       if (!next('/')) return reject();
       space();
       return accept();
@@ -558,7 +576,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean STARSTAR()
     {
-      begin("STARSTAR","**");
+      if (saved("STARSTAR","**")) return reuse();
       if (!next("**")) return reject();
       space();
       return accept();
@@ -569,7 +587,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean STAR()
     {
-      begin("STAR","*");
+      if (saved("STAR","*")) return reuse();
       if (!next('*')) return reject();
       if (!aheadNot('*')) return reject();
       space();
@@ -581,7 +599,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean PER()
     {
-      begin("PER","'per'");
+      if (saved("PER","'per'")) return reuse();
       if (!next("per")) return reject();
       if (!aheadIn("	\n^ +-*/|()")) return reject();
       space();
@@ -593,7 +611,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean space()
     {
-      begin("space");
+      if (saved("space")) return reuse();
       while (nextIn(" 	"));
       sem.space();
       return accept();
@@ -604,7 +622,7 @@ public class Parser extends net.sourceforge.unitsinjava.ParserBase
   //=====================================================================
   boolean EOT()
     {
-      begin("EOT","end of input");
+      if (saved("EOT","end of input")) return reuse();
       if (!aheadNot()) return reject();
       return accept();
     }
@@ -27,12 +27,22 @@
 //    100429 Bug fix in errMerge(Phrase): assignment to errText replaced
 //           by clear + addAll (assignment produced alias resulting in
 //           explosion of errText in memo version).
+//    261018 Added release() for parsers that are reused.
+//           Added Phrase.start() and Phrase.end().
+//           Added packrat mode: setMemo(), saved(), reuse().
+//           Error information is kept only when diagnosing a failed
+//           parse; otherwise only the furthest failure is recorded.
+//           Removed printing from failure() and rejectBoolean().
+//           Strings are compared with the text without making
+//           substrings of it.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
 import net.sourceforge.unitsinjava.Source;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Vector;
 
 
@@ -67,6 +77,27 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   //-------------------------------------------------------------------
   Phrase current = null;
 
+  //-------------------------------------------------------------------
+  //  Packrat mode: results of rules, by position and rule number.
+  //  Rows are created as needed and kept for the next parse.
+  //  Rules are numbered in order of first use.
+  //-------------------------------------------------------------------
+  boolean memo = false;
+  Phrase[][] memoTable = new Phrase[0][];
+  final HashMap<String,Integer> ruleNumbers = new HashMap<String,Integer>();
+  Phrase reused = null;             // Result found by saved()
+
+  //-------------------------------------------------------------------
+  //  Error information. Phrases collect expected items and
+  //  their positions only if 'diagnose' is true: when a failed
+  //  parse is repeated to obtain the error message.
+  //  Otherwise, only the furthest position where something failed,
+  //  and the rule that failed there, are recorded.
+  //-------------------------------------------------------------------
+  boolean diagnose = false;
+  int failPos = -1;
+  String failDiag = null;
+
   //-------------------------------------------------------------------
   //  Constructor
   //-------------------------------------------------------------------
@@ -82,8 +113,62 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       pos = 0;
       endpos = source.end();
       current = new Phrase("","",0); // Dummy bottom of parse stack
+      failPos = -1;
+      failDiag = null;
     }
 
+  //-------------------------------------------------------------------
+  //  Release source and parse tree after parsing,
+  //  so that a reused parser does not keep them alive.
+  //-------------------------------------------------------------------
+  public void release()
+    {
+      clearMemo();
+      source = null;
+      current = null;
+      reused = null;
+      diagnose = false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Forget results saved in packrat mode
+  //-------------------------------------------------------------------
+  private void clearMemo()
+    {
+      if (source!=null && memo)
+        for (int i=0;i<=endpos && i<memoTable.length;i++)
+          if (memoTable[i]!=null) Arrays.fill(memoTable[i],null);
+    }
+
+  //-------------------------------------------------------------------
+  //  Prepare to repeat a failed parse with full error information.
+  //-------------------------------------------------------------------
+  protected void initDiagnose()
+    {
+      clearMemo();
+      diagnose = true;
+      init(source);
+    }
+
+  //-------------------------------------------------------------------
+  //  Return error message for a failed parse.
+  //  This version, for parsers that cannot repeat the parse,
+  //  uses the furthest failure.
+  //-------------------------------------------------------------------
+  protected String diagnosis()
+    {
+      if (failPos<0) return "";
+      return source.where(failPos) + ": expected " + failDiag;
+    }
+
+  //-------------------------------------------------------------------
+  //  Set packrat mode: if 'm' is true, the result of each rule
+  //  at each position is saved and reused when the rule is tried
+  //  again at that position.
+  //-------------------------------------------------------------------
+  public void setMemo(boolean m)
+    { memo = m; }
+
   //-------------------------------------------------------------------
   //  Implementation of Parser interface CurrentRule
   //-------------------------------------------------------------------
@@ -112,11 +197,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   //  Print final error message (if not caught otherwise).
   //-------------------------------------------------------------------
   protected boolean failure()
-    {
-      String message = current.errMsg();
-      System.out.println(message.replace("\n","\\n").replace("\t","\\t").replace("\r","\\r"));
-      return false;
-    }
+    { return false; }
 
   //=====================================================================
   //
@@ -140,6 +221,76 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       current = p;
     }
 
+  //-------------------------------------------------------------------
+  //  Look for saved result of rule at current position.
+  //  If found, return true; the rule is to return reuse().
+  //  Otherwise initialize processing of the rule and return false.
+  //-------------------------------------------------------------------
+  protected boolean saved(final String name)
+    { return saved(name,name); }
+
+  protected boolean saved(final String name,final String diag)
+    {
+      if (!memo)
+      {
+        begin(name,diag);
+        return false;
+      }
+
+      Integer n = ruleNumbers.get(name);
+      if (n==null)
+      {
+        n = ruleNumbers.size();
+        ruleNumbers.put(name,n);
+      }
+      int rule = n;
+
+      if (pos>=memoTable.length)
+        memoTable = Arrays.copyOf(memoTable,Math.max(endpos+1,2*memoTable.length));
+      Phrase[] row = memoTable[pos];
+      if (row!=null && rule<row.length && row[rule]!=null)
+      {
+        reused = row[rule];
+        return true;
+      }
+
+      begin(name,diag);
+      current.rule = rule;
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Reuse result found by saved()
+  //-------------------------------------------------------------------
+  protected boolean reuse()
+    {
+      Phrase p = reused;
+      reused = null;
+      if (p.success)
+      {
+        pos = p.end;                   // Advance to end of p
+        current.end = pos;             // Update end of parent
+        current.rhs.add(p);            // Attach p to rhs of parent
+      }
+      if (diagnose) current.errMerge(p); // Merge error info with parent
+      return p.success;
+    }
+
+  //-------------------------------------------------------------------
+  //  Save result of rule
+  //-------------------------------------------------------------------
+  private void save(final Phrase p)
+    {
+      Phrase[] row = memoTable[p.start];
+      if (row==null || p.rule>=row.length)
+      {
+        int size = Math.max(p.rule+1,ruleNumbers.size());
+        row = row==null? new Phrase[size] : Arrays.copyOf(row,size);
+        memoTable[p.start] = row;
+      }
+      row[p.rule] = p;
+    }
+
   //-------------------------------------------------------------------
   //  Accept Rule
   //-------------------------------------------------------------------
@@ -147,12 +298,13 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     {
       Phrase p = pop();                // Pop p from compile stack
       p.rhs = null;                    // Remove right-hand side of p
-      if (p.errPos==p.start)           // Upgrade error info of p
+      if (diagnose && p.errPos==p.start) // Upgrade error info of p
         p.errSet(p.diag,p.start);
       p.success = true;                // Indicate p successful
       current.end = pos;               // Update end of parent
       current.rhs.add(p);              // Attach p to rhs of parent
-      current.errMerge(p);             // Merge error info with parent
+      if (diagnose) current.errMerge(p); // Merge error info with parent
+      if (p.rule>=0) save(p);          // Save result in packrat mode
       return true;
     }
 
@@ -163,7 +315,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     {
       Phrase p = pop();                // Pop p from compile stack
       p.rhs = null;                    // Remove right-hand side of p
-      p.errClear();
+      p.errClear();                    // Remove error info from p
       p.success = true;                // Indicate p successful
       current.end = pos;               // Update end of parent
       current.rhs.add(p);              // Attach p to rhs of parent
@@ -179,7 +331,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       p.success = true;                // Indicate p successful
       current.end = pos;               // Update end of parent
       current.rhs.addAll(p.rhs);       // Add rhs of p to rhs of parent
-      current.errMerge(p);             // Merge error info with parent
+      if (diagnose) current.errMerge(p); // Merge error info with parent
       return true;
     }
 
@@ -219,11 +371,14 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       Phrase p = pop();                // Pop p from compile stack
       p.end = p.start;                 // Reset end of p
       p.rhs = null;                    // Remove right-hand side of p
-      if (p.errPos==p.start)           // Upgrade error info of p
+      if (diagnose && p.errPos==p.start) // Upgrade error info of p
         p.errSet(p.diag,p.start);
       p.success = false;               // Indicate p failed
-      current.errMerge(p);             // Merge error info with parent
+      if (diagnose) current.errMerge(p); // Merge error info with parent
       pos = p.start;                   // Backtrack to start of p
+      if (!diagnose && p.start==failPos) // Upgrade failure record
+        failDiag = p.diag;
+      if (p.rule>=0) save(p);          // Save result in packrat mode
       return false;
     }
 
@@ -235,11 +390,10 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       Phrase p = pop();                // Pop p from compile stack
       p.end = p.start;                 // Reset end of p
       p.rhs = null;                    // Remove right-hand side of p
-      System.out.println(p.diag + " " + source.where(p.start));
-      System.out.println(current.errTxt + " " + current.errPos);
-      p.errSet(p.diag,p.start);
+      if (diagnose) p.errSet(p.diag,p.start); // Register 'xxx expected'
+      else fail(p.diag,p.start);
       p.success = false;               // Indicate p failed
-      current.errMerge(p);             // Merge error info with parent
+      if (diagnose) current.errMerge(p); // Merge error info with parent
       pos = p.start;                   // Backtrack to start of p
       return false;
     }
@@ -253,7 +407,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       p.end = p.start;                 // Reset end of p
       p.rhs = null;                    // Remove right-hand side of p
       p.success = false;               // Indicate p failed
-      current.errMerge(p);             // Merge error info with parent
+      if (diagnose) current.errMerge(p); // Merge error info with parent
       pos = p.start;                   // Backtrack to start of p
       return false;
     }
@@ -265,9 +419,10 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     {
       Phrase p = pop();                // Pop p from compile stack
       p.rhs = null;                    // Remove right-hand side of p
-      p.errSet(p.diag,pos);            // Register 'xxx expected'
+      if (diagnose) p.errSet(p.diag,pos); // Register 'xxx expected'
+      else fail(p.diag,pos);
       p.success = false;               // Indicate p failed
-      current.errMerge(p);             // Merge error info with parent
+      if (diagnose) current.errMerge(p); // Merge error info with parent
       return false;
     }
 
@@ -280,9 +435,10 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       p.end = p.start;                 // Reset end of p
       p.rhs = null;                    // Remove right-hand side of p
       pos = p.start;                   // Backtrack to start of p
-      p.errSet(p.diag,pos);            // Register 'xxx not expected'
+      if (diagnose) p.errSet(p.diag,pos); // Register 'xxx not expected'
+      else fail(p.diag,pos);
       p.success = false;               // Indicate p failed
-      current.errMerge(p);             // Merge error info with parent
+      if (diagnose) current.errMerge(p); // Merge error info with parent
       return false;
     }
 
@@ -293,7 +449,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean next(char ch)
     {
       if (pos<endpos && source.at(pos)==ch) return consume(1);
-      else return fail("'" + ch + "'");
+      else return diagnose? fail("'" + ch + "'") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -302,7 +458,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean ahead(char ch)
     {
       if (pos<endpos && source.at(pos)==ch) return true;
-      else return fail("'" + ch + "'");
+      else return diagnose? fail("'" + ch + "'") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -310,7 +466,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadNot(char ch)
     {
-      if (pos<endpos && source.at(pos)==ch) return fail("not '" + ch + "'");
+      if (pos<endpos && source.at(pos)==ch) return diagnose? fail("not '" + ch + "'") : fail();
       else return true;
     }
 
@@ -321,8 +477,8 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean next(String s)
     {
       int lg = s.length();
-      if (pos+lg<=endpos && source.at(pos,pos+lg).equals(s)) return consume(lg);
-      else return fail("'" + s + "'");
+      if (pos+lg<=endpos && isAt(s)) return consume(lg);
+      else return diagnose? fail("'" + s + "'") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -331,8 +487,8 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean ahead(String s)
     {
       int lg = s.length();
-      if (pos+lg<=endpos && source.at(pos,pos+lg).equals(s)) return true;
-      else return fail("'" + s + "'");
+      if (pos+lg<=endpos && isAt(s)) return true;
+      else return diagnose? fail("'" + s + "'") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -341,7 +497,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean aheadNot(String s)
     {
       int lg = s.length();
-      if (pos+lg<=endpos && source.at(pos,pos+lg).equals(s)) return fail("not '" + s + "'");
+      if (pos+lg<=endpos && isAt(s)) return diagnose? fail("not '" + s + "'") : fail();
       else return true;
     }
 
@@ -352,7 +508,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean nextIn(String s)
     {
       if (pos<endpos && s.indexOf(source.at(pos))>=0) return consume(1);
-      else return fail("[" + s + "]");
+      else return diagnose? fail("[" + s + "]") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -361,7 +517,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean aheadIn(String s)
     {
       if (pos<endpos && s.indexOf(source.at(pos))>=0) return true;
-      else return fail("[" + s + "]");
+      else return diagnose? fail("[" + s + "]") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -369,7 +525,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadNotIn(String s)
     {
-      if (pos<endpos && s.indexOf(source.at(pos))>=0) return fail("not [" + s + "]");
+      if (pos<endpos && s.indexOf(source.at(pos))>=0) return diagnose? fail("not [" + s + "]") : fail();
       else return true;
     }
 
@@ -381,7 +537,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     {
       if (pos<endpos && source.at(pos)>=a && source.at(pos)<=z)
         return consume(1);
-      else return fail("[" + a + "-" + z + "]");
+      else return diagnose? fail("[" + a + "-" + z + "]") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -391,7 +547,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     {
       if (pos<endpos && source.at(pos)>=a && source.at(pos)<=z)
         return true;
-      else return fail("[" + a + "-" + z + "]");
+      else return diagnose? fail("[" + a + "-" + z + "]") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -400,7 +556,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean aheadNotIn(char a, char z)
     {
       if (pos<endpos && source.at(pos)>=a && source.at(pos)<=z)
-        return fail("not [" + a + "-" + z + "]");
+        return diagnose? fail("not [" + a + "-" + z + "]") : fail();
       else return true;
     }
 
@@ -411,7 +567,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean next()
     {
       if (pos<endpos) return consume(1);
-      else return fail("any character");
+      else return diagnose? fail("any character") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -420,7 +576,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   protected boolean ahead()
     {
       if (pos<endpos) return true;
-      else return fail("any character");
+      else return diagnose? fail("any character") : fail();
     }
 
   //-------------------------------------------------------------------
@@ -428,11 +584,21 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
   //-------------------------------------------------------------------
   protected boolean aheadNot()
     {
-      if (pos<endpos) return fail("end of text");
+      if (pos<endpos) return diagnose? fail("end of text") : fail();
       else return true;
     }
 
 
+  //-------------------------------------------------------------------
+  //  Is 's' at current position? (Without making a String of the text.)
+  //-------------------------------------------------------------------
+  private boolean isAt(final String s)
+    {
+      for (int i=0;i<s.length();i++)
+        if (source.at(pos+i)!=s.charAt(i)) return false;
+      return true;
+    }
+
   //-------------------------------------------------------------------
   //  Pop Phrase from compile stack
   //-------------------------------------------------------------------
@@ -458,7 +624,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     }
 
   //-------------------------------------------------------------------
-  //  Fail
+  //  Fail, registering 'msg expected'
   //-------------------------------------------------------------------
   private boolean fail(String msg)
     {
@@ -466,6 +632,36 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
       return false;
     }
 
+  //-------------------------------------------------------------------
+  //  Fail, recording the failure if it is the furthest one.
+  //  The failed item is described by the innermost enclosing rule
+  //  that has a description.
+  //-------------------------------------------------------------------
+  private boolean fail()
+    {
+      if (pos>failPos)
+      {
+        Phrase p = current;
+        while (p.diag.length()==0 && p.parent!=null)
+          p = p.parent;
+        failPos = pos;
+        failDiag = p.diag;
+      }
+      return false;
+    }
+
+  //-------------------------------------------------------------------
+  //  Record failure of 'diag' at 'where' if it is the furthest one.
+  //-------------------------------------------------------------------
+  private void fail(final String diag, int where)
+    {
+      if (where>failPos)
+      {
+        failPos = where;
+        failDiag = diag;
+      }
+    }
+
 
 
   //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
@@ -490,9 +686,10 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     Vector<Phrase> rhs = new Vector<Phrase>(10,10);
     Object value = null;
     Phrase parent = null;
+    int rule = -1;                     // Rule number in packrat mode
 
     int errPos = -1;
-    Vector<String> errTxt   = new Vector<String>();
+    Vector<String> errTxt   = diagnose? new Vector<String>() : null;
 
 
     //===================================================================
@@ -538,6 +735,15 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     public char charAt(int i)
       { return source.at(start+i); }
 
+    //-----------------------------------------------------------------
+    //  Get position of text in the source
+    //-----------------------------------------------------------------
+    public int start()
+      { return start; }
+
+    public int end()
+      { return end; }
+
     //-----------------------------------------------------------------
     //  Is text empty?
     //-----------------------------------------------------------------
@@ -555,6 +761,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     //-----------------------------------------------------------------
     public String errMsg()
       {
+        if (!diagnose) return diagnosis();
         if (errPos<0) return "";
         return source.where(errPos) + ": expected " + listErr();
       }
@@ -564,7 +771,7 @@ public class ParserBase implements net.sourceforge.unitsinjava.CurrentRule
     //-----------------------------------------------------------------
     public void errClear()
       {
-        errTxt.clear();
+        if (errTxt!=null) errTxt.clear();
         errPos = -1;
       }
 
@@ -21,6 +21,7 @@
 //  Change log
 //    090701 License changed by the author to Apache v.2.
 //    090717 Removed unused import of java.util.Vector.
+//    261018 Added start() and end().
 //
 //=========================================================================
 
@@ -55,6 +56,13 @@ public interface Phrase
   //-------------------------------------------------------------------
   char charAt(int i);
 
+  //-------------------------------------------------------------------
+  //  Get position of text in the source: start, and end (exclusive)
+  //-------------------------------------------------------------------
+  int start();
+
+  int end();
+
   //-------------------------------------------------------------------
   //  Is text empty?
   //-------------------------------------------------------------------
@@ -34,12 +34,18 @@
 //           Used generics for 'table'.
 //    091031 Moved definition of Ignore to Factor.
 //           Replaced 'addtolist' by 'isCompatibleWith'.
+//    261018 'table' is a view of the default UnitRegistry.
+//           'find' uses the view, which creates prefixes
+//           in a lazy UnitRegistry.
+//           'find' searches the PrefixTrie of the UnitRegistry
+//           instead of trying all substrings.
+//           Added 'find' for part of a CharSequence.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
-import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
 
 
@@ -55,9 +61,9 @@ import java.util.Vector;
  public class Prefix extends Factor
 {
   //-------------------------------------------------------------------
-  //  Table of Prefixes
+  //  Table of Prefixes in the default UnitRegistry (read-only)
   //-------------------------------------------------------------------
-  public static Hashtable<String,Prefix> table = null;
+  public static Map<String,Prefix> table = null;
 
 
   //=====================================================================
@@ -85,7 +91,9 @@ import java.util.Vector;
 
       // Is it redefinition?
 
-      if (table.containsKey(prefname))
+      Map<String,Prefix> prefixes = UnitRegistry.current().prefixes;
+
+      if (prefixes.containsKey(prefname))
       {
         Env.err.println
           ("Redefinition of prefix '" + prefname +
@@ -95,7 +103,7 @@ import java.util.Vector;
 
       // Install prefix in table.
 
-      table.put(prefname, new Prefix(prefname,loc,df));
+      prefixes.put(prefname, new Prefix(prefname,loc,df));
       return true;
     }
 
@@ -146,18 +154,36 @@ import java.util.Vector;
 
 
   //=====================================================================
-  //  Find the longest prefix of 'name' that is in Prefix table,
+  //  Find the longest prefix of 'name' that is in Prefix table
+  //  of the current UnitRegistry,
   //  and return that Prefix object. (The prefix may all of 'name'.)
   //  Return null if name does not have a known prefix.
   //=====================================================================
   public static Prefix find(final String name)
+    { return find(name,0,name.length()); }
+
+
+  //=====================================================================
+  //  Find the longest prefix of characters 'start' through 'end'-1
+  //  of 's' that is in Prefix table of the current UnitRegistry,
+  //  and return that Prefix object. (The prefix may all of them.)
+  //  Return null if there is no known prefix.
+  //  Prefixes with invalid definition are skipped in favour of
+  //  shorter ones, as they are not in the table.
+  //=====================================================================
+  static Prefix find(final CharSequence s, int start, int end)
     {
-      int nlg = name.length();
-      int plg;
-      for (plg=nlg;plg>0;plg--)
+      UnitRegistry reg = UnitRegistry.current();
+      Map<String,Prefix> prefixes = reg.prefixes();
+      PrefixTrie trie = reg.prefixTrie();
+      int plg = end;
+      while (plg>start)
       {
-        Prefix p = table.get(name.substring(0,plg));
+        String name = trie.longest(s,start,plg);
+        if (name==null) return null;
+        Prefix p = prefixes.get(name);
         if (p!=null) return p;
+        plg = start + name.length() - 1;
       }
       return null;
     }
@@ -0,0 +1,162 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.util.Collection;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class PrefixTrie
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Character trie over a set of names, used to find the longest name
+ *  that is a prefix of a given string.
+ *  <br>
+ *  The string is walked once, one character at a time,
+ *  and no objects are created during the search.
+ *  A PrefixTrie is not modified after it has been constructed,
+ *  so it may be used by any number of threads at the same time.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class PrefixTrie
+{
+  //-------------------------------------------------------------------
+  //  Root of the trie. It stands for the empty string.
+  //-------------------------------------------------------------------
+  private final Node root = new Node();
+
+
+  //=====================================================================
+  /** Constructs trie over given names.
+   *  @param  names the names. */
+  //=====================================================================
+  public PrefixTrie(final Collection<String> names)
+    {
+      for (String name: names)
+        add(name);
+    }
+
+
+  //=====================================================================
+  //  Add 'name' to the trie.
+  //=====================================================================
+  private void add(final String name)
+    {
+      Node node = root;
+      for (int i=0;i<name.length();i++)
+        node = node.child(name.charAt(i),true);
+      node.name = name;
+    }
+
+
+  //=====================================================================
+  /** Finds the longest name in the trie that is a prefix of
+   *  characters 'start' through 'end'-1 of 's'.
+   *  The name may be all of these characters.
+   *  @param  s the string.
+   *  @param  start start of the characters.
+   *  @param  end end of the characters.
+   *  @return the name, or null if no name is a prefix. */
+  //=====================================================================
+  public String longest(final CharSequence s, int start, int end)
+    {
+      String found = null;
+      Node node = root;
+      for (int i=start;i<end;i++)
+      {
+        node = node.child(s.charAt(i),false);
+        if (node==null) break;
+        if (node.name!=null) found = node.name;
+      }
+      return found;
+    }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Node
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Node of the trie. It stands for the string of characters
+   *  on the path from the root.
+   */
+  private static class Node
+  {
+    //-----------------------------------------------------------------
+    //  Characters leading to children, in ascending order,
+    //  and the children.
+    //-----------------------------------------------------------------
+    char[] chars = new char[0];
+    Node[] children = new Node[0];
+
+    //-----------------------------------------------------------------
+    //  The name if the string is a name in the trie, otherwise null.
+    //-----------------------------------------------------------------
+    String name;
+
+    //-----------------------------------------------------------------
+    //  Return child for character 'c'. If there is none,
+    //  create it if 'create' is true, otherwise return null.
+    //-----------------------------------------------------------------
+    Node child(char c, boolean create)
+      {
+        int lo = 0;
+        int hi = chars.length-1;
+        while (lo<=hi)
+        {
+          int mid = (lo+hi)>>>1;
+          if (chars[mid]<c) lo = mid+1;
+          else if (chars[mid]>c) hi = mid-1;
+          else return children[mid];
+        }
+        if (!create) return null;
+
+        int n = chars.length;
+        char[] cs = new char[n+1];
+        Node[] ns = new Node[n+1];
+        System.arraycopy(chars,0,cs,0,lo);
+        System.arraycopy(children,0,ns,0,lo);
+        System.arraycopy(chars,lo,cs,lo+1,n-lo);
+        System.arraycopy(children,lo,ns,lo+1,n-lo);
+        cs[lo] = c;
+        ns[lo] = new Node();
+        chars = cs;
+        children = ns;
+        return ns[lo];
+      }
+  }
+}
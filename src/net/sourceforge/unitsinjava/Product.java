@@ -34,6 +34,7 @@
 //    091025 Replaced 'Parser.Exception' by 'EvalError'.
 //    091031 Moved definition of Ignore to Factor.
 //    091101 'insertAlph' replaced by simple loop.
+//    261018 Added 'power' and 'append'. Removed 'root'.
 //
 //=========================================================================
 
@@ -193,28 +194,25 @@ import java.util.Vector;
 
 
   //=====================================================================
-  //  Return n-th root of the Product, or null if not n-th root.
-  //  (Originally 'subunitroot').
+  //  Return the Product raised to power n>=0.
   //=====================================================================
-  Product root(int n)
+  Product power(int n)
     {
       Product p = new Product();
+      p.factors.ensureCapacity(n*size());
       for (int i=0;i<size();i++)
-      {
-        Factor f = factor(i);
-        int j = 1;
-        i++;
-        while (i<size() && f==factor(i))
-        {
-          i++;
-          j++;
-        }
-        if (j%n!=0) return null; // Not n-th root.
+        p.append(factor(i),n);
+      return p;
+    }
 
-        for (int k=0;k<(j/n);k++)
-          p.add(f);
-      }
 
-      return p;
+  //=====================================================================
+  //  Append 'n' copies of Factor 'f' at the end of the Product.
+  //  'f' must not precede any of the factors already present.
+  //=====================================================================
+  void append(final Factor f, int n)
+    {
+      for (int i=0;i<n;i++)
+        factors.add(f);
     }
 } // end of Product
@@ -0,0 +1,308 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//           Primitive units are taken from UnitRegistry.
+//           Added 'dimension'.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class ReducedValue
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  A completely reduced Value in dense form.
+ *  <br>
+ *  The dimension is represented by an array of exponents indexed by
+ *  ordinal numbers of primitive units in a UnitRegistry.
+ *  Negative exponent means that the unit appears in the denominator.
+ *  <pre><code>   Value = factor * p[0]^exp[0] * p[1]^exp[1] * ... </code></pre>
+ *  Arithmetic on ReducedValues consists of loops over the array
+ *  and does not create any objects.
+ *  <p>
+ *  Only ReducedValues belonging to the same registry
+ *  may be combined.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class ReducedValue
+{
+  //-------------------------------------------------------------------
+  //  Components of a ReducedValue
+  //-------------------------------------------------------------------
+  public double factor;
+  final int[] exp;
+  final UnitRegistry registry;
+
+
+  //=====================================================================
+  /** Constructs a ReducedValue representing dimensionless number 1
+   *  in the current UnitRegistry. */
+  //=====================================================================
+  public ReducedValue()
+    { this(UnitRegistry.current()); }
+
+
+  //=====================================================================
+  /** Constructs a ReducedValue representing dimensionless number 1
+   *  in given UnitRegistry.
+   *  @param  reg the registry. */
+  //=====================================================================
+  public ReducedValue(final UnitRegistry reg)
+    {
+      factor = 1.0;
+      registry = reg;
+      exp = new int[reg.primitives.length];
+    }
+
+
+  //=====================================================================
+  /** Constructs copy of a given ReducedValue.
+   *  @param  r the ReducedValue to be copied. */
+  //=====================================================================
+  public ReducedValue(final ReducedValue r)
+    {
+      factor = r.factor;
+      registry = r.registry;
+      exp = r.exp.clone();
+    }
+
+
+  //=====================================================================
+  /** Constructs completely reduced form of a Value
+   *  in the registry of its units.
+   *  <br>
+   *  EvalError is thrown if the Value contains a unit or prefix
+   *  with invalid definition.
+   *  @param  v the Value. It is not modified. */
+  //=====================================================================
+  public ReducedValue(final Value v)
+    {
+      this(v.numerator.size()>0? v.numerator.factor(0).registry
+           : v.denominator.size()>0? v.denominator.factor(0).registry
+           : UnitRegistry.current());
+      factor = v.factor;
+      for (int i=0;i<v.numerator.size();i++)
+        mult(v.numerator.factor(i));
+      for (int i=0;i<v.denominator.size();i++)
+        div(v.denominator.factor(i));
+    }
+
+
+  //=====================================================================
+  /** Returns exponent of primitive unit with given ordinal number.
+   *  @param  ordinal ordinal number of the unit.
+   *  @return the exponent. */
+  //=====================================================================
+  public int exponent(int ordinal)
+    { return exp[ordinal]; }
+
+
+  //=====================================================================
+  /** Constructs the Value represented by this ReducedValue.
+   *  @return a new Value. */
+  //=====================================================================
+  public Value toValue()
+    {
+      Unit[] prim = registry.primitives;
+      Value v = new Value();
+      v.factor = factor;
+      for (int i=0;i<exp.length;i++)
+      {
+        if (exp[i]>0)
+          v.numerator.append(prim[i],exp[i]);
+        else if (exp[i]<0)
+          v.denominator.append(prim[i],-exp[i]);
+      }
+      return v;
+    }
+
+
+  //=====================================================================
+  /** Constructs printable string representing this ReducedValue.
+   *  @return this ReducedValue as printable string. */
+  //=====================================================================
+  public String asString()
+    { return toValue().asString(); }
+
+
+  //=====================================================================
+  /** Checks if this ReducedValue represents a number.
+   *  @return <code>true</code> if all exponents are 0. */
+  //=====================================================================
+  public boolean isNumber()
+    {
+      for (int i=0;i<exp.length;i++)
+        if (exp[i]!=0) return false;
+      return true;
+    }
+
+
+  //=====================================================================
+  /** Returns the Dimension of this ReducedValue.
+   *  @param  ignore primitive units to be disregarded.
+   *  @return the Dimension. */
+  //=====================================================================
+  public Dimension dimension(Factor.Ignore ignore)
+    { return Dimension.of(this,ignore); }
+
+
+  //=====================================================================
+  /** Checks if this ReducedValue is compatible with another one.
+   *  @param  r ReducedValue to be checked against.
+   *  @param  ignore primitive units to be disregarded.
+   *  @return <code>true</code> if the ReducedValues are compatible. */
+  //=====================================================================
+  public boolean isCompatibleWith(final ReducedValue r, Factor.Ignore ignore)
+    {
+      if (ignore==Factor.Ignore.PRIMITIVE) return true;
+      Unit[] prim = registry.primitives;
+      for (int i=0;i<exp.length;i++)
+        if (exp[i]!=r.exp[i] && !prim[i].ignoredIf(ignore)) return false;
+      return true;
+    }
+
+
+  //=====================================================================
+  /** Multiplies this ReducedValue by a given one.
+   *  @param  r ReducedValue to multiply by. */
+  //=====================================================================
+  public void mult(final ReducedValue r)
+    {
+      factor *= r.factor;
+      for (int i=0;i<exp.length;i++)
+        exp[i] += r.exp[i];
+    }
+
+
+  //=====================================================================
+  /** Divides this ReducedValue by a given one.
+   *  @param  r ReducedValue to divide by. */
+  //=====================================================================
+  public void div(final ReducedValue r)
+    {
+      if (r.factor==0)
+        throw new EvalError("Division of " + asString()
+                          + " by zero (" + r.asString() + ").");
+      factor /= r.factor;
+      for (int i=0;i<exp.length;i++)
+        exp[i] -= r.exp[i];
+    }
+
+
+  //=====================================================================
+  /** Multiplies this ReducedValue by a unit or prefix.
+   *  @param  f the unit or prefix. */
+  //=====================================================================
+  void mult(final Factor f)
+    {
+      if (f.isPrimitive)
+        exp[f.ordinal]++;
+      else
+        mult(f.reduced());
+    }
+
+
+  //=====================================================================
+  /** Divides this ReducedValue by a unit or prefix.
+   *  @param  f the unit or prefix. */
+  //=====================================================================
+  void div(final Factor f)
+    {
+      if (f.isPrimitive)
+        exp[f.ordinal]--;
+      else
+        div(f.reduced());
+    }
+
+
+  //=====================================================================
+  /** Inverts this ReducedValue. */
+  //=====================================================================
+  public void invert()
+    {
+      if (factor==0)
+        throw new EvalError("Division by zero (" + asString() + ").");
+      factor = 1.0/factor;
+      for (int i=0;i<exp.length;i++)
+        exp[i] = -exp[i];
+    }
+
+
+  //=====================================================================
+  /** Raises this ReducedValue to integer power n>=0.
+   *  @param  n the exponent. */
+  //=====================================================================
+  public void power(int n)
+    {
+      if (n<0)
+        throw new Error("Program error: exponent " + n + ".");
+      double fac = 1.0;
+      for (int i=0;i<n;i++)
+        fac *= factor;
+      factor = fac;
+      for (int i=0;i<exp.length;i++)
+        exp[i] *= n;
+    }
+
+
+  //=====================================================================
+  /** Computes the n-th root of this ReducedValue for an integer n.
+   *  The integer n must not be 0.
+   *  If n is even, this ReducedValue must be non-negative.
+   *  @param  n the exponent. */
+  //=====================================================================
+  public void root(int n)
+    {
+      if (n==0 || (n%2==0 && factor<0))
+        throw new EvalError("Illegal n-th root of " + asString()
+                          +  ", n=" + n + ".");
+
+      for (int i=0;i<exp.length;i++)
+        if (exp[i]%n!=0)
+        {
+          String nth = n==2? "square" : (n==3? "cube" : n + "-th");
+          throw new EvalError(asString() + " is not a " + nth + " root.");
+        }
+
+      for (int i=0;i<exp.length;i++)
+        exp[i] /= n;
+
+      // Math.pow does not work for negative base and non-integer exponent,
+      // so negative 'factor' must be treated separately.
+
+      if (factor>=0)
+        factor = Math.pow(factor,1.0/(double)n);
+      else
+        factor = -Math.pow(-factor,1.0/(double)n);
+    }
+}
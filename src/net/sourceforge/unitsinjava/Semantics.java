@@ -28,6 +28,11 @@
 //  Change log
 //
 //    091024 Created for Version 1.87.J01.
+//    261018 Build CompiledExpression tree instead of computing Value.
+//           Look up names in UnitRegistry.
+//           Added 'release'.
+//           'unitname' looks up the name in the source text
+//           without making a String of it.
 //
 //=========================================================================
 
@@ -41,13 +46,45 @@ package net.sourceforge.unitsinjava;
 {
   //=====================================================================
   //
-  //  Parameter and result
+  //  Parameters and result
   //
   //=====================================================================
 
-  String parm = null;
-  Value parmValue;
-  Value result;
+  static final String[] NOPARMS = {};
+
+  String[] parms = NOPARMS;
+  UnitRegistry registry;
+  String text;
+  CompiledExpression.Node result;
+
+  //-------------------------------------------------------------------
+  //  Forget parameters and result after parsing,
+  //  so that a reused Semantics does not keep them alive.
+  //-------------------------------------------------------------------
+  void release()
+    {
+      parms = NOPARMS;
+      registry = null;
+      text = null;
+      result = null;
+    }
+
+  //-------------------------------------------------------------------
+  //  Return index of parameter named 'word', or -1 if none.
+  //-------------------------------------------------------------------
+  int parmIndex(final String word)
+    { return parmIndex(word,0,word.length()); }
+
+  //-------------------------------------------------------------------
+  //  Return index of parameter named by characters 'start'
+  //  through 'end'-1 of 's', or -1 if none.
+  //-------------------------------------------------------------------
+  int parmIndex(final CharSequence s, int start, int end)
+    {
+      for (int i=0;i<parms.length;i++)
+        if (NameIndex.equals(parms[i],s,start,end)) return i;
+      return -1;
+    }
 
   //=====================================================================
   //
@@ -57,7 +94,7 @@ package net.sourceforge.unitsinjava;
   public static class SV
   {
     double   number;
-    Value    value;
+    CompiledExpression.Node node;
     Function func;
   }
 
@@ -88,9 +125,9 @@ package net.sourceforge.unitsinjava;
   void unitexpr()
     {
       if (rhsSize()==3)
-        result = rhSem(1).value;
+        result = rhSem(1).node;
       else
-        result = new Value();
+        result = new CompiledExpression.Const(new Value());
     }
 
   //-------------------------------------------------------------------
@@ -105,15 +142,21 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   void expr()
     {
-      Value v = rhSem(0).value;
+      if (rhsSize()==1)
+      {
+        lhSem().node = rhSem(0).node;
+        return;
+      }
+      int n = (rhsSize()+1)/2;
+      CompiledExpression.Node[] terms = new CompiledExpression.Node[n];
+      boolean[] minus = new boolean[n];
+      terms[0] = rhSem(0).node;
       for (int i=2;i<rhsSize();i+=2)
       {
-        Value v1 = rhSem(i).value;
-        if (rhs(i-1).isA("MINUS"))
-          v1.factor *= -1;
-        v.add(v1);
+        terms[i/2] = rhSem(i).node;
+        minus[i/2] = rhs(i-1).isA("MINUS");
       }
-      lhSem().value = v;
+      lhSem().node = new CompiledExpression.Sum(terms,minus);
     }
 
   //-------------------------------------------------------------------
@@ -121,11 +164,7 @@ package net.sourceforge.unitsinjava;
   //           0      1
   //-------------------------------------------------------------------
   void inverse()
-    {
-      Value v = rhSem(1).value;
-      v.invert();
-      lhSem().value = v;
-    }
+    { lhSem().node = new CompiledExpression.Inverse(rhSem(1).node); }
 
   //-------------------------------------------------------------------
   //  term = product ((STAR / SLASH / PER) product)*
@@ -133,15 +172,21 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   void term()
     {
-      Value v = rhSem(0).value;
+      if (rhsSize()==1)
+      {
+        lhSem().node = rhSem(0).node;
+        return;
+      }
+      int n = (rhsSize()+1)/2;
+      CompiledExpression.Node[] ops = new CompiledExpression.Node[n];
+      boolean[] divide = new boolean[n];
+      ops[0] = rhSem(0).node;
       for (int i=2;i<rhsSize();i+=2)
       {
-        if (rhs(i-1).isA("STAR"))
-          v.mult(rhSem(i).value);
-        else
-          v.div(rhSem(i).value);
+        ops[i/2] = rhSem(i).node;
+        divide[i/2] = !rhs(i-1).isA("STAR");
       }
-      lhSem().value = v;
+      lhSem().node = new CompiledExpression.Term(ops,divide);
     }
 
   //-------------------------------------------------------------------
@@ -150,10 +195,15 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   void product()
     {
-      Value v = rhSem(0).value;
-      for (int i=1;i<rhsSize();i++)
-        v.mult(rhSem(i).value);
-      lhSem().value = v;
+      if (rhsSize()==1)
+      {
+        lhSem().node = rhSem(0).node;
+        return;
+      }
+      CompiledExpression.Node[] ops = new CompiledExpression.Node[rhsSize()];
+      for (int i=0;i<rhsSize();i++)
+        ops[i] = rhSem(i).node;
+      lhSem().node = new CompiledExpression.Term(ops,new boolean[rhsSize()]);
     }
 
   //-------------------------------------------------------------------
@@ -162,10 +212,11 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   void factor()
     {
+      CompiledExpression.Node n = rhSem(rhsSize()-1).node;
       for (int i=rhsSize()-3;i>=0;i-=2)
-        rhSem(i).value.power(rhSem(i+2).value);
+        n = new CompiledExpression.Power(rhSem(i).node,n);
 
-      lhSem().value = rhSem(0).value;
+      lhSem().node = n;
     }
 
   //-------------------------------------------------------------------
@@ -174,10 +225,10 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   void unary()
     {
-      Value v = rhSem(rhsSize()-1).value;
+      CompiledExpression.Node n = rhSem(rhsSize()-1).node;
       if (rhs(0).isA("MINUS"))
-        v.factor *= -1;
-      lhSem().value = v;
+        n = new CompiledExpression.Negate(n);
+      lhSem().node = n;
     }
 
   //-------------------------------------------------------------------
@@ -185,25 +236,21 @@ package net.sourceforge.unitsinjava;
   //               0
   //-------------------------------------------------------------------
   void makeNumUnit()
-    {
-      Value v = new Value();
-      v.factor = rhSem(0).number;
-      lhSem().value = v;
-    }
+    { lhSem().node = new CompiledExpression.Const(rhSem(0).number); }
 
   //-------------------------------------------------------------------
   //  primary  = LPAR expr RPAR
   //               0    1    2
   //-------------------------------------------------------------------
   void pass2()
-    { lhSem().value = rhSem(1).value; }
+    { lhSem().node = rhSem(1).node; }
 
   //-------------------------------------------------------------------
   //  primary = unitname
   //               0
   //-------------------------------------------------------------------
   void pass()
-    { lhSem().value = rhSem(0).value; }
+    { lhSem().node = rhSem(0).node; }
 
   //-------------------------------------------------------------------
   //  primary = bfunc LPAR expr RPAR
@@ -211,8 +258,8 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   void evalBfunc()
     {
-      lhSem().value = rhSem(2).value;
-      rhSem(0).func.applyTo(lhSem().value);
+      lhSem().node = new CompiledExpression.Apply
+                       (rhSem(0).func,false,rhSem(2).node);
     }
 
   //-------------------------------------------------------------------
@@ -221,11 +268,8 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   void evalUfunc()
     {
-      lhSem().value = rhSem(3).value;
-      if (rhs(0).isEmpty())
-        rhSem(1).func.applyTo(lhSem().value);
-      else
-        rhSem(1).func.applyInverseTo(lhSem().value);
+      lhSem().node = new CompiledExpression.Apply
+                       (rhSem(1).func,!rhs(0).isEmpty(),rhSem(3).node);
     }
 
   //-------------------------------------------------------------------
@@ -257,29 +301,32 @@ package net.sourceforge.unitsinjava;
   //-------------------------------------------------------------------
   boolean unitname()
     {
-      String word = rhs(0).text();
-      if (word.equals("per")) return false;
+      // The word is characters 'start' through 'end'-1 of 'text'.
+      int start = rhs(0).start();
+      int end = rhs(0).end();
+      if (NameIndex.equals("per",text,start,end)) return false;
 
-      if (BuiltInFunction.table.containsKey(word)) return false;
+      if (registry.builtInNames().get(text,start,end)!=null) return false;
 
-      if (word.equals(parm))
+      int p = parmIndex(text,start,end);
+      if (p>=0)
       {
-        lhSem().value = new Value(parmValue);
+        lhSem().node = new CompiledExpression.Param(p);
         return true;
       }
 
-      if (DefinedFunction.table.containsKey(word)) return false;
+      if (registry.functionNames().get(text,start,end)!=null) return false;
 
       // Do exponent handling like m3
-      int exp = 2 + "23456789".indexOf(word.charAt(word.length()-1));
+      int exp = 2 + "23456789".indexOf(text.charAt(end-1));
       if (exp>1)
-        word = word.substring(0,word.length()-1);
+        end--;
 
-      Value v = Value.fromName(word);
+      Value v = Value.fromName(text,start,end);
 
       if (exp>1) v.power(exp);
 
-      lhSem().value = v;
+      lhSem().node = new CompiledExpression.Const(v);
 
       return true;
     }
@@ -292,7 +339,7 @@ package net.sourceforge.unitsinjava;
     {
       String word = rhs(0).text();
       if (word.equals("per")) return false;
-      Function func = BuiltInFunction.table.get(word);
+      Function func = registry.builtIns.get(word);
       if (func==null) return false;
       lhSem().func = func;
       return true;
@@ -306,8 +353,8 @@ package net.sourceforge.unitsinjava;
     {
       String word = rhs(0).text();
       if (word.equals("per")) return false;
-      if (word.equals(parm)) return false;
-      Function func = DefinedFunction.table.get(word);
+      if (parmIndex(word)>=0) return false;
+      Function func = registry.definedFunctions().get(word);
       if (func==null) return false;
       lhSem().func = func;
       return true;
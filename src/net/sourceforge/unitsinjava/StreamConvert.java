@@ -0,0 +1,1008 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class StreamConvert
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Headless conversion of columns in a CSV or JSON-lines stream.
+ *  <p>
+ *  Invocation:
+ *  <pre>
+ *   java net.sourceforge.unitsinjava.StreamConvert [options] [input]
+ *  </pre>
+ *  Options:
+ *  <ul>
+ *  <li><code>-c column:from:to</code> convert values in 'column'
+ *      from unit 'from' to unit 'to'. May be repeated.
+ *      The units may be unit expressions or nonlinear units,
+ *      for example <code>-c temp:tempF:tempC</code>.
+ *  <li><code>-j</code> the input is JSON lines: one object per line.
+ *      Otherwise it is CSV with a header line naming the columns.
+ *  <li><code>-d char</code> field delimiter for CSV; default comma.
+ *  <li><code>-o file</code> write output to 'file'; default standard output.
+ *  <li><code>-e charset</code> character encoding; default UTF-8.
+ *  <li><code>-f file</code> units definition file. May be repeated;
+ *      an empty name stands for the default file.
+ *  <li><code>-l locale</code> locale of unit definitions.
+ *  <li><code>-s</code> strict conversion: no reciprocal conversions.
+ *  <li><code>-S file</code> load tables from snapshot 'file',
+ *      or write it if missing or out of date (see UnitSnapshot).
+ *  </ul>
+ *  The input is a file, or standard input if omitted or given as '-'.
+ *  <p>
+ *  Records are single lines. In CSV, fields may be quoted,
+ *  but may not contain line breaks. In JSON lines, the converted
+ *  columns are members of the top-level object with numeric value.
+ *  All other text is copied unchanged. Values that cannot
+ *  be converted are left unchanged and reported on standard error.
+ *  So are JSON lines that are not well-formed objects;
+ *  conversion continues with the next line.
+ *  <p>
+ *  The stream is processed by three threads connected by bounded queues:
+ *  one reads and splits lines, one converts batches of lines,
+ *  and one encodes and writes the result. Memory use does not
+ *  depend on the size of the input.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class StreamConvert
+{
+  //-------------------------------------------------------------------
+  //  Sizes: lines per batch, batches or chunks per queue,
+  //  bytes or characters per buffer.
+  //-------------------------------------------------------------------
+  static final int BATCH = 1024;
+  static final int QUEUE = 8;
+  static final int BUFSIZE = 65536;
+
+  //-------------------------------------------------------------------
+  //  Maximum number of conversion errors reported individually.
+  //-------------------------------------------------------------------
+  static final int MAXREPORTED = 10;
+
+  //-------------------------------------------------------------------
+  //  End-of-stream markers, compared by identity.
+  //-------------------------------------------------------------------
+  private static final String[] EOF = new String[0];
+  private static final String EOS = new String("");
+
+  //-------------------------------------------------------------------
+  //  Input, output, and format.
+  //-------------------------------------------------------------------
+  private final ReadableByteChannel in;
+  private final WritableByteChannel out;
+  private final Charset charset;
+  private final boolean json;
+  private final char delimiter;
+
+  //-------------------------------------------------------------------
+  //  Columns to convert. For CSV, sorted by field number
+  //  after the header has been read.
+  //-------------------------------------------------------------------
+  private Column[] columns;
+
+  //-------------------------------------------------------------------
+  //  Queues between the stages.
+  //-------------------------------------------------------------------
+  private final ArrayBlockingQueue<String[]> lines
+    = new ArrayBlockingQueue<String[]>(QUEUE);
+  private final ArrayBlockingQueue<String> chunks
+    = new ArrayBlockingQueue<String>(QUEUE);
+
+  //-------------------------------------------------------------------
+  //  First failure in any stage. Other stages stop their work,
+  //  but keep passing end-of-stream markers.
+  //-------------------------------------------------------------------
+  private volatile Throwable failure = null;
+
+  //-------------------------------------------------------------------
+  //  Statistics, maintained by the conversion stage.
+  //-------------------------------------------------------------------
+  private long lineNo = 0;
+  private long errors = 0;
+
+
+  //=====================================================================
+  //  Construct converter of stream 'i' into 'o'.
+  //=====================================================================
+  StreamConvert
+    ( final ReadableByteChannel i, final WritableByteChannel o,
+      final Charset cs, boolean j, char d, final Column[] cols)
+    {
+      in = i;
+      out = o;
+      charset = cs;
+      json = j;
+      delimiter = d;
+      columns = cols;
+    }
+
+
+  //=====================================================================
+  //  main
+  //=====================================================================
+  /**
+   *  Command-line entry point.
+   *  Exit status is 0 on success, 1 if some values or lines could not
+   *  be converted, and 2 on any other error.
+   *
+   *  @param  argv command arguments.
+   */
+  public static void main(String[] argv)
+    { System.exit(run(argv)); }
+
+
+  //=====================================================================
+  //  run
+  //=====================================================================
+  /**
+   *  Performs the conversion specified by command arguments.
+   *
+   *  @param  argv command arguments.
+   *  @return exit status as described for <code>main</code>.
+   */
+  public static int run(String[] argv)
+    {
+      CommandArgs cmd = new CommandArgs(argv,"js","cdeflSo",0,1);
+      if (cmd.nErrors()>0 || !cmd.opt('c'))
+      {
+        System.err.println
+          ("Usage: StreamConvert -c column:from:to [-c ...] [-j] [-d char]\n"
+           + "         [-o file] [-e charset] [-f file] [-l locale] [-s]\n"
+           + "         [-S snapshot] [input]");
+        return 2;
+      }
+
+      //---------------------------------------------------------------
+      //  Set up environment. Messages go to standard error,
+      //  as standard output may receive the converted data.
+      //---------------------------------------------------------------
+      Env.useFileSystem();
+
+      Env.filenames = new Vector<String>();
+      if (cmd.opt('f'))
+        Env.filenames.addAll(cmd.optArgs('f'));
+      else
+        Env.filenames.add("");
+
+      Env.locale = cmd.opt('l')? cmd.optArg('l') : Env.DEFAULTLOCALE;
+      Env.strict = cmd.opt('s');
+      Env.snapshot = cmd.optArg('S');
+      Env.lazy = true;
+      Env.quiet = true;
+
+      if (!Tables.build()) return 2;
+
+      //---------------------------------------------------------------
+      //  Resolve the column specifications.
+      //---------------------------------------------------------------
+      Vector<String> specs = cmd.optArgs('c');
+      Column[] cols = new Column[specs.size()];
+      try
+      {
+        for (int i=0;i<cols.length;i++)
+        {
+          cols[i] = Column.parse(specs.elementAt(i));
+          for (int k=0;k<i;k++)
+            if (cols[k].name.equals(cols[i].name))
+              throw new EvalError("Column '" + cols[i].name + "' specified twice.");
+        }
+      }
+      catch (EvalError e)
+      {
+        System.err.println(Env.PROGNAME + ": " + e.getMessage());
+        return 2;
+      }
+
+      char delim = ',';
+      if (cmd.opt('d'))
+      {
+        String d = cmd.optArg('d');
+        if (d.length()!=1)
+        {
+          System.err.println(Env.PROGNAME + ": delimiter must be one character.");
+          return 2;
+        }
+        delim = d.charAt(0);
+      }
+
+      //---------------------------------------------------------------
+      //  Open the streams and run.
+      //---------------------------------------------------------------
+      ReadableByteChannel input = null;
+      WritableByteChannel output = null;
+      try
+      {
+        Charset cs = Charset.forName(cmd.opt('e')? cmd.optArg('e') : "UTF-8");
+
+        String name = cmd.nArgs()==0? "-" : cmd.arg(0);
+        input = name.equals("-")?
+                  Channels.newChannel(System.in) :
+                  new FileInputStream(name).getChannel();
+
+        output = cmd.opt('o')?
+                   new FileOutputStream(cmd.optArg('o')).getChannel() :
+                   Channels.newChannel(System.out);
+
+        StreamConvert sc
+          = new StreamConvert(input,output,cs,cmd.opt('j'),delim,cols);
+        sc.process();
+
+        if (sc.errors>MAXREPORTED)
+          System.err.println(sc.errors + " values or lines could not be converted.");
+        return sc.errors>0? 1 : 0;
+      }
+      catch (EvalError e)
+      {
+        System.err.println(Env.PROGNAME + ": " + e.getMessage());
+        return 2;
+      }
+      catch (Exception e)
+      {
+        System.err.println(Env.PROGNAME + ": " + e.getMessage());
+        return 2;
+      }
+      finally
+      {
+        try
+        {
+          if (input!=null) input.close();
+          if (output!=null && cmd.opt('o')) output.close();
+        }
+        catch (IOException e)
+        { System.err.println(Env.PROGNAME + ": " + e.getMessage()); }
+      }
+    }
+
+
+  //=====================================================================
+  //  process
+  //=====================================================================
+  /**
+   *  Runs the three stages until the input is exhausted.
+   *  The writing stage runs in the calling thread.
+   *  Throws the first exception raised by any stage.
+   */
+  void process()
+    throws Exception
+    {
+      Thread reader = new Thread("StreamConvert reader")
+        {
+          public void run()
+            { read(); }
+        };
+      Thread converter = new Thread("StreamConvert converter")
+        {
+          public void run()
+            { convert(); }
+        };
+
+      reader.start();
+      converter.start();
+      write();
+      converter.join();
+      reader.join();
+
+      if (failure instanceof Exception) throw (Exception)failure;
+      if (failure instanceof Error) throw (Error)failure;
+    }
+
+
+  //=====================================================================
+  //  Record failure 't' unless there is an earlier one.
+  //=====================================================================
+  private synchronized void fail(final Throwable t)
+    {
+      if (failure==null) failure = t;
+    }
+
+
+  //=====================================================================
+  //  Stage 1: read input, decode, and split into batches of lines.
+  //=====================================================================
+  private void read()
+    {
+      ByteBuffer bytes = ByteBuffer.allocate(BUFSIZE);
+      CharBuffer chars = CharBuffer.allocate(BUFSIZE);
+      CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      LineSplitter splitter = new LineSplitter();
+
+      try
+      {
+        boolean eof = false;
+        while (!eof && failure==null)
+        {
+          eof = in.read(bytes)<0;
+          bytes.flip();
+          CoderResult r;
+          do
+          {
+            r = decoder.decode(bytes,chars,eof);
+            splitter.split(chars);
+          }
+          while (r.isOverflow());
+          bytes.compact();
+        }
+
+        while (decoder.flush(chars).isOverflow())
+          splitter.split(chars);
+        splitter.split(chars);
+        splitter.finish();
+      }
+      catch (Throwable t)
+      { fail(t); }
+
+      putLines(EOF);
+    }
+
+
+  //-------------------------------------------------------------------
+  //  Splitter of decoded text into lines, collected into batches.
+  //-------------------------------------------------------------------
+  private class LineSplitter
+  {
+    private final StringBuilder partial = new StringBuilder();
+    private String[] batch = new String[BATCH];
+    private int n = 0;
+
+    //  Consume all characters in 'cb' and clear it.
+    void split(final CharBuffer cb)
+      {
+        cb.flip();
+        char[] a = cb.array();
+        int start = cb.arrayOffset() + cb.position();
+        int end = cb.arrayOffset() + cb.limit();
+        for (int i=start;i<end;i++)
+        {
+          if (a[i]=='\n')
+          {
+            partial.append(a,start,i-start);
+            line();
+            start = i+1;
+          }
+        }
+        partial.append(a,start,end-start);
+        cb.clear();
+      }
+
+    //  Pass the last line and the incomplete batch.
+    void finish()
+      {
+        if (partial.length()>0) line();
+        if (n>0)
+        {
+          String[] last = new String[n];
+          System.arraycopy(batch,0,last,0,n);
+          putLines(last);
+        }
+      }
+
+    //  Add completed line to the batch.
+    private void line()
+      {
+        int len = partial.length();
+        if (len>0 && partial.charAt(len-1)=='\r') len--;
+        batch[n++] = partial.substring(0,len);
+        partial.setLength(0);
+        if (n==BATCH)
+        {
+          putLines(batch);
+          batch = new String[BATCH];
+          n = 0;
+        }
+      }
+  }
+
+
+  //=====================================================================
+  //  Stage 2: convert batches of lines into chunks of output text.
+  //=====================================================================
+  private void convert()
+    {
+      Batch b = new Batch();
+      for (;;)
+      {
+        String[] batch = takeLines();
+        if (batch==EOF) break;
+        if (failure!=null) continue;
+        try
+        { putChunk(b.convert(batch)); }
+        catch (Throwable t)
+        { fail(t); }
+      }
+      putChunk(EOS);
+    }
+
+
+  //=====================================================================
+  //  Stage 3: encode chunks of text and write them.
+  //=====================================================================
+  private void write()
+    {
+      ByteBuffer bytes = ByteBuffer.allocate(BUFSIZE);
+      CharsetEncoder encoder = charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+      try
+      {
+        for (;;)
+        {
+          String chunk = takeChunk();
+          if (chunk==EOS) break;
+          if (failure!=null) continue;
+          CharBuffer cb = CharBuffer.wrap(chunk);
+          while (encoder.encode(cb,bytes,false).isOverflow())
+            drain(bytes);
+        }
+
+        if (failure==null)
+        {
+          while (encoder.encode(CharBuffer.allocate(0),bytes,true).isOverflow())
+            drain(bytes);
+          while (encoder.flush(bytes).isOverflow())
+            drain(bytes);
+          drain(bytes);
+        }
+      }
+      catch (Throwable t)
+      {
+        fail(t);
+        while (takeChunk()!=EOS);
+      }
+    }
+
+
+  //=====================================================================
+  //  Write contents of 'bytes' and clear it.
+  //=====================================================================
+  private void drain(final ByteBuffer bytes)
+    throws IOException
+    {
+      bytes.flip();
+      while (bytes.hasRemaining())
+        out.write(bytes);
+      bytes.clear();
+    }
+
+
+  //=====================================================================
+  //  Queue operations. Interruption is a failure of the stage.
+  //=====================================================================
+  private void putLines(final String[] batch)
+    {
+      try
+      { lines.put(batch); }
+      catch (InterruptedException e)
+      { throw new Error("Program error: interrupted.",e); }
+    }
+
+  private String[] takeLines()
+    {
+      try
+      { return lines.take(); }
+      catch (InterruptedException e)
+      { throw new Error("Program error: interrupted.",e); }
+    }
+
+  private void putChunk(final String chunk)
+    {
+      try
+      { chunks.put(chunk); }
+      catch (InterruptedException e)
+      { throw new Error("Program error: interrupted.",e); }
+    }
+
+  private String takeChunk()
+    {
+      try
+      { return chunks.take(); }
+      catch (InterruptedException e)
+      { throw new Error("Program error: interrupted.",e); }
+    }
+
+
+  //=====================================================================
+  //  Report value 'text' in line 'line' that could not be converted.
+  //=====================================================================
+  private void reject(long line, final Column col, final String text, final String why)
+    {
+      errors++;
+      if (errors<=MAXREPORTED)
+        Env.err.println("Line " + line + ", column '" + col.name + "': '"
+                        + text + "' not converted. " + why);
+    }
+
+
+  //=====================================================================
+  //  Report line that could not be read; 'why' names the line.
+  //=====================================================================
+  private void rejectLine(final String why)
+    {
+      errors++;
+      if (errors<=MAXREPORTED)
+        Env.err.println(why + " Line not converted.");
+    }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Batch
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Working storage of the conversion stage.
+   *  <br>
+   *  For each line of a batch and each column, holds the position
+   *  of the value in the line and the number it represents.
+   *  The numbers of each column are converted together
+   *  by its BatchConverter.
+   */
+  private class Batch
+  {
+    private int[][] start = new int[columns.length][BATCH];
+    private int[][] end = new int[columns.length][BATCH];
+    private double[][] value = new double[columns.length][BATCH];
+    private boolean[][] valid = new boolean[columns.length][BATCH];
+    private int[] order = new int[columns.length];
+    private boolean header = !json;
+
+    //-----------------------------------------------------------------
+    //  Convert lines of 'batch'; return the output text.
+    //-----------------------------------------------------------------
+    String convert(final String[] batch)
+      {
+        StringBuilder sb = new StringBuilder(BUFSIZE);
+        int first = 0;
+        long line0 = lineNo + 1;
+
+        if (header)
+        {
+          resolveHeader(batch[0]);
+          sb.append(batch[0]).append('\n');
+          header = false;
+          first = 1;
+        }
+
+        //-------------------------------------------------------------
+        //  Locate and parse the values.
+        //-------------------------------------------------------------
+        for (int i=first;i<batch.length;i++)
+        {
+          for (int c=0;c<columns.length;c++)
+          {
+            start[c][i] = -1;
+            valid[c][i] = false;
+          }
+
+          String s = batch[i];
+          if (!json)
+            locateCsv(s,i);
+          else
+          {
+            try
+            { locateJson(s,i,line0+i); }
+            catch (EvalError e)
+            {
+              // Copy the line unchanged.
+              for (int c=0;c<columns.length;c++)
+                start[c][i] = -1;
+              rejectLine(e.getMessage());
+              continue;
+            }
+          }
+
+          for (int c=0;c<columns.length;c++)
+          {
+            if (start[c][i]<0) continue;
+            String text = fieldText(s,start[c][i],end[c][i]);
+            if (text.length()==0 || (json && text.equals("null")))
+              continue;
+            try
+            {
+              value[c][i] = Double.parseDouble(text);
+              valid[c][i] = true;
+            }
+            catch (NumberFormatException e)
+            { reject(line0+i,columns[c],text,"Not a number."); }
+          }
+        }
+
+        //-------------------------------------------------------------
+        //  Convert the values of each column.
+        //-------------------------------------------------------------
+        for (int c=0;c<columns.length;c++)
+        {
+          BatchConverter conv = columns[c].converter;
+          double[] v = value[c];
+
+          if (conv.isLinear())
+            conv.convert(v,first,v,first,batch.length-first);
+
+          else
+            for (int i=first;i<batch.length;i++)
+            {
+              if (!valid[c][i]) continue;
+              try
+              { v[i] = conv.convert(v[i]); }
+              catch (EvalError e)
+              {
+                valid[c][i] = false;
+                reject(line0+i,columns[c],fieldText(batch[i],start[c][i],end[c][i]),
+                       e.getMessage());
+              }
+            }
+
+          for (int i=first;i<batch.length;i++)
+            if (valid[c][i] && (Double.isNaN(v[i]) || Double.isInfinite(v[i])))
+            {
+              valid[c][i] = false;
+              reject(line0+i,columns[c],fieldText(batch[i],start[c][i],end[c][i]),
+                     "Result is " + v[i] + ".");
+            }
+        }
+
+        //-------------------------------------------------------------
+        //  Build the output.
+        //  CSV values appear in each line in the order of columns,
+        //  but members of a JSON object may come in any order,
+        //  so the valid values are visited in order of position.
+        //-------------------------------------------------------------
+        for (int i=first;i<batch.length;i++)
+        {
+          String s = batch[i];
+          int n = 0;
+          for (int c=0;c<columns.length;c++)
+          {
+            if (!valid[c][i]) continue;
+            int k = n++;
+            for (;k>0 && start[order[k-1]][i]>start[c][i];k--)
+              order[k] = order[k-1];
+            order[k] = c;
+          }
+
+          int pos = 0;
+          for (int k=0;k<n;k++)
+          {
+            int c = order[k];
+            sb.append(s,pos,start[c][i]).append(value[c][i]);
+            pos = end[c][i];
+          }
+          sb.append(s,pos,s.length()).append('\n');
+        }
+
+        lineNo += batch.length;
+        return sb.toString();
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Text of field from 'b' to 'e' in 's', without quotes.
+    //-----------------------------------------------------------------
+    private String fieldText(final String s, int b, int e)
+      {
+        if (e-b>=2 && s.charAt(b)=='"' && s.charAt(e-1)=='"')
+          return s.substring(b+1,e-1).trim();
+        return s.substring(b,e).trim();
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Find the columns in CSV header 'h' and sort them
+    //  by field number.
+    //-----------------------------------------------------------------
+    private void resolveHeader(final String h)
+      {
+        Vector<String> names = new Vector<String>();
+        int p = 0;
+        for (;;)
+        {
+          int e = skipCsvField(h,p);
+          names.add(fieldText(h,p,e));
+          if (e>=h.length()) break;
+          p = e+1;
+        }
+
+        for (int c=0;c<columns.length;c++)
+        {
+          columns[c].field = names.indexOf(columns[c].name);
+          if (columns[c].field<0)
+            throw new EvalError("Column '" + columns[c].name + "' not found in header.");
+        }
+
+        for (int i=1;i<columns.length;i++)
+          for (int k=i;k>0 && columns[k-1].field>columns[k].field;k--)
+          {
+            Column t = columns[k];
+            columns[k] = columns[k-1];
+            columns[k-1] = t;
+          }
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Locate CSV fields of the columns in line 's' number 'i'.
+    //-----------------------------------------------------------------
+    private void locateCsv(final String s, int i)
+      {
+        int p = 0;
+        int field = 0;
+        int c = 0;
+        while (c<columns.length)
+        {
+          int e = skipCsvField(s,p);
+          if (field==columns[c].field)
+          {
+            start[c][i] = p;
+            end[c][i] = e;
+            c++;
+          }
+          if (e>=s.length()) break;
+          p = e+1;
+          field++;
+        }
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Return end of CSV field starting at 'p' in 's'.
+    //-----------------------------------------------------------------
+    private int skipCsvField(final String s, int p)
+      {
+        int n = s.length();
+        if (p<n && s.charAt(p)=='"')
+        {
+          p++;
+          while (p<n)
+          {
+            if (s.charAt(p)=='"')
+            {
+              if (p+1<n && s.charAt(p+1)=='"') p += 2;
+              else { p++; break; }
+            }
+            else p++;
+          }
+        }
+        while (p<n && s.charAt(p)!=delimiter) p++;
+        return p;
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Locate values of the columns among members of the top-level
+    //  object in JSON line 's' number 'i'.
+    //-----------------------------------------------------------------
+    private void locateJson(final String s, int i, long line)
+      {
+        int n = s.length();
+        int p = skipSpace(s,0);
+        if (p==n) return;   // Empty line
+        if (s.charAt(p)!='{')
+          throw new EvalError("Line " + line + ": JSON object expected.");
+        p = skipSpace(s,p+1);
+        if (p<n && s.charAt(p)=='}') return;
+
+        for (;;)
+        {
+          if (p>=n || s.charAt(p)!='"')
+            throw new EvalError("Line " + line + ": member name expected.");
+          int e = skipJsonValue(s,p);
+          if (e-p<2 || s.charAt(e-1)!='"')
+            throw new EvalError("Line " + line + ": unterminated member name.");
+          String key = unescape(s.substring(p+1,e-1));
+          p = skipSpace(s,e);
+          if (p>=n || s.charAt(p)!=':')
+            throw new EvalError("Line " + line + ": ':' expected.");
+          p = skipSpace(s,p+1);
+          e = skipJsonValue(s,p);
+          if (e==p)
+            throw new EvalError("Line " + line + ": value expected.");
+
+          for (int c=0;c<columns.length;c++)
+            if (columns[c].name.equals(key) && s.charAt(p)!='"')
+            {
+              start[c][i] = p;
+              end[c][i] = e;
+            }
+
+          p = skipSpace(s,e);
+          if (p<n && s.charAt(p)==',')
+            p = skipSpace(s,p+1);
+          else if (p<n && s.charAt(p)=='}')
+            return;
+          else
+            throw new EvalError("Line " + line + ": ',' or '}' expected.");
+        }
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Return end of JSON value starting at 'p' in 's'.
+    //-----------------------------------------------------------------
+    private int skipJsonValue(final String s, int p)
+      {
+        int n = s.length();
+        if (p>=n) return p;
+        char ch = s.charAt(p);
+
+        if (ch=='"')
+          return skipJsonString(s,p);
+
+        if (ch=='{' || ch=='[')
+        {
+          int depth = 0;
+          while (p<n)
+          {
+            ch = s.charAt(p);
+            if (ch=='"')
+              p = skipJsonString(s,p);
+            else
+            {
+              if (ch=='{' || ch=='[') depth++;
+              else if ((ch=='}' || ch==']') && --depth==0) return p+1;
+              p++;
+            }
+          }
+          return n;
+        }
+
+        while (p<n)
+        {
+          ch = s.charAt(p);
+          if (ch==',' || ch=='}' || ch==']' || Character.isWhitespace(ch)) break;
+          p++;
+        }
+        return p;
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Return end of JSON string starting at 'p' in 's'.
+    //-----------------------------------------------------------------
+    private int skipJsonString(final String s, int p)
+      {
+        int n = s.length();
+        p++;
+        while (p<n && s.charAt(p)!='"')
+          p += s.charAt(p)=='\\'? 2 : 1;
+        return Math.min(p+1,n);
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Return position of first non-blank at or after 'p' in 's'.
+    //-----------------------------------------------------------------
+    private int skipSpace(final String s, int p)
+      {
+        while (p<s.length() && Character.isWhitespace(s.charAt(p))) p++;
+        return p;
+      }
+
+
+    //-----------------------------------------------------------------
+    //  Decode simple escapes in JSON string 's'.
+    //-----------------------------------------------------------------
+    private String unescape(final String s)
+      {
+        if (s.indexOf('\\')<0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int k=0;k<s.length();k++)
+        {
+          char ch = s.charAt(k);
+          if (ch=='\\' && k+1<s.length())
+          {
+            ch = s.charAt(++k);
+            if (ch=='u' && k+4<s.length())
+            {
+              try
+              {
+                ch = (char)Integer.parseInt(s.substring(k+1,k+5),16);
+                k += 4;
+              }
+              catch (NumberFormatException e)
+              {}   // Keep 'u': the name matches no column.
+            }
+            else if (ch=='n') ch = '\n';
+            else if (ch=='t') ch = '\t';
+            else if (ch=='r') ch = '\r';
+            else if (ch=='b') ch = '\b';
+            else if (ch=='f') ch = '\f';
+          }
+          sb.append(ch);
+        }
+        return sb.toString();
+      }
+  }
+
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Column
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  A column to be converted.
+   */
+  static class Column
+  {
+    final String name;
+    final BatchConverter converter;
+    int field = -1;  // Field number in CSV
+
+    Column(final String n, final BatchConverter c)
+      {
+        name = n;
+        converter = c;
+      }
+
+    //-----------------------------------------------------------------
+    //  Construct Column from specification 'column:from:to'.
+    //  The column name extends to the first colon.
+    //-----------------------------------------------------------------
+    static Column parse(final String spec)
+      {
+        int i = spec.indexOf(':');
+        int k = i<0? -1 : spec.indexOf(':',i+1);
+        if (k<0)
+          throw new EvalError("'" + spec + "' is not of the form column:from:to.");
+        String name = spec.substring(0,i);
+        String from = spec.substring(i+1,k);
+        String to = spec.substring(k+1);
+        return new Column(name,BatchConverter.create(from,to));
+      }
+  }
+}
@@ -43,15 +43,14 @@
 //    091031 Replaced 'addtolist' by 'isCompatibleWith'
 //           and 'insertAlph' by 'Collections.sort'.
 //    091101 Implemented 'search'  ('showMatching').
+//    261018 Tables are built as UnitRegistry.
+//           Tables are loaded from and saved to Env.snapshot.
+//           Lazy tables are built if Env.lazy is set.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Vector;
 
 
 //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
@@ -69,51 +68,30 @@ import java.util.Vector;
   //  build
   //=====================================================================
   /**
-   *  Build tables from given definition files.
+   *  Build tables from given definition files
+   *  and make them the default UnitRegistry.
+   *  If Env.snapshot names a snapshot of the same files and locale,
+   *  the tables are loaded from it. Otherwise they are built
+   *  from the files and, if Env.snapshot is not null,
+   *  a new snapshot is written.
    *
    *  @return true if success, false otherwise.
    */
   public static boolean build()
     {
-      //---------------------------------------------------------------
-      //  Check number of files.
-      //---------------------------------------------------------------
-      if (Env.filenames.size()>=Env.MAXFILES)
-      {
-        Env.out.println
-          ("At most " + Env.MAXFILES + " file names are allowed.");
-        return false;
-      }
-
-      //---------------------------------------------------------------
-      //  Initialize all tables.
-      //---------------------------------------------------------------
-      if (Unit.table!=null || Prefix.table!=null ||
-          BuiltInFunction.table!=null || DefinedFunction.table!=null)
-        Env.err.println("Multiple invocations. Warning for interference.");
-
-      Unit.table            = new Hashtable<String,Unit>();
-      Prefix.table          = new Hashtable<String,Prefix>();
-      BuiltInFunction.table = new Hashtable<String,BuiltInFunction>();
-      DefinedFunction.table = new Hashtable<String,DefinedFunction>();
+      UnitRegistry reg = null;
+      if (Env.snapshot!=null)
+        reg = UnitSnapshot.read(Env.snapshot,Env.filenames,Env.locale);
 
-      //---------------------------------------------------------------
-      //  Read unit definitions.
-      //---------------------------------------------------------------
-      for (int i=0; i<Env.filenames.size(); i++)
+      if (reg==null)
       {
-        String filename = Env.filenames.elementAt(i);
-        if (filename.length()==0) filename = Env.UNITSFILE;
-        File file = new File(filename);
-        boolean ok = file.readunits(0);
-        if (!ok) return false;
+        reg = UnitRegistry.build(Env.filenames,Env.locale,Env.lazy);
+        if (reg==null) return false;
+        if (Env.snapshot!=null)
+          UnitSnapshot.write(reg,Env.snapshot);
       }
 
-      //---------------------------------------------------------------
-      //  Fill table of built-in functions.
-      //---------------------------------------------------------------
-      BuiltInFunction.makeTable();
-
+      UnitRegistry.setDefault(reg);
       return true;
     }
 
@@ -124,12 +102,7 @@ import java.util.Vector;
    *  Remove all tables.
    */
   public static void clean()
-    {
-      Unit.table = null;
-      Prefix.table = null;
-      BuiltInFunction.table = null;
-      DefinedFunction.table = null;
-    }
+    { UnitRegistry.setDefault(null); }
 
   //=====================================================================
   //  stat
@@ -138,10 +111,7 @@ import java.util.Vector;
    *  Returns string showing numbers of different entities.
    */
    public static String stat()
-   {
-     return Unit.table.size() + " units, " + Prefix.table.size() + " prefixes, "
-            + DefinedFunction.table.size() + " nonlinear units.";
-   }
+   { return UnitRegistry.current().stat(); }
 
 
   //=====================================================================
@@ -160,21 +130,24 @@ import java.util.Vector;
       //---------------------------------------------------------------
       //  Check all functions for valid definition and correct inverse.
       //---------------------------------------------------------------
-      for(Enumeration e=DefinedFunction.table.elements();e.hasMoreElements();)
-        ((Function)e.nextElement()).check();
+      UnitRegistry reg = UnitRegistry.current();
+      reg.loadAll();
+
+      for (DefinedFunction f: reg.functions.values())
+        f.check();
 
       //---------------------------------------------------------------
       //  Now check all units for validity
       //---------------------------------------------------------------
-      for (Enumeration e=Unit.table.elements();e.hasMoreElements();)
-        ((Unit)e.nextElement()).check();
+      for (Unit u: reg.units.values())
+        u.check();
 
 
       //---------------------------------------------------------------
       //  Check prefixes
       //---------------------------------------------------------------
-      for (Enumeration e=Prefix.table.elements();e.hasMoreElements();)
-        ((Prefix)e.nextElement()).check();
+      for (Prefix p: reg.prefixes.values())
+        p.check();
     }
 
 
@@ -36,12 +36,17 @@
 //    091025 Replaced 'Parser.Exception' by 'EvalError'.
 //    091031 Moved definition of Ignore to Factor.
 //           Replaced 'addtolist' by 'isCompatibleWith'.
+//    261018 Tables are kept in UnitRegistry.
+//           Added constructor from arrays for UnitSnapshot.
+//           Value of 'tableunit' is computed once.
+//           Monotone tables are searched by bisection.
+//           Added 'applyTo' for array of numbers.
+//           'isCompatibleWith' compares Dimensions.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
-import java.util.Hashtable;
 import java.util.Vector;
 
 
@@ -60,13 +65,31 @@ import java.util.Vector;
   //-------------------------------------------------------------------
   //  The table
   //-------------------------------------------------------------------
-  private double[] xValues;
-  private double[] yValues;
+  double[] xValues;
+  double[] yValues;
+
+  //-------------------------------------------------------------------
+  //  Order of 'xValues' and 'yValues': 1 if ascending, -1 if
+  //  descending, 0 if neither. Set by 'setOrder'.
+  //-------------------------------------------------------------------
+  private int xOrder;
+  private int yOrder;
 
   //-------------------------------------------------------------------
   //  Dimension of the result
   //-------------------------------------------------------------------
-  private String tableunit;
+  String tableunit;
+
+  //-------------------------------------------------------------------
+  //  Value of 'tableunit', or null if not computed yet.
+  //  It is never modified; users get a copy.
+  //-------------------------------------------------------------------
+  private volatile Value dimValue = null;
+
+  //-------------------------------------------------------------------
+  //  Dimension of 'tableunit', or null if not computed yet.
+  //-------------------------------------------------------------------
+  private volatile Dimension dimension = null;
 
 
   //=====================================================================
@@ -95,6 +118,53 @@ import java.util.Vector;
         xValues[i] = x.elementAt(i);
         yValues[i] = y.elementAt(i);
       }
+      setOrder();
+    }
+
+
+  //=====================================================================
+  //  Construct object for function 'nam' defined at 'loc'
+  //  from a snapshot. Dimension of the result is defined by unit
+  //  expression 'u', and the table is given by the arrays 'x' and 'y'.
+  //=====================================================================
+  TabularFunction
+    ( String nam, Location loc,
+      String u, double[] x, double[] y)
+    {
+      super(nam,loc);
+      tableunit = u;
+      xValues = x;
+      yValues = y;
+      setOrder();
+    }
+
+
+  //=====================================================================
+  //  Set 'xOrder' and 'yOrder'.
+  //=====================================================================
+  private void setOrder()
+    {
+      xOrder = order(xValues);
+      yOrder = order(yValues);
+    }
+
+
+  //=====================================================================
+  //  Return 1 if values 'a' are in ascending order, -1 if they are
+  //  in descending order, and 0 otherwise. Equal neighbours are
+  //  allowed, but not all values equal, and not NaN.
+  //=====================================================================
+  private static int order(final double[] a)
+    {
+      if (a.length<2) return 0;
+      int dir = signum(a[a.length-1]-a[0]);
+      if (dir==0) return 0;
+      for (int i=1;i<a.length;i++)
+      {
+        double d = dir*(a[i]-a[i-1]);
+        if (!(d>=0)) return 0;
+      }
+      return dir;
     }
 
 
@@ -130,7 +200,7 @@ import java.util.Vector;
 
       // Is it redefinition?
 
-      if (table.containsKey(funcname))
+      if (UnitRegistry.current().functions.containsKey(funcname))
       {
         Env.err.println
           ("Redefinition of function '" + funcname
@@ -171,7 +241,7 @@ import java.util.Vector;
 
       // Install function in table.
 
-      table.put(funcname,
+      UnitRegistry.current().functions.put(funcname,
               new TabularFunction(funcname,loc,tabunit,x,y));
       return true;
     }
@@ -182,21 +252,13 @@ import java.util.Vector;
   //=====================================================================
   void applyTo(Value v)
     {
-      Value dim = null;
-      try
-      { dim = Value.parse(tableunit); }
-
-      catch (EvalError e)
-      {
-        throw new EvalError("Invalid dimension, " + dim +
-                         ", of function " + name + ". " + e.getMessage());
-      }
+      Value dim = dimension("");
 
       if (!v.isNumber())
         throw new EvalError("Argument " + v.asString() + " of " +
                          name + " is not a number.");
 
-      double result = interpolate(v,v.factor,xValues,yValues,"");
+      double result = interpolate(v,v.factor,xValues,yValues,xOrder,"");
 
       dim.factor *= result;
       v.copyFrom(dim);
@@ -208,15 +270,7 @@ import java.util.Vector;
   //=====================================================================
   public void applyInverseTo(Value v)
     {
-      Value dim = null;
-      try
-      { dim = Value.parse(tableunit); }
-
-      catch (EvalError e)
-      {
-        throw new EvalError("Invalid dimension, " + dim +
-                         ", of function ~" + name + ". " + e.getMessage());
-      }
+      Value dim = dimension("~");
 
       Value n = new Value(v);
       n.div(dim);
@@ -226,12 +280,53 @@ import java.util.Vector;
                       " of function ~" + name + " is not conformable to " +
                         dim.asString() + ".");
 
-      double result = interpolate(v,n.factor,yValues,xValues,"~");
+      double result = interpolate(v,n.factor,yValues,xValues,yOrder,"~");
 
       v.copyFrom(new Value());
       v.factor = result;
     }
 
+
+  //=====================================================================
+  /** Applies the function to each of given numbers.
+   *  <br>
+   *  Each number is replaced by the value of the function,
+   *  expressed as a multiple of 'tableunit'; this is the same as the
+   *  factor of the Value computed by 'applyTo', divided by the Value
+   *  of 'tableunit'.
+   *  EvalError is thrown if a number is outside the domain
+   *  of the function; the numbers before it have then been replaced.
+   *  @param  args the numbers. */
+  //=====================================================================
+  public void applyTo(final double[] args)
+    {
+      for (int i=0;i<args.length;i++)
+        args[i] = interpolate(null,args[i],xValues,yValues,xOrder,"");
+    }
+
+
+  //=====================================================================
+  //  Return a new Value of 'tableunit'. The argument 'inv' is either
+  //  empty string or '~', and is used in the error message
+  //  to show if we are doing inverse or not.
+  //=====================================================================
+  private Value dimension(final String inv)
+    {
+      Value dim = dimValue;
+      if (dim==null)
+      {
+        try
+        { dim = Value.parse(tableunit); }
+        catch (EvalError e)
+        {
+          throw new EvalError("Invalid dimension, null" +
+                           ", of function " + inv + name + ". " + e.getMessage());
+        }
+        dimValue = dim;
+      }
+      return new Value(dim);
+    }
+
   //=====================================================================
   //  Return definition of the function.
   //  (Originally 'showfuncdef'.)
@@ -287,9 +382,24 @@ import java.util.Vector;
   //=====================================================================
   boolean isCompatibleWith(final Value v)
     {
+      Dimension d = dimension();
+      if (d==null) return false;
+      return d.equals(v.dimension(Factor.Ignore.DIMLESS));
+    }
+
+
+  //=====================================================================
+  //  Return Dimension of 'tableunit', or null if it cannot be
+  //  evaluated. It is computed on first request.
+  //=====================================================================
+  Dimension dimension()
+    {
+      Dimension d = dimension;
+      if (d!=null) return d;
       Value thisvalue = Value.fromString(tableunit);
-      if (thisvalue==null) return false;
-      return thisvalue.isCompatibleWith(v,Factor.Ignore.DIMLESS);
+      if (thisvalue==null) return null;
+      dimension = d = thisvalue.dimension(Factor.Ignore.DIMLESS).interned();
+      return d;
     }
 
 
@@ -301,19 +411,71 @@ import java.util.Vector;
 
 
   //=====================================================================
-  //  The arrays 'x' and 'y' contain x-values and corresponding y-values.
+  //  The arrays 'x' and 'y' contain x-values and corresponding y-values,
+  //  and 'order' is the order of 'x' as set by 'setOrder'.
   //  Find, by linear interpolation, the y-value corresponding to the
-  //  x-value given by the factor of Value object 'v'.
+  //  x-value 'xval'. The argument 'v' is the Value to be shown
+  //  in the error message, or null to show 'xval'.
   //  The argument 'inv' is either empty string or '~', and is used
   //  in the error message to show if we are doing inverse or not.
   //=====================================================================
-  private double interpolate(Value v, double xval, double[] x, double[] y, String inv)
+  private double interpolate
+    ( Value v, double xval, final double[] x, final double[] y,
+      int order, String inv)
+    {
+      int i = order==0? scan(xval,x) : search(xval,x,order);
+
+      if (i<0)
+      {
+        if (v==null)
+        {
+          v = new Value();
+          v.factor = xval;
+        }
+        throw new EvalError("Argument " + v.asString() +
+                       " is outside the domain of " + inv + name + ".");
+      }
+
+      return y[i] + (xval-x[i])*(y[i+1]-y[i])/(x[i+1]-x[i]);
+    }
+
+
+  //=====================================================================
+  //  Return the first 'i' such that 'xval' is between x[i] and x[i+1],
+  //  or -1 if there is none.
+  //=====================================================================
+  private static int scan(double xval, final double[] x)
     {
       for(int i=0;i<x.length-1;i++)
         if ((x[i]<=xval && xval<=x[i+1]) || (x[i]>=xval && xval>=x[i+1]))
-          return y[i] + (xval-x[i])*(y[i+1]-y[i])/(x[i+1]-x[i]);
+          return i;
+      return -1;
+    }
+
 
-      throw new EvalError("Argument " + v.asString() +
-                     " is outside the domain of " + inv + name + ".");
+  //=====================================================================
+  //  Do the same as 'scan' for 'x' in ascending order if 'order' is 1,
+  //  or in descending order if 'order' is -1, using bisection.
+  //  Find the first 'i' such that x[i+1] is not before 'xval';
+  //  x[i] is then before 'xval', except possibly for i=0.
+  //=====================================================================
+  private static int search(double xval, final double[] x, int order)
+    {
+      int lo = 0;
+      int hi = x.length-2;
+      int found = -1;
+      while (lo<=hi)
+      {
+        int mid = (lo+hi)>>>1;
+        if (order*(x[mid+1]-xval)>=0)
+        {
+          found = mid;
+          hi = mid-1;
+        }
+        else
+          lo = mid+1;
+      }
+      if (found<0 || order*(xval-x[found])<0) return -1;
+      return found;
     }
 }
@@ -33,12 +33,20 @@
 //    091024 Version 1.87.J01. Used modified 'insertAlph'.
 //    091031 Moved definition of Ignore to Factor.
 //           Replaced 'addtolist' by 'isCompatibleWith'.
+//    261018 'table' is a view of the default UnitRegistry.
+//           Added 'isAccessible'. 'find' uses the view of tables,
+//           which creates units in a lazy UnitRegistry.
+//           'find' looks up the index of names and plural forms
+//           built by 'nameIndex'. Added 'find' for part
+//           of a CharSequence.
+//           'isCompatibleWith' compares Dimensions.
 //
 //=========================================================================
 
 package net.sourceforge.unitsinjava;
 
-import java.util.Hashtable;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Vector;
 
 
@@ -55,9 +63,9 @@ import java.util.Vector;
  public class Unit extends Factor
 {
   //-------------------------------------------------------------------
-  //  Table of Units
+  //  Table of Units in the default UnitRegistry (read-only)
   //-------------------------------------------------------------------
-  public static Hashtable<String,Unit> table = null;
+  public static Map<String,Unit> table = null;
 
 
   //=====================================================================
@@ -69,13 +77,10 @@ import java.util.Vector;
 
 
   //=====================================================================
-  //  Given is a line number 'lin' from units.dat file, parsed into
-  //  name 'nam' and definition 'df'. It should be a unit definition.
-  //  Construct a Unit object defined by the line, enter it into
-  //  Units table, and return true.
+  //  Return true if unit name 'nam' defined at 'loc' can be accessed.
+  //  Otherwise write message and return false.
   //=====================================================================
-  public static boolean accept
-    ( final String nam, final String df, Location loc)
+  static boolean isAccessible(final String nam, Location loc)
     {
       // Units that end in [2-9] can never be accessed.
 
@@ -84,7 +89,7 @@ import java.util.Vector;
          Env.err.println
            ("Unit '" + nam + "' on line " + loc.lineNum
              +  " ignored. It ends with a digit 2-9.");
-         return true;
+         return false;
       }
 
       // Units that start with a digit can never be accessed.
@@ -94,12 +99,29 @@ import java.util.Vector;
          Env.err.println
            ("Unit '" + nam + "' on line " + loc.lineNum
              +  " ignored. It starts with a digit.");
-         return true;
+         return false;
       }
 
+      return true;
+    }
+
+
+  //=====================================================================
+  //  Given is a line number 'lin' from units.dat file, parsed into
+  //  name 'nam' and definition 'df'. It should be a unit definition.
+  //  Construct a Unit object defined by the line, enter it into
+  //  Units table, and return true.
+  //=====================================================================
+  public static boolean accept
+    ( final String nam, final String df, Location loc)
+    {
+      if (!isAccessible(nam,loc)) return true;
+
       // Is it a redefinition?
 
-      if (table.containsKey(nam))
+      Map<String,Unit> units = UnitRegistry.current().units;
+
+      if (units.containsKey(nam))
       {
         Env.err.println
           ("Redefinition of unit '" + nam
@@ -109,7 +131,7 @@ import java.util.Vector;
 
       // Install unit in table.
 
-      table.put(nam, new Unit(nam,loc,df));
+      units.put(nam, new Unit(nam,loc,df));
       return true;
     }
 
@@ -131,21 +153,41 @@ import java.util.Vector;
            + def + "' is irreducible");
 
       // check if not hidden by function
-      if (DefinedFunction.table.containsKey(name))
+      if (UnitRegistry.current().definedFunctions().containsKey(name))
         Env.out.println
           ("unit '" + name
            + "' is hidden by function '" + name + "'");
     }
 
 
+  //-------------------------------------------------------------------
+  //  Dimension of the Value of 'name', or null if not computed yet.
+  //-------------------------------------------------------------------
+  private volatile Dimension nameDimension = null;
+
   //=====================================================================
   //  Return true if this unit is compatible with Value 'v',
   //=====================================================================
   boolean isCompatibleWith(final Value v)
     {
+      Dimension d = dimension();
+      if (d==null) return false;
+      return d.equals(v.dimension(Factor.Ignore.DIMLESS));
+    }
+
+
+  //=====================================================================
+  //  Return Dimension of the Value of 'name', or null if the name
+  //  cannot be evaluated. It is computed on first request.
+  //=====================================================================
+  Dimension dimension()
+    {
+      Dimension d = nameDimension;
+      if (d!=null) return d;
       Value thisvalue = Value.fromString(name);
-      if (thisvalue==null) return false;
-      return thisvalue.isCompatibleWith(v,Factor.Ignore.DIMLESS);
+      if (thisvalue==null) return null;
+      nameDimension = d = thisvalue.dimension(Factor.Ignore.DIMLESS).interned();
+      return d;
     }
 
 
@@ -157,55 +199,62 @@ import java.util.Vector;
 
 
   //=====================================================================
-  //  Find out if 'name' is the name of a known unit, possibly in plural.
+  //  Find out if 'name' is the name of a unit in the current UnitRegistry,
+  //  possibly in plural.
   //  Return the Unit object if so, or null otherwise.
   //  (Originally part of 'lookupunit'.)
   //=====================================================================
   public static Unit find(final String name)
     {
-      //---------------------------------------------------------------
-      //  If 'name' appears as unit name in table,
-      //  return object from the table.
-      //---------------------------------------------------------------
-      if (Unit.table.containsKey(name))
-        return Unit.table.get(name);
-
-      //---------------------------------------------------------------
-      //  Plural rules for English: add -s
-      //  after x, sh, ch, ss   add -es
-      //  -y becomes -ies except after a vowel when you just add -s
-      //  Try removing 's'.
-      //---------------------------------------------------------------
-      int ulg = name.length();
-      if (ulg>2 && name.charAt(ulg-1)=='s')
-      {
-        String temp = name.substring(0,ulg-1);
-        if (Unit.table.containsKey(temp))
-          return Unit.table.get(temp);
-
-        //-------------------------------------------------------------
-        //  Removing the suffix 's' did not help. It could still be
-        //  a plural form ending on 'es'. Try this.
-        //-------------------------------------------------------------
-        if (ulg>3 && name.charAt(ulg-2)=='e')
-        {
-          temp = name.substring(0,ulg-2);
-          if (Unit.table.containsKey(temp))
-            return Unit.table.get(temp);
-
-          //-----------------------------------------------------------
-          //  Removing the suffix 'es' did not help. It could still be
-          //  a plural form ending on 'ies'. Try this.
-          //-----------------------------------------------------------
-          if (ulg>4 && name.charAt(ulg-3)=='i')
-          {
-            temp = name.substring(0,ulg-3) + "y";
-            if (Unit.table.containsKey(temp))
-              return Unit.table.get(temp);
-          }
-        }
-      }
+      UnitRegistry reg = UnitRegistry.current();
+      String n = reg.unitNames().get(name);
+      return n==null? null : reg.units().get(n);
+    }
+
+
+  //=====================================================================
+  //  Find out if characters 'start' through 'end'-1 of 's' are
+  //  the name of a unit in the current UnitRegistry, possibly in plural.
+  //  Return the Unit object if so, or null otherwise.
+  //=====================================================================
+  static Unit find(final CharSequence s, int start, int end)
+    {
+      UnitRegistry reg = UnitRegistry.current();
+      String name = reg.unitNames().get(s,start,end);
+      return name==null? null : reg.units().get(name);
+    }
+
+
+  //=====================================================================
+  //  Return index from unit names 'names', and their plural forms,
+  //  to unit names.
+  //  Plural rules for English: add -s
+  //  after x, sh, ch, ss   add -es
+  //  -y becomes -ies except after a vowel when you just add -s
+  //  A name is recognized as plural if removing 's' gives a unit name;
+  //  otherwise, if removing 'es' does; otherwise, if replacing 'ies'
+  //  by 'y' does. Names of at most 2, 3, and 4 characters, respectively,
+  //  are not recognized as plural.
+  //  The spellings are entered in this order, so that a name
+  //  of unit, or plural obtained by an earlier rule, takes precedence.
+  //=====================================================================
+  static NameIndex<String> nameIndex(final Collection<String> names)
+    {
+      NameIndex<String> index = new NameIndex<String>(3*names.size());
+
+      for (String n: names)
+        index.putIfAbsent(n,n);
+
+      for (String n: names)
+        if (n.length()>=2) index.putIfAbsent(n + "s",n);
+
+      for (String n: names)
+        if (n.length()>=2) index.putIfAbsent(n + "es",n);
+
+      for (String n: names)
+        if (n.length()>=3 && n.endsWith("y"))
+          index.putIfAbsent(n.substring(0,n.length()-1) + "ies",n);
 
-      return null;
+      return index;
     }
 }
@@ -0,0 +1,748 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//           Added 'prefixTrie'.
+//           Added indexes of names: 'unitNames', 'builtInNames',
+//           and 'functionNames'.
+//           Added interning of Dimensions of entities.
+//           Added 'dimensionIndex'.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class UnitRegistry
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Tables of units, prefixes, and functions built from a set
+ *  of definition files for a given locale.
+ *  <br>
+ *  A UnitRegistry is not modified after it has been built,
+ *  so it may be used by any number of threads at the same time.
+ *  Several registries, for example for different locales,
+ *  may exist in the same program.
+ *  <p>
+ *  Unit expressions are evaluated in the <i>current</i> registry
+ *  of the calling thread. It is the registry selected for the thread
+ *  by <code>use</code>, or else the default registry.
+ *  The methods <code>evaluate</code> and <code>convert</code>
+ *  select the registry for the duration of the call.
+ *  <p>
+ *  The static tables <code>Unit.table</code>, <code>Prefix.table</code>,
+ *  <code>BuiltInFunction.table</code>, and <code>DefinedFunction.table</code>
+ *  are read-only views of the tables in the default registry.
+ *  <p>
+ *  A <i>lazy</i> registry does not create units, prefixes, and
+ *  defined functions when reading the definition files. It only records
+ *  where each definition is, and creates the object on first lookup.
+ *  Primitive units are always created immediately.
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class UnitRegistry
+{
+  //-------------------------------------------------------------------
+  //  Tables of created objects. Filled while the registry is built;
+  //  in a lazy registry, also later as definitions are looked up.
+  //-------------------------------------------------------------------
+  final Map<String,Unit> units = new ConcurrentHashMap<String,Unit>();
+  final Map<String,Prefix> prefixes = new ConcurrentHashMap<String,Prefix>();
+  final HashMap<String,BuiltInFunction> builtIns = new HashMap<String,BuiltInFunction>();
+  final Map<String,DefinedFunction> functions = new ConcurrentHashMap<String,DefinedFunction>();
+
+  //-------------------------------------------------------------------
+  //  Is this a lazy registry?
+  //-------------------------------------------------------------------
+  final boolean lazy;
+
+  //-------------------------------------------------------------------
+  //  Locations of definitions in a lazy registry, by name;
+  //  null in other registries. Filled while the registry is built,
+  //  never modified later.
+  //-------------------------------------------------------------------
+  final HashMap<String,Location> unitIndex;
+  final HashMap<String,Location> prefixIndex;
+  final HashMap<String,Location> functionIndex;
+
+  //-------------------------------------------------------------------
+  //  Definitions that were found invalid when looked up.
+  //  Guarded by 'this'.
+  //-------------------------------------------------------------------
+  private final HashSet<Location> rejected = new HashSet<Location>();
+
+  //-------------------------------------------------------------------
+  //  Read-only views of the tables. They are used for all lookups,
+  //  which create objects in a lazy registry.
+  //-------------------------------------------------------------------
+  private final TableView<Unit> unitView;
+  private final TableView<Prefix> prefixView;
+  private final Map<String,BuiltInFunction> builtInView = Collections.unmodifiableMap(builtIns);
+  private final TableView<DefinedFunction> functionView;
+
+  //-------------------------------------------------------------------
+  //  Trie over prefix names, created on first use.
+  //-------------------------------------------------------------------
+  private volatile PrefixTrie prefixTrie;
+
+  //-------------------------------------------------------------------
+  //  Indexes of names, created on first use.
+  //-------------------------------------------------------------------
+  private volatile Names names;
+
+  //-------------------------------------------------------------------
+  //  Primitive units in alphabetic order of names.
+  //  The position of a unit in this array is its ordinal number
+  //  used in ReducedValue.
+  //-------------------------------------------------------------------
+  Unit[] primitives = new Unit[0];
+
+  //-------------------------------------------------------------------
+  //  Names of definition files given to 'build', and all files read,
+  //  including those read by '!include'.
+  //-------------------------------------------------------------------
+  final Vector<String> filenames;
+  final Vector<File> files = new Vector<File>();
+
+  //-------------------------------------------------------------------
+  //  Locale for which the registry was built.
+  //-------------------------------------------------------------------
+  private final String locale;
+
+  //-------------------------------------------------------------------
+  //  Number identifying this registry.
+  //-------------------------------------------------------------------
+  final int serial;
+  private static final AtomicInteger serials = new AtomicInteger();
+
+  //-------------------------------------------------------------------
+  //  Interned Dimensions of entities, each mapped to itself.
+  //-------------------------------------------------------------------
+  private final ConcurrentHashMap<Dimension,Dimension> dimensions
+    = new ConcurrentHashMap<Dimension,Dimension>();
+
+  //-------------------------------------------------------------------
+  //  Index of entities by Dimension, created on first use.
+  //  Built while holding the lock.
+  //-------------------------------------------------------------------
+  private volatile DimensionIndex dimensionIndex;
+  private final Object dimensionIndexLock = new Object();
+
+  //-------------------------------------------------------------------
+  //  Conversion plans for 'convert'.
+  //-------------------------------------------------------------------
+  private final ConversionPlanCache plans = new ConversionPlanCache(256);
+
+  //-------------------------------------------------------------------
+  //  Default registry and registries selected by threads.
+  //-------------------------------------------------------------------
+  private static volatile UnitRegistry defaultRegistry = null;
+  private static final ThreadLocal<UnitRegistry> selected
+    = new ThreadLocal<UnitRegistry>();
+
+
+  //=====================================================================
+  //  Construct empty registry for files 'names' and locale 'loc'.
+  //=====================================================================
+  private UnitRegistry
+    ( final Vector<String> names, final String loc, boolean lz)
+    {
+      filenames = new Vector<String>(names);
+      locale = loc;
+      serial = serials.incrementAndGet();
+      lazy = lz;
+      unitIndex = lazy? new HashMap<String,Location>() : null;
+      prefixIndex = lazy? new HashMap<String,Location>() : null;
+      functionIndex = lazy? new HashMap<String,Location>() : null;
+      unitView = new TableView<Unit>(units,unitIndex);
+      prefixView = new TableView<Prefix>(prefixes,prefixIndex);
+      functionView = new TableView<DefinedFunction>(functions,functionIndex);
+    }
+
+
+  //=====================================================================
+  //  Return empty registry for files 'names' and locale 'loc',
+  //  to be filled by UnitSnapshot.
+  //=====================================================================
+  static UnitRegistry empty(final Vector<String> names, final String loc)
+    { return new UnitRegistry(names,loc,false); }
+
+
+  //=====================================================================
+  //  build
+  //=====================================================================
+  /**
+   *  Builds registry from given definition files.
+   *  The files are obtained from <code>Env.files</code>,
+   *  and messages are written to <code>Env.out</code> and
+   *  <code>Env.err</code>.
+   *
+   *  @param  filenames names of definition files. Empty name stands
+   *          for the default file.
+   *  @param  locale the locale.
+   *  @return the registry, or null if it could not be built.
+   */
+  public static UnitRegistry build
+    ( final Vector<String> filenames, final String locale)
+    { return build(filenames,locale,false); }
+
+
+  /**
+   *  Builds registry from given definition files,
+   *  optionally as a lazy registry.
+   *  The files are obtained from <code>Env.files</code>,
+   *  and messages are written to <code>Env.out</code> and
+   *  <code>Env.err</code>.
+   *
+   *  @param  filenames names of definition files. Empty name stands
+   *          for the default file.
+   *  @param  locale the locale.
+   *  @param  lazy true to build a lazy registry.
+   *  @return the registry, or null if it could not be built.
+   */
+  public static UnitRegistry build
+    ( final Vector<String> filenames, final String locale, boolean lazy)
+    {
+      //---------------------------------------------------------------
+      //  Check number of files.
+      //---------------------------------------------------------------
+      if (filenames.size()>=Env.MAXFILES)
+      {
+        Env.out.println
+          ("At most " + Env.MAXFILES + " file names are allowed.");
+        return null;
+      }
+
+      UnitRegistry reg = new UnitRegistry(filenames,locale,lazy);
+      UnitRegistry prev = reg.use();
+
+      try
+      {
+        //-------------------------------------------------------------
+        //  Read unit definitions.
+        //-------------------------------------------------------------
+        for (int i=0; i<filenames.size(); i++)
+        {
+          String filename = filenames.elementAt(i);
+          if (filename.length()==0) filename = Env.UNITSFILE;
+          File file = new File(filename);
+          boolean ok = file.readunits(0);
+          if (!ok) return null;
+        }
+
+        //-------------------------------------------------------------
+        //  Fill table of built-in functions.
+        //-------------------------------------------------------------
+        BuiltInFunction.makeTable();
+
+        //-------------------------------------------------------------
+        //  Number primitive units.
+        //-------------------------------------------------------------
+        reg.numberPrimitives();
+      }
+
+      finally
+      { restore(prev); }
+
+      return reg;
+    }
+
+
+  //=====================================================================
+  //  Record definition of 'nam' as 'df' at 'loc' in a lazy registry.
+  //  Only names are checked here; the definition is checked
+  //  when the object is created. Primitive units, and definitions
+  //  with invalid function names, are processed immediately.
+  //=====================================================================
+  void index(final String nam, final String df, final Location loc)
+    {
+      //---------------------------------------------------------------
+      //  Prefix.
+      //---------------------------------------------------------------
+      if (nam.endsWith("-"))
+      {
+        String prefname = nam.substring(0,nam.length()-1);
+        if (prefixIndex.containsKey(prefname))
+          Env.err.println
+            ("Redefinition of prefix '" + prefname +
+             "-' on line " + loc.lineNum + " is ignored.");
+        else
+          prefixIndex.put(prefname,loc);
+        return;
+      }
+
+      //---------------------------------------------------------------
+      //  Tabular or computed function.
+      //---------------------------------------------------------------
+      char close = nam.indexOf('[')>=0? ']' : nam.indexOf('(')>=0? ')' : 0;
+      if (close!=0)
+      {
+        int leftParen = nam.indexOf(close==']'? '[' : '(');
+        int rightParen = nam.indexOf(close,leftParen+1);
+        if (rightParen!=nam.length()-1 || rightParen==leftParen+1)
+        {
+          File.define(nam,df,loc);
+          return;
+        }
+
+        String funcname = nam.substring(0,leftParen);
+        if (functionIndex.containsKey(funcname) || functions.containsKey(funcname))
+          Env.err.println
+            ("Redefinition of function '" + funcname
+              + "' on line " + loc.lineNum + " is ignored.");
+        else
+          functionIndex.put(funcname,loc);
+        return;
+      }
+
+      //---------------------------------------------------------------
+      //  Unit.
+      //---------------------------------------------------------------
+      if (!Unit.isAccessible(nam,loc)) return;
+
+      if (unitIndex.containsKey(nam) || units.containsKey(nam))
+      {
+        Env.err.println
+          ("Redefinition of unit '" + nam
+            + "' on line " + loc.lineNum + " is ignored.");
+        return;
+      }
+
+      if (df.startsWith("!"))
+        Unit.accept(nam,df,loc);
+      else
+        unitIndex.put(nam,loc);
+    }
+
+
+  //=====================================================================
+  //  Return object 'name' from 'table', creating it if necessary
+  //  from definition recorded in 'index'. Return null if there is
+  //  no definition or it is invalid.
+  //=====================================================================
+  private <E extends Entity> E load
+    ( final Map<String,E> table, final HashMap<String,Location> index,
+      final String name)
+    {
+      Location loc = index.get(name);
+      if (loc==null) return null;
+
+      synchronized(this)
+      {
+        E e = table.get(name);
+        if (e!=null || rejected.contains(loc)) return e;
+
+        UnitRegistry prev = use();
+        try
+        { loc.file.define(loc); }
+        finally
+        { restore(prev); }
+
+        e = table.get(name);
+        if (e==null) rejected.add(loc);
+        return e;
+      }
+    }
+
+
+  //=====================================================================
+  //  Create all objects of a lazy registry.
+  //=====================================================================
+  void loadAll()
+    {
+      if (!lazy) return;
+      for (String name: unitIndex.keySet())
+        unitView.get(name);
+      for (String name: prefixIndex.keySet())
+        prefixView.get(name);
+      for (String name: functionIndex.keySet())
+        functionView.get(name);
+    }
+
+
+  //=====================================================================
+  //  Number primitive units in alphabetic order of names.
+  //=====================================================================
+  void numberPrimitives()
+    {
+      Vector<Unit> list = new Vector<Unit>();
+      for (Unit u: units.values())
+        if (u.isPrimitive) list.add(u);
+      Collections.sort(list);
+      primitives = list.toArray(new Unit[list.size()]);
+      for (int i=0;i<primitives.length;i++)
+        primitives[i].ordinal = i;
+    }
+
+
+  //=====================================================================
+  //  current
+  //=====================================================================
+  /**
+   *  Returns the current registry of the calling thread.
+   *
+   *  @return registry selected by <code>use</code>, or the default
+   *          registry if none is selected.
+   */
+  public static UnitRegistry current()
+    {
+      UnitRegistry reg = selected.get();
+      return reg!=null? reg : defaultRegistry;
+    }
+
+
+  //=====================================================================
+  //  getDefault
+  //=====================================================================
+  /**
+   *  Returns the default registry.
+   *
+   *  @return the default registry, or null if none.
+   */
+  public static UnitRegistry getDefault()
+    { return defaultRegistry; }
+
+
+  //=====================================================================
+  //  setDefault
+  //=====================================================================
+  /**
+   *  Makes given registry the default one,
+   *  and makes the static tables show its contents.
+   *
+   *  @param  reg the new default registry, or null for none.
+   */
+  public static synchronized void setDefault(final UnitRegistry reg)
+    {
+      defaultRegistry = reg;
+      Unit.table            = reg==null? null : reg.units();
+      Prefix.table          = reg==null? null : reg.prefixes();
+      BuiltInFunction.table = reg==null? null : reg.builtInFunctions();
+      DefinedFunction.table = reg==null? null : reg.definedFunctions();
+    }
+
+
+  //=====================================================================
+  //  use
+  //=====================================================================
+  /**
+   *  Makes this registry current for the calling thread.
+   *  The previous selection should be restored by <code>restore</code>
+   *  in a <code>finally</code> clause.
+   *
+   *  @return registry previously selected by the thread, or null.
+   */
+  public UnitRegistry use()
+    {
+      UnitRegistry prev = selected.get();
+      selected.set(this);
+      return prev;
+    }
+
+
+  //=====================================================================
+  //  restore
+  //=====================================================================
+  /**
+   *  Restores selection of registry by the calling thread.
+   *
+   *  @param  prev value returned by <code>use</code>.
+   */
+  public static void restore(final UnitRegistry prev)
+    {
+      if (prev==null) selected.remove();
+      else selected.set(prev);
+    }
+
+
+  //=====================================================================
+  //  evaluate
+  //=====================================================================
+  /**
+   *  Constructs a completely reduced Value from unit expression
+   *  using this registry; throws EvalError on error.
+   *
+   *  @param  expr a unit expression.
+   *  @return Value represented by the expression.
+   */
+  public Value evaluate(final String expr)
+    {
+      UnitRegistry prev = use();
+      try
+      {
+        Value v = Value.parse(expr);
+        v.completereduce();
+        return v;
+      }
+      finally
+      { restore(prev); }
+    }
+
+
+  //=====================================================================
+  //  convert
+  //=====================================================================
+  /**
+   *  Converts number 'x' of unit expression 'fromExpr'
+   *  to unit expression 'toExpr' using this registry;
+   *  throws EvalError on error or if the expressions are not conformable.
+   *  Plans of recent conversions are kept for reuse.
+   *
+   *  @param  x the number.
+   *  @param  fromExpr unit expression to convert from.
+   *  @param  toExpr unit expression to convert to.
+   *  @param  options options for the conversion.
+   *  @return 'x' times 'fromExpr' expressed in 'toExpr'.
+   */
+  public double convert
+    ( double x, final String fromExpr, final String toExpr,
+      final Options options)
+    {
+      UnitRegistry prev = use();
+      try
+      { return plans.convert(x,fromExpr,toExpr,options); }
+      finally
+      { restore(prev); }
+    }
+
+
+  //=====================================================================
+  //  Accessors
+  //=====================================================================
+  /** Returns the locale.
+   *  @return the locale for which this registry was built. */
+  public String locale()
+    { return locale; }
+
+  /** Returns table of units.
+   *  @return read-only map from unit names to units. */
+  public Map<String,Unit> units()
+    { return unitView; }
+
+  /** Returns table of prefixes.
+   *  @return read-only map from prefix names to prefixes. */
+  public Map<String,Prefix> prefixes()
+    { return prefixView; }
+
+  /** Returns trie over prefix names.
+   *  @return trie over the names of all prefixes. */
+  public PrefixTrie prefixTrie()
+    {
+      PrefixTrie t = prefixTrie;
+      if (t==null)
+        prefixTrie = t = new PrefixTrie(prefixView.keySet());
+      return t;
+    }
+
+  /** Returns index of unit names.
+   *  @return index from unit names, and their plural forms accepted
+   *          by <code>Unit.find</code>, to unit names. */
+  public NameIndex<String> unitNames()
+    { return names().unitNames; }
+
+  /** Returns index of names of built-in functions.
+   *  @return index in which each name is its own value. */
+  public NameIndex<String> builtInNames()
+    { return names().builtInNames; }
+
+  /** Returns index of names of defined functions.
+   *  @return index in which each name is its own value. */
+  public NameIndex<String> functionNames()
+    { return names().functionNames; }
+
+  //-------------------------------------------------------------------
+  //  Return the indexes of names, creating them if necessary.
+  //-------------------------------------------------------------------
+  private Names names()
+    {
+      Names n = names;
+      if (n==null)
+        names = n = new Names();
+      return n;
+    }
+
+  /** Returns index of units, nonlinear units, and prefixes
+   *  by Dimension. It is built by all processors on first request;
+   *  a request made while it is being built waits for it.
+   *  @return the index. */
+  public DimensionIndex dimensionIndex()
+    {
+      DimensionIndex d = dimensionIndex;
+      if (d!=null) return d;
+      synchronized(dimensionIndexLock)
+      {
+        if (dimensionIndex==null)
+          dimensionIndex = DimensionIndex.build
+                             (this,Runtime.getRuntime().availableProcessors());
+        return dimensionIndex;
+      }
+    }
+
+  /** Returns table of built-in functions.
+   *  @return read-only map from names to built-in functions. */
+  public Map<String,BuiltInFunction> builtInFunctions()
+    { return builtInView; }
+
+  /** Returns table of defined functions.
+   *  @return read-only map from names to defined functions. */
+  public Map<String,DefinedFunction> definedFunctions()
+    { return functionView; }
+
+
+  //-------------------------------------------------------------------
+  //  Return the interned Dimension equal to 'd',
+  //  making 'd' the interned one if there is none.
+  //-------------------------------------------------------------------
+  Dimension intern(final Dimension d)
+    {
+      Dimension old = dimensions.putIfAbsent(d,d);
+      return old==null? d : old;
+    }
+
+
+  //=====================================================================
+  //  stat
+  //=====================================================================
+  /**
+   *  Returns string showing numbers of different entities.
+   */
+  public String stat()
+    {
+      return unitView.size() + " units, " + prefixView.size() + " prefixes, "
+             + functionView.size() + " nonlinear units.";
+    }
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class TableView
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Read-only view of a table.
+   *  In a lazy registry, the view contains all defined names,
+   *  and <code>get</code> creates objects as needed.
+   *  Iterating over entries or values creates all objects.
+   */
+  private class TableView<E extends Entity> extends AbstractMap<String,E>
+  {
+    private final Map<String,E> table;
+    private final HashMap<String,Location> index;
+
+    TableView(final Map<String,E> t, final HashMap<String,Location> i)
+      {
+        table = t;
+        index = i;
+      }
+
+    public E get(final Object key)
+      {
+        E e = table.get(key);
+        if (e!=null || index==null || !(key instanceof String)) return e;
+        return load(table,index,(String)key);
+      }
+
+    public boolean containsKey(final Object key)
+      { return table.containsKey(key) || (index!=null && index.containsKey(key)); }
+
+    public Set<String> keySet()
+      {
+        if (index==null)
+          return Collections.unmodifiableSet(table.keySet());
+        HashSet<String> keys = new HashSet<String>(index.keySet());
+        keys.addAll(table.keySet());
+        return Collections.unmodifiableSet(keys);
+      }
+
+    public int size()
+      { return index==null? table.size() : keySet().size(); }
+
+    public Set<Map.Entry<String,E>> entrySet()
+      {
+        if (index!=null)
+          for (String name: index.keySet()) get(name);
+        return Collections.unmodifiableMap(table).entrySet();
+      }
+  }
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Names
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Indexes of names in the tables. The names are known
+   *  without creating objects in a lazy registry.
+   */
+  private class Names
+  {
+    final NameIndex<String> unitNames = Unit.nameIndex(unitView.keySet());
+    final NameIndex<String> builtInNames = NameIndex.of(builtIns.keySet());
+    final NameIndex<String> functionNames = NameIndex.of(functionView.keySet());
+  }
+
+
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  //
+  //  Inner class Options
+  //
+  //HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+  /**
+   *  Options of a single conversion.
+   *  They replace for that conversion the global settings in Env.
+   */
+  public static class Options
+  {
+    /** Do not allow reciprocal conversion. */
+    public final boolean strict;
+
+    /** Constructs options.
+     *  @param  strict true if reciprocal conversion is not allowed. */
+    public Options(boolean strict)
+      { this.strict = strict; }
+
+    /** Returns options given by the global settings in Env.
+     *  @return options with values from Env. */
+    public static Options fromEnv()
+      { return new Options(Env.strict); }
+  }
+}
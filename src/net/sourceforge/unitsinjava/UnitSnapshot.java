@@ -0,0 +1,576 @@
+//=========================================================================
+//
+//  Part of units package -- a Java version of GNU Units program.
+//
+//  Units is a program for unit conversion originally written in C
+//  by Adrian Mariano (adrian@cam.cornell.edu.).
+//  Copyright (C) 1996, 1997, 1999, 2000, 2001, 2002, 2003, 2004,
+//  2005, 2006, 2007 by Free Software Foundation, Inc.
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program. If not, see <http://www.gnu.org/licenses/>.
+//
+//-------------------------------------------------------------------------
+//
+//  Change log
+//
+//    261018 Created.
+//
+//=========================================================================
+
+package net.sourceforge.unitsinjava;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+
+
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+//
+//  class UnitSnapshot
+//
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+/**
+ *  Binary snapshot of a UnitRegistry.
+ *  <br>
+ *  The snapshot holds the units, prefixes, and defined functions
+ *  of the registry, with their definitions and locations,
+ *  and the completely reduced Values of unit and prefix definitions.
+ *  It is identified by the names of the definition files, the locale,
+ *  and a checksum of the contents of all files read, including
+ *  those read by <code>!include</code>.
+ *  <p>
+ *  Loading a snapshot reads the definition files only to compute
+ *  the checksum. If the files or locale do not match, the snapshot
+ *  is ignored and the tables must be built from the files.
+ *  <p>
+ *  Invocation of the offline compiler:
+ *  <pre>
+ *   java net.sourceforge.unitsinjava.UnitSnapshot [-f file]... [-l locale] snapshot
+ *  </pre>
+ */
+//HHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHHH
+
+ public class UnitSnapshot
+{
+  //-------------------------------------------------------------------
+  //  File identification and format version.
+  //-------------------------------------------------------------------
+  static final int MAGIC = 0x556e5370;  // "UnSp"
+  static final int VERSION = 1;
+
+  //-------------------------------------------------------------------
+  //  Kinds of defined functions.
+  //-------------------------------------------------------------------
+  private static final byte COMPUTED = 1;
+  private static final byte TABULAR = 2;
+
+  //-------------------------------------------------------------------
+  //  Is never instantiated.
+  //-------------------------------------------------------------------
+  private UnitSnapshot() {}
+
+
+  //=====================================================================
+  //  main
+  //=====================================================================
+  /**
+   *  Offline compiler: builds tables from definition files
+   *  and writes their snapshot.
+   *
+   *  @param  argv command arguments.
+   */
+  public static void main(String[] argv)
+    {
+      CommandArgs cmd = new CommandArgs(argv,"","fl",1,1);
+      if (cmd.nErrors()>0)
+      {
+        System.err.println
+          ("Usage: UnitSnapshot [-f file]... [-l locale] snapshot");
+        System.exit(2);
+      }
+
+      Env.useFileSystem();
+      Env.filenames = new Vector<String>();
+      if (cmd.opt('f'))
+        Env.filenames.addAll(cmd.optArgs('f'));
+      else
+        Env.filenames.add("");
+      Env.locale = cmd.opt('l')? cmd.optArg('l') : Env.DEFAULTLOCALE;
+
+      UnitRegistry reg = UnitRegistry.build(Env.filenames,Env.locale);
+      if (reg==null || !write(reg,cmd.arg(0)))
+        System.exit(1);
+
+      Env.out.println("Snapshot '" + cmd.arg(0) + "' written with "
+                      + reg.stat());
+    }
+
+
+  //=====================================================================
+  //  write
+  //=====================================================================
+  /**
+   *  Writes snapshot of a registry built from the files
+   *  <code>Env.filenames</code>.
+   *  The snapshot is first written to a temporary file
+   *  which then replaces file 'path'.
+   *
+   *  @param  reg the registry.
+   *  @param  path name of the snapshot file.
+   *  @return true if success, false otherwise.
+   */
+  public static boolean write(final UnitRegistry reg, final String path)
+    {
+      java.io.File target = new java.io.File(path);
+      java.io.File temp = new java.io.File(path + ".tmp");
+
+      UnitRegistry prev = reg.use();
+      try
+      {
+        reg.loadAll();
+        long sum = checksum(reg.files,reg.locale());
+        if (sum<0) return false;
+
+        DataOutputStream out = new DataOutputStream
+          (new BufferedOutputStream(new FileOutputStream(temp)));
+        try
+        { write(reg,sum,out); }
+        finally
+        { out.close(); }
+
+        if (!temp.renameTo(target))
+        {
+          target.delete();
+          if (!temp.renameTo(target))
+            throw new IOException("Cannot rename '" + temp + "'.");
+        }
+        return true;
+      }
+
+      catch (IOException e)
+      {
+        Env.err.println("Snapshot '" + path + "' not written. " + e);
+        temp.delete();
+        return false;
+      }
+
+      finally
+      { UnitRegistry.restore(prev); }
+    }
+
+
+  //=====================================================================
+  //  read
+  //=====================================================================
+  /**
+   *  Loads registry from snapshot file, provided that the snapshot
+   *  was made from files 'filenames' for 'locale',
+   *  and the files have not been changed since.
+   *
+   *  @param  path name of the snapshot file.
+   *  @param  filenames names of definition files.
+   *  @param  locale the locale.
+   *  @return the registry, or null if the snapshot does not exist,
+   *          does not match, or cannot be read.
+   */
+  public static UnitRegistry read
+    ( final String path, final Vector<String> filenames, final String locale)
+    {
+      DataInputStream in;
+      try
+      {
+        in = new DataInputStream
+          (new BufferedInputStream(new FileInputStream(path),65536));
+      }
+      catch (FileNotFoundException e)
+      { return null; }
+
+      try
+      { return read(in,filenames,locale); }
+
+      catch (IOException e)
+      {
+        Env.err.println("Snapshot '" + path + "' not used. " + e);
+        return null;
+      }
+
+      finally
+      {
+        try
+        { in.close(); }
+        catch (IOException e)
+        { Env.err.println(e.toString()); }
+      }
+    }
+
+
+  //=====================================================================
+  //  checksum
+  //=====================================================================
+  /**
+   *  Computes checksum of definition files and locale.
+   *  The files are obtained from <code>Env.files</code>.
+   *
+   *  @param  files the files.
+   *  @param  locale the locale.
+   *  @return the checksum, or -1 if any of the files cannot be read.
+   */
+  static long checksum(final Vector<File> files, final String locale)
+    {
+      CRC32 crc = new CRC32();
+      update(crc,locale);
+
+      for (File f: files)
+      {
+        update(crc,f.name);
+        BufferedReader reader = Env.files.open(f.name);
+        if (reader==null) return -1;
+        try
+        {
+          String line;
+          while ((line = reader.readLine())!=null)
+            update(crc,line);
+          reader.close();
+        }
+        catch (IOException e)
+        { return -1; }
+      }
+      return crc.getValue();
+    }
+
+
+  //  Add characters of 's' and end of line to 'crc'.
+  private static void update(final CRC32 crc, final String s)
+    {
+      for (int i=0;i<s.length();i++)
+      {
+        char c = s.charAt(i);
+        crc.update(c>>8);
+        crc.update(c);
+      }
+      crc.update('\n');
+    }
+
+
+  //=====================================================================
+  //  Write snapshot of 'reg' with checksum 'sum' to 'out'.
+  //=====================================================================
+  private static void write
+    ( final UnitRegistry reg, long sum, final DataOutputStream out)
+    throws IOException
+    {
+      //---------------------------------------------------------------
+      //  Identification.
+      //---------------------------------------------------------------
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(reg.locale());
+      out.writeInt(reg.filenames.size());
+      for (String n: reg.filenames)
+        out.writeUTF(n);
+      out.writeInt(reg.files.size());
+      for (File f: reg.files)
+        out.writeUTF(f.name);
+      out.writeLong(sum);
+
+      //---------------------------------------------------------------
+      //  Units and prefixes.
+      //---------------------------------------------------------------
+      out.writeInt(reg.units.size());
+      for (Unit u: reg.units.values())
+        writeFactor(reg,u,out);
+
+      out.writeInt(reg.prefixes.size());
+      for (Prefix p: reg.prefixes.values())
+        writeFactor(reg,p,out);
+
+      //---------------------------------------------------------------
+      //  Defined functions.
+      //---------------------------------------------------------------
+      out.writeInt(reg.functions.size());
+      for (DefinedFunction f: reg.functions.values())
+      {
+        if (f instanceof ComputedFunction)
+        {
+          ComputedFunction c = (ComputedFunction)f;
+          out.writeByte(COMPUTED);
+          writeEntity(reg,c,out);
+          writeString(c.forward.param,out);
+          writeString(c.forward.def,out);
+          writeString(c.forward.dimen,out);
+          writeString(c.inverse.param,out);
+          writeString(c.inverse.def,out);
+          writeString(c.inverse.dimen,out);
+        }
+        else
+        {
+          TabularFunction t = (TabularFunction)f;
+          out.writeByte(TABULAR);
+          writeEntity(reg,t,out);
+          out.writeUTF(t.tableunit);
+          out.writeInt(t.xValues.length);
+          for (int i=0;i<t.xValues.length;i++)
+          {
+            out.writeDouble(t.xValues[i]);
+            out.writeDouble(t.yValues[i]);
+          }
+        }
+      }
+
+      //---------------------------------------------------------------
+      //  Reduced Values, in the order of units and prefixes above.
+      //  A definition that cannot be reduced is not included;
+      //  the error is reported when the definition is used.
+      //---------------------------------------------------------------
+      out.writeInt(reg.primitives.length);
+      for (Unit u: reg.units.values())
+        writeReduced(u,out);
+      for (Prefix p: reg.prefixes.values())
+        writeReduced(p,out);
+    }
+
+
+  //=====================================================================
+  //  Read snapshot from 'in'. Return null if not made
+  //  from 'filenames' and 'locale' or the files changed.
+  //=====================================================================
+  private static UnitRegistry read
+    ( final DataInputStream in, final Vector<String> filenames,
+      final String locale)
+    throws IOException
+    {
+      //---------------------------------------------------------------
+      //  Check identification.
+      //---------------------------------------------------------------
+      if (in.readInt()!=MAGIC || in.readInt()!=VERSION)
+        return null;
+      if (!in.readUTF().equals(locale))
+        return null;
+      int n = in.readInt();
+      if (n!=filenames.size()) return null;
+      for (int i=0;i<n;i++)
+        if (!in.readUTF().equals(filenames.elementAt(i)))
+          return null;
+
+      UnitRegistry reg = UnitRegistry.empty(filenames,locale);
+      n = in.readInt();
+      for (int i=0;i<n;i++)
+        reg.files.add(new File(in.readUTF()));
+      if (in.readLong()!=checksum(reg.files,locale))
+        return null;
+
+      UnitRegistry prev = reg.use();
+      try
+      {
+        //-------------------------------------------------------------
+        //  Units and prefixes.
+        //-------------------------------------------------------------
+        n = in.readInt();
+        Unit[] units = new Unit[n];
+        for (int i=0;i<n;i++)
+        {
+          String name = in.readUTF();
+          Location loc = readLocation(reg,in);
+          units[i] = new Unit(name,loc,in.readUTF());
+          reg.units.put(name,units[i]);
+        }
+
+        n = in.readInt();
+        Prefix[] prefixes = new Prefix[n];
+        for (int i=0;i<n;i++)
+        {
+          String name = in.readUTF();
+          Location loc = readLocation(reg,in);
+          prefixes[i] = new Prefix(name,loc,in.readUTF());
+          reg.prefixes.put(name,prefixes[i]);
+        }
+
+        //-------------------------------------------------------------
+        //  Defined functions.
+        //-------------------------------------------------------------
+        n = in.readInt();
+        for (int i=0;i<n;i++)
+        {
+          byte kind = in.readByte();
+          String name = in.readUTF();
+          Location loc = readLocation(reg,in);
+          DefinedFunction f;
+
+          if (kind==COMPUTED)
+          {
+            String fpar = readString(in);
+            String fdef = readString(in);
+            String fdim = readString(in);
+            String ipar = readString(in);
+            String idef = readString(in);
+            String idim = readString(in);
+            f = new ComputedFunction(name,loc,fpar,fdef,fdim,ipar,idef,idim);
+          }
+          else if (kind==TABULAR)
+          {
+            String unit = in.readUTF();
+            int k = in.readInt();
+            double[] x = new double[k];
+            double[] y = new double[k];
+            for (int j=0;j<k;j++)
+            {
+              x[j] = in.readDouble();
+              y[j] = in.readDouble();
+            }
+            f = new TabularFunction(name,loc,unit,x,y);
+          }
+          else
+            throw new IOException("Invalid function kind " + kind + ".");
+
+          reg.functions.put(name,f);
+        }
+
+        //-------------------------------------------------------------
+        //  Built-in functions and primitive units.
+        //-------------------------------------------------------------
+        BuiltInFunction.makeTable();
+        reg.numberPrimitives();
+        if (in.readInt()!=reg.primitives.length)
+          throw new IOException("Wrong number of primitive units.");
+
+        //-------------------------------------------------------------
+        //  Reduced Values.
+        //-------------------------------------------------------------
+        for (int i=0;i<units.length;i++)
+          readReduced(reg,units[i],in);
+        for (int i=0;i<prefixes.length;i++)
+          readReduced(reg,prefixes[i],in);
+      }
+
+      finally
+      { UnitRegistry.restore(prev); }
+
+      return reg;
+    }
+
+
+  //=====================================================================
+  //  Entities.
+  //=====================================================================
+  private static void writeFactor
+    ( final UnitRegistry reg, final Factor f, final DataOutputStream out)
+    throws IOException
+    {
+      writeEntity(reg,f,out);
+      out.writeUTF(f.def);
+    }
+
+  private static void writeEntity
+    ( final UnitRegistry reg, final Entity e, final DataOutputStream out)
+    throws IOException
+    {
+      out.writeUTF(e.name);
+      Location loc = e.location;
+      out.writeInt(reg.files.indexOf(loc.file));
+      out.writeInt(loc.lineNum);
+      out.writeInt(loc.beginChar);
+      out.writeInt(loc.endChar);
+    }
+
+  private static Location readLocation
+    ( final UnitRegistry reg, final DataInputStream in)
+    throws IOException
+    {
+      int file = in.readInt();
+      int line = in.readInt();
+      int begin = in.readInt();
+      int end = in.readInt();
+      if (file<0) return new Location();
+      return new Location(reg.files.elementAt(file),line,begin,end);
+    }
+
+
+  //=====================================================================
+  //  Reduced Values. Only non-zero exponents are written.
+  //=====================================================================
+  private static void writeReduced(final Factor f, final DataOutputStream out)
+    throws IOException
+    {
+      ReducedValue r = null;
+      if (!f.isPrimitive)
+      {
+        try
+        { r = f.reduced(); }
+        catch (EvalError e)
+        { r = null; }
+      }
+
+      if (r==null)
+      {
+        out.writeBoolean(false);
+        return;
+      }
+
+      out.writeBoolean(true);
+      out.writeDouble(r.factor);
+      int n = 0;
+      for (int i=0;i<r.exp.length;i++)
+        if (r.exp[i]!=0) n++;
+      out.writeShort(n);
+      for (int i=0;i<r.exp.length;i++)
+        if (r.exp[i]!=0)
+        {
+          out.writeShort(i);
+          out.writeShort(r.exp[i]);
+        }
+    }
+
+  private static void readReduced
+    ( final UnitRegistry reg, final Factor f, final DataInputStream in)
+    throws IOException
+    {
+      if (!in.readBoolean()) return;
+      ReducedValue r = new ReducedValue(reg);
+      r.factor = in.readDouble();
+      int n = in.readShort();
+      for (int i=0;i<n;i++)
+      {
+        int k = in.readShort();
+        r.exp[k] = in.readShort();
+      }
+      f.setReduced(r);
+    }
+
+
+  //=====================================================================
+  //  Strings that may be null.
+  //=====================================================================
+  private static void writeString(final String s, final DataOutputStream out)
+    throws IOException
+    {
+      out.writeBoolean(s!=null);
+      if (s!=null) out.writeUTF(s);
+    }
+
+  private static String readString(final DataInputStream in)
+    throws IOException
+    {
+      if (!in.readBoolean()) return null;
+      return in.readUTF();
+    }
+}
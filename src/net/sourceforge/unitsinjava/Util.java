@@ -28,6 +28,7 @@
 //  Change log
 //
 //    050315 Version 1.84.J07. Changed package name to "units".
+//    261018 Number formats are kept per thread.
 //
 //=========================================================================
 
@@ -76,15 +77,24 @@ import java.util.Locale;
     }
 
   
-  private static NumberFormat df = NumberFormat.getInstance(Locale.US);
-  private static NumberFormat df_exp = NumberFormat.getInstance(Locale.US);
-  
-  static {
-	  if (df instanceof DecimalFormat){
-		  ((DecimalFormat) df).applyPattern("#.############");
-		  ((DecimalFormat) df_exp).applyPattern("#.############E0");
-	  }
-  }
+  //-------------------------------------------------------------------
+  //  NumberFormat is not thread-safe, so each thread has its own
+  //  formats: plain, and with exponent.
+  //-------------------------------------------------------------------
+  private static final ThreadLocal<NumberFormat[]> formats =
+    new ThreadLocal<NumberFormat[]>()
+    {
+      protected NumberFormat[] initialValue()
+        {
+          NumberFormat df = NumberFormat.getInstance(Locale.US);
+          NumberFormat df_exp = NumberFormat.getInstance(Locale.US);
+          if (df instanceof DecimalFormat){
+            ((DecimalFormat) df).applyPattern("#.############");
+            ((DecimalFormat) df_exp).applyPattern("#.############E0");
+          }
+          return new NumberFormat[] {df,df_exp};
+        }
+    };
 
   //=====================================================================
   //  shownumber
@@ -101,9 +111,9 @@ import java.util.Locale;
 		|| (d < 0 && d > -1E-3) 
 		|| d > 1E6 
 		|| d < -1E6){
-		return df_exp.format(d);  
+		return formats.get()[1].format(d);
 	  }else{
-		  return df.format(d);
+		  return formats.get()[0].format(d);
 	  }
     }
 
@@ -36,6 +36,11 @@
 //    091027 Corrected handling of non-integer power of negative
 //           numbers in 'power' and 'root' (Math.pow produces NaN).
 //    091031 Moved definition of Ignore to Factor.
+//    261018 'parse' methods use CompiledExpression.
+//           'completereduce' and 'root' use ReducedValue.
+//           Removed 'cancel' and 'reduceproduct'.
+//           Removed unused static 'unitSem'.
+//           Added 'dimension'.
 //
 //=========================================================================
 
@@ -81,13 +86,6 @@ package net.sourceforge.unitsinjava;
   public Product numerator;
   public Product denominator;
 
-  //-------------------------------------------------------------------
-  /** Semantics of unit expressions.
-   *  A static object containing semantic procedures for parser
-   *  of unit expressions. It is used by the two 'parse' methods. */
-  //-------------------------------------------------------------------
-  private static Semantics unitSem = new Semantics();
-
 
   //=====================================================================
   //  Default constructor
@@ -141,13 +139,7 @@ package net.sourceforge.unitsinjava;
    *  @return Value represented by the expression. */
   //=====================================================================
   public static Value parse(final String s)
-    {
-      Parser parser = new Parser();           // Instantiate Parser + Semantics
-      Semantics sem = parser.semantics();     // Access Semantics
-      SourceString src = new SourceString(s); // Wrap 's' for parser
-      parser.parse(src);                      // Parse 's' - EvalError on failure
-      return sem.result;                      // Obtain result from Semantics
-    }
+    { return CompiledExpression.compile(s).evaluate(); }
 
 
   //=====================================================================
@@ -169,15 +161,7 @@ package net.sourceforge.unitsinjava;
    *  @return Value represented by the expression. */
   //=====================================================================
   public static Value parse(final String s, final String parm, final Value parmValue)
-    {
-      Parser parser = new Parser();           // Instantiate Parser + Semantics
-      Semantics sem = parser.semantics();     // Access Semantics
-      sem.parm = parm;                        // Identify parameter to replace
-      sem.parmValue = parmValue;              // Supply parameter value
-      SourceString src = new SourceString(s); // Wrap 's' for parser
-      parser.parse(src);                      // Parse 's' - EvalError on failure
-      return sem.result;                      // Obtain result from Semantics
-    }
+    { return CompiledExpression.compile(s,parm).evaluate(parmValue); }
 
 
   //=====================================================================
@@ -215,10 +199,19 @@ package net.sourceforge.unitsinjava;
    *  @return Value represented by 's'. */
   //=====================================================================
   public static Value fromName(final String s)
+    { return fromName(s,0,s.length()); }
+
+
+  //=====================================================================
+  //  Do the same as 'fromName' above for the string that consists
+  //  of characters 'start' through 'end'-1 of 's'.
+  //=====================================================================
+  static Value fromName(final CharSequence s, int start, int end)
     {
-      Factor[] pu = Factor.split(s);
+      Factor[] pu = Factor.split(s,start,end);
       if (pu==null)
-        throw new EvalError("Unit '" + s + "' is unknown.");
+        throw new EvalError("Unit '" + s.subSequence(start,end)
+                            + "' is unknown.");
 
       Value v = new Value();
 
@@ -274,6 +267,20 @@ package net.sourceforge.unitsinjava;
     }
 
 
+  //=====================================================================
+  /** Returns the Dimension of this Value.
+   *  <br>
+   *  Two completely reduced Values are compatible if and only if
+   *  their Dimensions, obtained with the same 'ignore', are equal. The Value need not be reduced.
+   *  EvalError is thrown if the Value contains a unit or prefix
+   *  with invalid definition.
+   *  @param  ignore primitive units to be disregarded.
+   *  @return the Dimension. */
+  //=====================================================================
+  public Dimension dimension(Factor.Ignore ignore)
+    { return new ReducedValue(this).dimension(ignore); }
+
+
   //=====================================================================
   /** Reduces this Value and checks if it represents a number.
    *  <br>
@@ -412,20 +419,13 @@ package net.sourceforge.unitsinjava;
       if (n<0)
         throw new Error("Program error: exponent " + n + ".");
 
-      Product num = new Product();
-      Product den = new Product();
       double fac = 1.0;
-
       for (int i=0;i<n;i++)
-      {
         fac *= factor;
-        num.add(numerator);
-        den.add(denominator);
-      }
 
       factor = fac;
-      numerator = num;
-      denominator = den;
+      numerator = numerator.power(n);
+      denominator = denominator.power(n);
     }
 
 
@@ -442,124 +442,36 @@ package net.sourceforge.unitsinjava;
         throw new EvalError("Illegal n-th root of " + asString()
                           +  ", n=" + n + ".");
 
-      completereduce();
-      Product num = numerator.root(n);
-      Product den = denominator.root(n);
-      if (num==null || den==null)
-        {
-          String nth = n==2? "square" : (n==3? "cube" : n + "-th");
-          throw new EvalError(asString() + " is not a " + nth + " root.");
-        }
-
-      numerator = num;
-      denominator = den;
-
-      // Math.pow does not work for negative base and non-integer exponent,
-      // so negative 'factor' must be treated separately.
-
-      if (factor>=0)
-        factor = Math.pow(factor,1.0/(double)n);
-      else
-        factor = -Math.pow(-factor,1.0/(double)n);
-    }
-
-
-  //=====================================================================
-  /** Removes factors that appear in both the numerator and denominator.
-   *  <br>(Originally 'cancelunit'.) */
-  //=====================================================================
-  void cancel()
-    {
-      int den = 0;
-      int num = 0;
-
-      while (num<numerator.size() && den<denominator.size())
-      {
-        int comp = (denominator.factor(den).name).
-                compareTo(numerator.factor(num).name);
-        if (comp==0)
-        {                    // units match, so cancel them.
-          denominator.delete(den);
-          numerator.delete(num);
-        }
-        else if (comp < 0)   // Move up whichever index is alphabetically..
-          den++;             // ..behind to look for future matches.
-        else
-          num++;
-      }
-
+      ReducedValue r = new ReducedValue(this);
+      r.root(n);
+      copyFrom(r);
     }
 
 
   //=====================================================================
-  /** Reduces numerator or denominator of this Value to primitive units.
-   *  @param  flip indicates whether to reduce the numerator
-   *          (<code>flip = false</code>) or denominator
-   *          (<code>flip = true</code>).
-   *  @return <code>true</code> if reduction was performed, or
-   *          <code>false</code> if there is nothing more to reduce. */
+  /** Reduces this Value as much as possible.
+   *  <br>
+   *  The reduction is done in dense form (see ReducedValue),
+   *  which also removes factors appearing in both the numerator
+   *  and denominator.
+   *  <br>(Originally 'cancelunit' and 'reduceproduct'.) */
   //=====================================================================
-  boolean reduceproduct(boolean flip)
-    {
-      boolean didsomething = false;
-      Product prod = (flip? denominator : numerator);
-      if (flip)
-        denominator = new Product();
-      else
-        numerator = new Product();
-      Product newprod = (flip? denominator : numerator);
-
-      //---------------------------------------------------------------
-      //  Process all factors of 'prod'
-      //---------------------------------------------------------------
-      for (int f=0;f<prod.size();f++)
-      {
-        Factor fact = prod.factor(f);
-        String toadd = fact.name;
-        if (toadd==null)                                   // Is this possible?
-          throw new EvalError("Unit '" + toadd + "' is unknown.");
-
-        if (fact.isPrimitive)
-        {
-          newprod.add(fact);
-          continue;
-        }
-
-        Value newval;
-
-        try
-        { newval = parse(fact.def); }
-
-        catch (EvalError e)
-        {
-          throw new EvalError("Invalid definition of '" + toadd + "'. "
-                            + e.getMessage());
-        }
-
-        if (flip) div(newval);
-        else mult(newval);
-
-        didsomething = true;
-
-      } // end process all factors
-
-      return didsomething;
-    }
+  public void completereduce()
+    { copyFrom(new ReducedValue(this)); }
 
 
   //=====================================================================
-  /** Reduces this Value as much as possible. */
+  /** Makes this Value equal to given ReducedValue.
+   *  @param  r the ReducedValue.
+   *  @return this Value. */
   //=====================================================================
-  public void completereduce()
+  Value copyFrom(final ReducedValue r)
     {
-      /* Keep calling reduceproduct until it doesn't do anything */
-      while (true)
-      {
-        boolean topchanged = reduceproduct(false);
-        boolean botchanged = reduceproduct(true);
-        if (!topchanged && !botchanged) break;
-      }
-      cancel();
+      Value v = r.toValue();
+      factor = v.factor;
+      numerator = v.numerator;
+      denominator = v.denominator;
+      return this;
     }
 
 
@@ -0,0 +1,278 @@
+package info.staticfree.android.units;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import net.sourceforge.unitsinjava.BuiltInFunction;
+import net.sourceforge.unitsinjava.CommandArgs;
+import net.sourceforge.unitsinjava.DefinedFunction;
+import net.sourceforge.unitsinjava.Env;
+import net.sourceforge.unitsinjava.Tables;
+import net.sourceforge.unitsinjava.Unit;
+
+/**
+ * Generates the {@link UnitInitData} resource on a plain JVM.
+ *
+ * The units are those that {@link UnitUsageDBHelper#loadInitialUnitUsage()}
+ * inserts: all units except all-uppercase names, all functions, and all names
+ * in the weight files. Weights of a name in several weight files are added.
+ * The fingerprint of each classified unit is looked up, and the first
+ * classification of a fingerprint is kept.
+ *
+ * Usage:
+ * <pre>   UnitInitDataGenerator [-f file]... [-l locale] [-c classification] -o output weights...</pre>
+ *
+ * @see UnitInitData
+ */
+public class UnitInitDataGenerator {
+
+	public static void main(String[] argv) throws IOException {
+		final CommandArgs cmd = new CommandArgs(argv, "", "flco", 0, Integer.MAX_VALUE);
+		if (cmd.nErrors() > 0 || !cmd.opt('o')){
+			System.err.println("Usage: UnitInitDataGenerator [-f file]... [-l locale] [-c classification] -o output weights...");
+			System.exit(2);
+		}
+
+		Env.useFileSystem();
+		Env.filenames = new Vector<String>();
+		if (cmd.opt('f')){
+			Env.filenames.addAll(cmd.optArgs('f'));
+		}else{
+			Env.filenames.add("");
+		}
+		Env.locale = cmd.opt('l') ? cmd.optArg('l') : Env.DEFAULTLOCALE;
+		Env.quiet = true;
+
+		if (!Tables.build()){
+			System.exit(1);
+		}
+
+		// names in order, with their weights.
+		final TreeMap<String, Integer> allUnitWeights = new TreeMap<String, Integer>();
+		final HashSet<String> weighted = new HashSet<String>();
+		for (final String unitName: Unit.table.keySet()){
+			// don't add all uppercase names
+			if (! unitName.toUpperCase().equals(unitName)){
+				allUnitWeights.put(unitName, 0);
+			}
+		}
+		for (final String functionName: BuiltInFunction.table.keySet()){
+			allUnitWeights.put(functionName + "(", 0);
+		}
+		for (final String functionName: DefinedFunction.table.keySet()){
+			allUnitWeights.put(functionName + "(", 0);
+		}
+		for (final String weightFile: cmd.args()){
+			for (final Map.Entry<String, Object> e: readJsonObject(weightFile).entrySet()){
+				final String key = e.getKey();
+				final int weight = ((Number)e.getValue()).intValue();
+				final Integer w = allUnitWeights.get(key);
+				allUnitWeights.put(key, w == null ? weight : w + weight);
+				weighted.add(key);
+			}
+		}
+
+		final int count = allUnitWeights.size();
+		final String[] names = allUnitWeights.keySet().toArray(new String[count]);
+		final int[] weights = new int[count];
+		final boolean[] isWeighted = new boolean[count];
+		final Long[] fingerprints = new Long[count];
+		for (int i = 0; i < count; i++){
+			weights[i] = allUnitWeights.get(names[i]);
+			isWeighted[i] = weighted.contains(names[i]);
+			fingerprints[i] = ValueGui.getFingerprint(names[i]);
+		}
+
+		final ArrayList<Long> classFingerprints = new ArrayList<Long>();
+		final ArrayList<String> classDescriptions = new ArrayList<String>();
+		if (cmd.opt('c')){
+			for (final Map.Entry<String, Object> e: readJsonObject(cmd.optArg('c')).entrySet()){
+				final Long fprint = ValueGui.getFingerprint(e.getKey());
+				if (fprint == null){
+					System.err.println("Classified unit '"+e.getKey()+"' cannot be evaluated.");
+				}else if (classFingerprints.contains(fprint)){
+					System.err.println("Classification of '"+e.getKey()+"' ignored: '"
+							+classDescriptions.get(classFingerprints.indexOf(fprint))+"' has the same fingerprint.");
+				}else{
+					classFingerprints.add(fprint);
+					classDescriptions.add(String.valueOf(e.getValue()));
+				}
+			}
+		}
+		final long[] classFprints = new long[classFingerprints.size()];
+		for (int i = 0; i < classFprints.length; i++){
+			classFprints[i] = classFingerprints.get(i);
+		}
+
+		final UnitInitData data = new UnitInitData(names, weights, isWeighted, fingerprints,
+				classFprints, classDescriptions.toArray(new String[classFprints.length]));
+		final FileOutputStream out = new FileOutputStream(cmd.optArg('o'));
+		try {
+			data.write(out);
+		}finally{
+			out.close();
+		}
+		System.out.println(cmd.optArg('o')+": "+count+" units, "+classFprints.length+" classifications.");
+	}
+
+	/**
+	 * Reads a JSON file consisting of one object whose values are strings,
+	 * numbers, booleans or null. Keys that start with "--" are comments,
+	 * and are not returned.
+	 *
+	 * @param fileName name of the file, in UTF-8
+	 * @return the members of the object, in the order of the file
+	 * @throws IOException if the file cannot be read or is not such an object
+	 */
+	static LinkedHashMap<String, Object> readJsonObject(String fileName) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		final Reader r = new InputStreamReader(new FileInputStream(fileName), "UTF-8");
+		try {
+			final char[] buf = new char[4096];
+			for (int n; (n = r.read(buf)) > 0; ){
+				sb.append(buf, 0, n);
+			}
+		}finally{
+			r.close();
+		}
+
+		final JsonScanner s = new JsonScanner(fileName, sb);
+		final LinkedHashMap<String, Object> members = new LinkedHashMap<String, Object>();
+		s.expect('{');
+		if (s.peek() != '}'){
+			do {
+				final String key = s.string();
+				s.expect(':');
+				members.put(key, s.value());
+			} while (s.skip(','));
+		}
+		s.expect('}');
+		if (s.peek() != -1){
+			throw s.error("end of file");
+		}
+		for (final Iterator<String> i = members.keySet().iterator(); i.hasNext(); ){
+			if (i.next().startsWith("--")){
+				i.remove();
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Scanner of the JSON subset read by {@link UnitInitDataGenerator#readJsonObject(String)}.
+	 */
+	private static class JsonScanner {
+		private final String fileName;
+		private final CharSequence text;
+		private int pos = 0;
+
+		JsonScanner(String fileName, CharSequence text){
+			this.fileName = fileName;
+			this.text = text;
+		}
+
+		/**
+		 * @return the next character that is not white space, or -1 at the end
+		 */
+		int peek(){
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))){
+				pos++;
+			}
+			return pos < text.length() ? text.charAt(pos) : -1;
+		}
+
+		boolean skip(char c){
+			if (peek() == c){
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(char c) throws IOException {
+			if (!skip(c)){
+				throw error("'"+c+"'");
+			}
+		}
+
+		String string() throws IOException {
+			expect('"');
+			final StringBuilder sb = new StringBuilder();
+			while (pos < text.length()){
+				char c = text.charAt(pos++);
+				if (c == '"'){
+					return sb.toString();
+				}
+				if (c == '\\' && pos < text.length()){
+					c = text.charAt(pos++);
+					switch (c){
+					case 'b': c = '\b'; break;
+					case 'f': c = '\f'; break;
+					case 'n': c = '\n'; break;
+					case 'r': c = '\r'; break;
+					case 't': c = '\t'; break;
+					case 'u':
+						if (pos + 4 > text.length()){
+							throw error("four hex digits");
+						}
+						try {
+							c = (char)Integer.parseInt(text.subSequence(pos, pos + 4).toString(), 16);
+						}catch (final NumberFormatException e){
+							throw error("four hex digits");
+						}
+						pos += 4;
+						break;
+					}
+				}
+				sb.append(c);
+			}
+			throw error("'\"'");
+		}
+
+		Object value() throws IOException {
+			final int c = peek();
+			if (c == '"'){
+				return string();
+			}
+			final int start = pos;
+			while (pos < text.length() && "+-.0123456789Eaeflnrstu".indexOf(text.charAt(pos)) >= 0){
+				pos++;
+			}
+			final String literal = text.subSequence(start, pos).toString();
+			if (literal.equals("null")){
+				return null;
+			}else if (literal.equals("true") || literal.equals("false")){
+				return Boolean.valueOf(literal);
+			}
+			try {
+				if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0){
+					return Long.valueOf(literal);
+				}
+				return Double.valueOf(literal);
+			}catch (final NumberFormatException e){
+				pos = start;
+				throw error("a value");
+			}
+		}
+
+		IOException error(String expected){
+			int line = 1;
+			for (int i = 0; i < pos && i < text.length(); i++){
+				if (text.charAt(i) == '\n'){
+					line++;
+				}
+			}
+			return new IOException(fileName+":"+line+": expected "+expected);
+		}
+	}
+}
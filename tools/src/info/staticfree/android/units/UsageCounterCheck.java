@@ -0,0 +1,201 @@
+package info.staticfree.android.units;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Check of {@link UsageCounter} on a plain JVM: counts of the same unit
+ * are coalesced, no count is lost when many threads count and flush at
+ * the same time, counts are kept when the sink fails, and flushes run by
+ * the counter reach the sink or {@link UsageCounter#onFlushFailed(Exception)}.
+ *
+ * Usage:
+ * <pre>   UsageCounterCheck</pre>
+ *
+ * The program exits with status 1 if any case fails.
+ */
+public class UsageCounterCheck {
+	private static int failures = 0;
+
+	public static void main(String[] argv) throws Exception {
+		checkCoalescing();
+		checkConcurrentCounting();
+		checkFailedFlush();
+		checkTimerFlush();
+
+		System.out.println(failures == 0 ? "All cases passed." : failures + " cases failed.");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * A sink that keeps what it was given, and fails while {@link #failing} is set.
+	 */
+	private static class RecordingSink implements UsageCounter.Sink {
+		final List<Map<String, Integer>> writes = new ArrayList<Map<String, Integer>>();
+		final HashMap<String, Integer> totals = new HashMap<String, Integer>();
+		volatile boolean failing = false;
+		final CountDownLatch written = new CountDownLatch(1);
+
+		public synchronized void write(Map<String, Integer> counts) throws Exception {
+			if (failing){
+				throw new Exception("sink failure");
+			}
+			writes.add(new HashMap<String, Integer>(counts));
+			for (final Map.Entry<String, Integer> e: counts.entrySet()){
+				final Integer total = totals.get(e.getKey());
+				totals.put(e.getKey(), total == null ? e.getValue() : total + e.getValue());
+			}
+			written.countDown();
+		}
+
+		synchronized int total(String unit){
+			final Integer total = totals.get(unit);
+			return total == null ? 0 : total;
+		}
+	}
+
+	/**
+	 * A counter that records the failures of its own flushes.
+	 */
+	private static class Counter extends UsageCounter {
+		final List<Exception> failed = new ArrayList<Exception>();
+		final CountDownLatch failedLatch = new CountDownLatch(1);
+
+		Counter(Sink sink, int stripes){
+			super(sink, stripes);
+		}
+
+		@Override
+		protected synchronized void onFlushFailed(Exception e) {
+			failed.add(e);
+			failedLatch.countDown();
+		}
+	}
+
+	private static void check(String name, boolean ok, String detail){
+		if (!ok){
+			failures++;
+			System.out.println(name + ": " + detail);
+		}
+	}
+
+	private static void checkCoalescing() throws Exception {
+		final RecordingSink sink = new RecordingSink();
+		final Counter counter = new Counter(sink, 3);
+		counter.increment("m");
+		counter.increment("ft");
+		counter.add("m", 5);
+		check("pending", counter.getPending("m") == 6 && counter.getPending("in") == 0,
+				"pending m=" + counter.getPending("m") + ", in=" + counter.getPending("in"));
+
+		final int units = counter.flush();
+		check("coalescing", units == 2 && sink.writes.size() == 1
+				&& sink.writes.get(0).get("m") == 6 && sink.writes.get(0).get("ft") == 1,
+				"flushed " + units + " units, writes " + sink.writes);
+		check("pending after flush", counter.getPending("m") == 0,
+				"pending m=" + counter.getPending("m"));
+		check("empty flush", counter.flush() == 0 && sink.writes.size() == 1,
+				"writes " + sink.writes);
+	}
+
+	/**
+	 * Threads count units spread over all stripes while another thread
+	 * flushes, with the sink failing now and then.
+	 */
+	private static void checkConcurrentCounting() throws Exception {
+		final RecordingSink sink = new RecordingSink();
+		final Counter counter = new Counter(sink, 4);
+		final int threads = 8, increments = 20000, unitCount = 50;
+		final Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++){
+			final int seed = t;
+			workers[t] = new Thread(){
+				@Override
+				public void run() {
+					for (int i = 0; i < increments; i++){
+						counter.increment("unit" + ((i * 7 + seed) % unitCount));
+					}
+				}
+			};
+			workers[t].start();
+		}
+		int attempts = 0;
+		boolean running = true;
+		while (running){
+			running = false;
+			for (final Thread w: workers){
+				running |= w.isAlive();
+			}
+			sink.failing = attempts++ % 3 == 0;
+			try {
+				counter.flush();
+			}catch (final Exception e){
+				// the counts are kept for the next flush.
+			}
+		}
+		sink.failing = false;
+		counter.flush();
+
+		int total = 0;
+		boolean even = true;
+		for (int u = 0; u < unitCount; u++){
+			final int n = sink.total("unit" + u);
+			total += n;
+			even &= n == threads * increments / unitCount;
+		}
+		check("concurrent counting", total == threads * increments && even,
+				"written " + total + " of " + threads * increments + " uses");
+	}
+
+	private static void checkFailedFlush() throws Exception {
+		final RecordingSink sink = new RecordingSink();
+		final Counter counter = new Counter(sink, 2);
+		counter.add("m", 2);
+		sink.failing = true;
+		boolean thrown = false;
+		try {
+			counter.flush();
+		}catch (final Exception e){
+			thrown = true;
+		}
+		check("failed flush throws", thrown && sink.writes.isEmpty(), "thrown=" + thrown);
+		check("failed flush keeps counts", counter.getPending("m") == 2,
+				"pending m=" + counter.getPending("m"));
+
+		counter.increment("m");
+		sink.failing = false;
+		counter.flush();
+		check("retry", sink.writes.size() == 1 && sink.writes.get(0).get("m") == 3,
+				"writes " + sink.writes);
+	}
+
+	private static void checkTimerFlush() throws Exception {
+		final RecordingSink sink = new RecordingSink();
+		final Counter counter = new Counter(sink, 2);
+		counter.start(60000);
+		counter.increment("m");
+		counter.requestFlush();
+		check("requested flush", sink.written.await(10, TimeUnit.SECONDS) && sink.total("m") == 1,
+				"written m=" + sink.total("m"));
+
+		sink.failing = true;
+		counter.increment("ft");
+		counter.requestFlush();
+		check("failed requested flush", counter.failedLatch.await(10, TimeUnit.SECONDS)
+				&& counter.getPending("ft") == 1,
+				"failures " + counter.failed + ", pending ft=" + counter.getPending("ft"));
+		counter.stop();
+
+		// not started: the flush runs on a new thread.
+		final RecordingSink sink2 = new RecordingSink();
+		final Counter counter2 = new Counter(sink2, 2);
+		counter2.increment("in");
+		counter2.requestFlush();
+		check("flush without timer", sink2.written.await(10, TimeUnit.SECONDS) && sink2.total("in") == 1,
+				"written in=" + sink2.total("in"));
+	}
+}